@@ -0,0 +1,33 @@
+#!/bin/sh
+# Compares two JMH CSV result files written by bench/run.sh.
+#
+# Usage (from the project root):
+#   bench/compare.sh [BASELINE] CURRENT
+#
+# BASELINE defaults to bench/baseline.csv. Prints one line per benchmark, parameter set and
+# secondary metric present in both files with the baseline score, current score and change.
+set -e
+
+if [ $# -eq 1 ]; then
+	BASE="bench/baseline.csv"
+	CURRENT="$1"
+else
+	BASE="$1"
+	CURRENT="$2"
+fi
+
+awk -F, '
+	# Key every row by everything except the sample count, score and error columns
+	function key(   k, i) {
+		k = $1
+		for (i = 8; i <= NF; i++) k = k "," $i
+		return k "," $2 "," $7
+	}
+	FNR == 1 { next }
+	NR == FNR { base[key()] = $5; next }
+	(key() in base) {
+		b = base[key()]
+		change = (b == 0) ? 0 : ($5 - b) * 100 / b
+		printf "%-90s %14.3f %14.3f %+8.1f%%\n", key(), b, $5, change
+	}
+' "$BASE" "$CURRENT"
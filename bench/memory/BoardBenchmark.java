@@ -0,0 +1,253 @@
+package memory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the hot paths of {@link Board}: flipping cards, rendering the board
+ * for the text and HTTP protocols, and removing matched pairs.
+ *
+ * Every benchmark is parameterized by the board size. A size of 3 loads boards/perfect.txt,
+ * larger sizes generate a random size x size board. Run with bench/run.sh from the project root.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BoardBenchmark {
+
+	static final Set<String> CARDS = new HashSet<String>(Arrays.asList("A", "B", "C", "D", "E", "F", "G", "H"));
+	static final String PERFECT = "boards/perfect.txt";
+
+	/**
+	 * @param size width and height of the board
+	 * @param shuffle whether generated boards are shuffled
+	 * @return boards/perfect.txt if size is 3, otherwise a new size x size board
+	 */
+	static Board newBoard(int size, boolean shuffle) {
+		if (size == 3) {
+			try {
+				return Board.parseFromFile(PERFECT);
+			} catch (IOException e) {
+				throw new RuntimeException("Run benchmarks from the project root: " + e.getMessage());
+			}
+		}
+		return new Board(size, size, CARDS, shuffle);
+	}
+
+	/**
+	 * Finds the first uncontrolled card at or after the row major index start whose character differs from character.
+	 * @return {col, row} of the card found
+	 */
+	static int[] findMismatch(Board board, int size, int start, String character) {
+		for (int i = start; i < size * size; i++) {
+			final BoardSpace space = board.getCard(i % size + 1, i / size + 1);
+			if (!space.isEmpty() && !space.hasOwner() && !space.character().equals(character)) {
+				return new int[] {i % size + 1, i / size + 1};
+			}
+		}
+		throw new IllegalStateException("Board has no mismatching card");
+	}
+
+	/*
+	 * Shared board for the look and contended flip benchmarks.
+	 * A few cards are turned face up by a spectator so that renders include every kind of spot.
+	 */
+	@State(Scope.Benchmark)
+	public static class SharedBoard {
+		@Param({"3", "100", "1000"})
+		int size;
+
+		Board board;
+		String hot;
+		final AtomicInteger nextPlayer = new AtomicInteger();
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			this.board = newBoard(this.size, false);
+			this.board.addPlayer("spectator");
+			this.board.addPlayer("viewer");
+			this.board.flip(this.size, this.size, "spectator");
+			this.hot = this.board.getCard(1, 1).character();
+		}
+	}
+
+	/*
+	 * Per thread player for the contended flip benchmark. Each player owns a private card that
+	 * does not match the hot card at (1, 1) so that flipping both never removes the hot card.
+	 */
+	@State(Scope.Thread)
+	public static class ContendingPlayer {
+		String id;
+		int col, row;
+
+		@Setup(Level.Trial)
+		public void setUp(SharedBoard shared) {
+			final int n = shared.nextPlayer.incrementAndGet();
+			this.id = "player" + n;
+			shared.board.addPlayer(this.id);
+			int start = 1;
+			int[] spot = null;
+			for (int i = 0; i < n; i++) {
+				spot = findMismatch(shared.board, shared.size, start, shared.hot);
+				start = (spot[1] - 1) * shared.size + spot[0];
+			}
+			this.col = spot[0];
+			this.row = spot[1];
+		}
+	}
+
+	/*
+	 * Board owned by a single thread. Rebuilt every iteration since random flips remove pairs.
+	 */
+	@State(Scope.Thread)
+	public static class PrivateBoard {
+		@Param({"3", "100", "1000"})
+		int size;
+
+		Board board;
+		Random random;
+		int[] first, second;
+		int[] pairs;
+		int nextPair;
+
+		@Setup(Level.Iteration)
+		public void setUp() {
+			this.board = newBoard(this.size, false);
+			this.board.addPlayer("player");
+			this.random = new Random(42);
+			this.first = new int[] {1, 1};
+			this.second = findMismatch(this.board, this.size, 0, this.board.getCard(1, 1).character());
+			this.pairs = findPairs(this.board, this.size);
+			this.nextPair = 0;
+		}
+	}
+
+	/*
+	 * Private board for checkCardsMatchRemoval, rebuilt outside the measured time once every pair has been
+	 * removed. Kept apart from PrivateBoard since a per invocation setup adds timing overhead to every benchmark
+	 * that uses the state.
+	 */
+	@State(Scope.Thread)
+	public static class MatchingBoard extends PrivateBoard {
+		@Setup(Level.Invocation)
+		public void refill() {
+			if (this.nextPair >= this.pairs.length) {
+				this.setUp();
+			}
+		}
+	}
+
+	/**
+	 * @return row major indices of matching cards on board, two consecutive entries per pair
+	 */
+	static int[] findPairs(Board board, int size) {
+		final Map<String, Integer> unpaired = new HashMap<String, Integer>();
+		final int[] pairs = new int[size * size];
+		int n = 0;
+		for (int i = 0; i < size * size; i++) {
+			final BoardSpace space = board.getCard(i % size + 1, i / size + 1);
+			if (space.isEmpty()) {
+				continue;
+			}
+			final Integer other = unpaired.remove(space.character());
+			if (other == null) {
+				unpaired.put(space.character(), i);
+			} else {
+				pairs[n++] = other;
+				pairs[n++] = i;
+			}
+		}
+		return Arrays.copyOf(pairs, n);
+	}
+
+	/*
+	 * Flips two cards that never match over and over. Every other pair of flips releases both cards.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(2)
+	public FlipOutcome flipUncontended(PrivateBoard state) {
+		state.board.flip(state.first[0], state.first[1], "player");
+		return state.board.flip(state.second[0], state.second[1], "player");
+	}
+
+	/*
+	 * Every thread flips the card at (1, 1), then its own private card, then its private card again. The last
+	 * flip starts a new turn, which releases both cards, so each thread competes for the hot card on every invocation
+	 * instead of finding it still held from the invocation before.
+	 */
+	@Benchmark
+	@Threads(3)
+	@OperationsPerInvocation(3)
+	public FlipOutcome flipContendedHotCard(SharedBoard shared, ContendingPlayer player) {
+		shared.board.flip(1, 1, player.id);
+		shared.board.flip(player.col, player.row, player.id);
+		return shared.board.flip(player.col, player.row, player.id);
+	}
+
+	/*
+	 * Flips uniformly random spots. Single threaded since random flips by several players can deadlock.
+	 */
+	@Benchmark
+	public FlipOutcome flipRandom(PrivateBoard state) {
+		final int col = state.random.nextInt(state.size) + 1;
+		final int row = state.random.nextInt(state.size) + 1;
+		return state.board.flip(col, row, "player");
+	}
+
+	/*
+	 * Flips a space off the board, as a buggy or malicious client would. The flip is rejected without an exception.
+	 */
+	@Benchmark
+	public FlipOutcome flipOutOfBounds(PrivateBoard state) {
+		return state.board.flip(state.size + 1, 1, "player");
+	}
+
+	/*
+	 * Flips both cards of one matching pair per invocation. Each flip of a first card removes
+	 * the pair flipped before it. The board is rebuilt, untimed, once every pair has been removed.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(2)
+	public FlipOutcome checkCardsMatchRemoval(MatchingBoard state) {
+		final int size = state.size;
+		final int i = state.pairs[state.nextPair++];
+		final int j = state.pairs[state.nextPair++];
+		state.board.flip(i % size + 1, i / size + 1, "player");
+		return state.board.flip(j % size + 1, j / size + 1, "player");
+	}
+
+	@Benchmark
+	public String look(SharedBoard shared) {
+		return shared.board.look("viewer");
+	}
+
+	@Benchmark
+	public String httpLook(SharedBoard shared) {
+		return shared.board.httpLook("viewer");
+	}
+
+}
@@ -0,0 +1,68 @@
+package memory;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for claiming and releasing a single {@link Card}, uncontended and by several threads at once.
+ *
+ * <p>contendedClaimRelease samples the latency of each claim so that the tail of fair hand-off can be
+ * compared with the old barging behavior by running it again with
+ * {@code -jvmArgsAppend -Dmemory.card.fair=false}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CardBenchmark {
+
+	final Card card = new Card("A", 1, 1);
+
+	@State(Scope.Benchmark)
+	public static class HotCard {
+		final Card card = new Card("A", 1, 1);
+	}
+
+	@State(Scope.Thread)
+	public static class Claimer {
+		final String id = Thread.currentThread().getName();
+	}
+
+	@Benchmark
+	public boolean claimRelease() {
+		final boolean claimed = this.card.claim("player");
+		this.card.release();
+		return claimed;
+	}
+
+	@Benchmark
+	public boolean claimReleaseObserve() {
+		final boolean claimed = this.card.claim("player");
+		final boolean observed = this.card.isFaceUp() && this.card.hasOwner();
+		this.card.release();
+		return claimed && observed;
+	}
+
+	@Benchmark
+	@Threads(4)
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public boolean contendedClaimRelease(HotCard hot, Claimer claimer) {
+		final boolean claimed = hot.card.claim(claimer.id);
+		hot.card.release();
+		return claimed;
+	}
+
+}
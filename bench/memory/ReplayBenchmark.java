@@ -0,0 +1,70 @@
+package memory;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark that replays a recorded game with {@link GameReplay}, a repeatable workload mixing
+ * players joining, flips, matches and releases in the order a real game made them.
+ *
+ * The game is recorded once per trial from a fixed seed: players take turns flipping random spaces of a
+ * size x size board. Each invocation replays the whole game on a fresh board. Run with bench/run.sh.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ReplayBenchmark {
+
+	static final int PLAYERS = 16;
+
+	@State(Scope.Thread)
+	public static class RecordedGame {
+		@Param({"10", "100"})
+		int size;
+
+		@Param({"10000"})
+		int flips;
+
+		GameReplay replay;
+		Board board;
+
+		@Setup(Level.Trial)
+		public void record() {
+			final Board board = BoardBenchmark.newBoard(this.size, true);
+			final GameEventLog log = GameEventLog.record(board);
+			for (int p = 0; p < PLAYERS; p++) {
+				board.addPlayer("player" + p);
+			}
+			final Random random = new Random(42);
+			for (int i = 0; i < this.flips; i++) {
+				board.tryFlip(random.nextInt(this.size) + 1, random.nextInt(this.size) + 1, "player" + (i % PLAYERS));
+			}
+			this.replay = new GameReplay(log);
+		}
+
+		@Setup(Level.Invocation)
+		public void newBoard() {
+			this.board = this.replay.newBoard();
+		}
+	}
+
+	@Benchmark
+	public int replay(RecordedGame game) {
+		return game.replay.replay(game.board);
+	}
+}
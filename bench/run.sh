@@ -0,0 +1,30 @@
+#!/bin/sh
+# Builds and runs the JMH benchmarks in bench/ against the sources in src/.
+#
+# Usage (from the project root):
+#   JMH_LIB=/path/to/jmh/jars bench/run.sh [--baseline] [JMH OPTIONS...]
+#
+# JMH_LIB must contain jmh-core, jmh-generator-annprocess, jopt-simple and commons-math3.
+# Results are written as CSV to bench/results/<commit>.csv, or to bench/baseline.csv when
+# --baseline is given. Allocation is always profiled with -prof gc so the gc.alloc.rate.norm
+# rows can be compared across versions with bench/compare.sh.
+set -e
+
+if [ -z "$JMH_LIB" ]; then
+	echo "JMH_LIB must point at a directory containing the JMH jars" >&2
+	exit 1
+fi
+
+OUT="bench/results/$(git rev-parse --short HEAD).csv"
+if [ "$1" = "--baseline" ]; then
+	OUT="bench/baseline.csv"
+	shift
+fi
+
+CP="$(find "$JMH_LIB" -name '*.jar' | tr '\n' ':')lib/httpserver.jar"
+rm -rf bin-bench
+mkdir -p bin-bench bench/results
+javac -encoding UTF-8 -d bin-bench -cp "$CP" \
+	$(find src -name '*.java' ! -name '*Test.java') $(find bench -name '*.java')
+java -cp "bin-bench:$CP" org.openjdk.jmh.Main -prof gc -rf csv -rff "$OUT" "$@"
+echo "Results written to $OUT"
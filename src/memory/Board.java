@@ -7,13 +7,31 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Random;
+import java.util.Queue;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import memory.metrics.LatencyHistogram;
+import memory.metrics.MetricsRegistry;
 
 
 /**
@@ -75,30 +93,71 @@ public class Board {
     
     private BoardSpace[][] cards;
     private final int WIDTH, HEIGHT;
-    private final ConcurrentMap<Player, Pair<BoardSpace>> players = new ConcurrentHashMap<Player, Pair<BoardSpace>>();
     private final ConcurrentMap<String, Player> playerIDs = new ConcurrentHashMap<String, Player>();
+    private final HoldingTable holdings = new HoldingTable();
+    private final AtomicInteger nextHandle = new AtomicInteger();
+    // Handles of removed players, reused so that holdings stays as large as the most players on the board at once
+    private final Queue<Integer> freeHandles = new ConcurrentLinkedQueue<Integer>();
+    // Slots of the array used to collect the spaces a flip changed: the two cards checked and the card flipped
+    private static final int CHANGED_FIRST = 0, CHANGED_SECOND = 1, CHANGED_FLIPPED = 2;
+    // Number of changes made to the board, bumped after each change and before listeners are notified
+    private final AtomicLong version = new AtomicLong();
+    
+    private final WatchIndex watchers;
+    private final List<GameEventListener> gameListeners = new CopyOnWriteArrayList<GameEventListener>();
+    // Number of spaces that still hold a card
+    private int remaining;
+    // Row major indices of the spaces that still hold a card, kept once few enough are left, otherwise null
+    private NavigableSet<Integer> occupied = null;
     
-    private final List<BoardListener> listeners = new ArrayList<BoardListener>();
+    /**
+     * Fraction of the board that may still hold cards when the board starts keeping the set of occupied spaces, 
+     * set with the system property memory.board.sparseOccupancy
+     */
+    static final double SPARSE_OCCUPANCY = Double.parseDouble(System.getProperty("memory.board.sparseOccupancy", "0.25"));
+    private final ContentionMap contention;
+    private final GameStats stats;
     
-    private final static BoardSpace EMPTY_SPACE = new EmptySpace(0, 0);
+    private final static LatencyHistogram FLIP_LATENCY = MetricsRegistry.global().histogram("memory_flip_seconds", "", 
+    		"Time spent in Board.flip, including time blocked waiting for control of a card");
+    private final static LongAdder BUSY = MetricsRegistry.global().counter("memory_flips_busy_total", 
+    		"Flips that gave up because another player controlled the card");
+    private final static LongAdder MATCHES = MetricsRegistry.global().counter("memory_matches_total", 
+    		"Pairs of matching cards removed from the board");
+    // True once the board reports to the process-wide metrics, see exportMetrics()
+    private volatile boolean metered = false;
+    // Number of board listeners watching the board
+    private final LongAdder watching = new LongAdder();
     
     
     // Abstraction function:
-    //   AF(WIDTH, HEIGHT, cards, players) ::= A Memory Scramble board with WIDTH columns, HEIGHT rows where each card in cards is at position (j, i) on the board. 
-    // 		Each player controls the cards in players.get(player)
+    //   AF(WIDTH, HEIGHT, cards, playerIDs, holdings) ::= A Memory Scramble board with WIDTH columns, HEIGHT rows where each card in cards is at position (j, i) on the board. 
+    // 		Each player id is interned to the dense handle playerIDs.get(id).handle and controls the spaces holdings.first(handle)
+    // 		and holdings.second(handle), given as row major indices (row - 1) * WIDTH + (col - 1). 
+    // 		The board has changed version times since it was created. 
     // Representation invariant:
     // 	 cards.size= == WIDTH * HEIGHT
     //	 each row has same size
     //	 each column has same size
     // 	 each player either controls 0 cards, 1 card or 2 unique cards
     // Safety from rep exposure:
-    //   only primitive types (int, boolean) or immutable Strings are returned. 
+    //   only primitive types (int, boolean) or immutable Strings are returned, and stats, which can only be 
+    //   changed by the board. 
     // Thread safety argument: TODO
-    //   players and playerIDs are implemented using a ConcurrentHashMap which is a threadsafe data type
+    //   playerIDs is implemented using a ConcurrentHashMap which is a threadsafe data type and handles are
+    //   assigned with an AtomicInteger or reused from the concurrent queue freeHandles. HoldingTable is threadsafe and 
+    //   each player's slots are only written by their own flips, or by removePlayer once the player has no flip in progress.
     // 	 Players obtain a lock when trying to claim a card. Players will block until a lock can be obtained. As BoardSpace is threadsafe
     // 	 all access to BoardSpace Objects are threadsafe. 
     // 	 checkCards obtains a lock on cards before modifying the board. 
     //   look() and httpLook() obtain locks on this.cards and therefore are not affected when cards are rmoved in checkCards. 
+    //   watchers is a threadsafe WatchIndex. remaining and occupied are only accessed while holding the lock on cards. 
+    //   version is an AtomicLong bumped after every change, so a render taken after reading version reflects at least that version. 
+    //   stats is threadsafe and told of every change as it is published. 
+    //   metered is volatile, so a flip reports to the metrics once exportMetrics() has returned, and watching is a LongAdder. 
+    //   gameListeners is a CopyOnWriteArrayList. Matches and releases are published under the lock on cards before the cards 
+    //   change, and a flip is published by the thread that controls the card, so the published order is one in which the 
+    //   changes could have been made one at a time. 
     
     /**
      * 
@@ -112,15 +171,24 @@ public class Board {
      * @throws IllegalArgumentException if the boards does not have positive dimensions
      */
     Board(int columns, int rows, Set<String> cards, boolean shuffle) throws IllegalArgumentException {
+    	this(columns, rows, arrange(columns, rows, cards, shuffle));
+    }
+    
+    /**
+     * Arranges cards on a board with rows rows and columns columns as evenly as possible. 
+     * @param rows number of rows on the board
+     * @param columns number of columns on the board
+     * @param cards the types of cards on the board
+     * @param shuffle if true randomly shuffles the cards on the board. 
+     * @return layout[row - 1][col - 1] is the card at (col, row), or "" if the space is empty
+     * @throws IllegalArgumentException if the boards does not have positive dimensions
+     */
+    private static String[][] arrange(int columns, int rows, Set<String> cards, boolean shuffle) throws IllegalArgumentException {
     	//Construct an array with an even amount of each type of card then shuffle
     	
     	if (rows <= 0 || columns <= 0) {
     			throw new IllegalArgumentException();
     	}
-    	this.cards = new BoardSpace[rows][columns];
-    	this.HEIGHT= rows;
-    	this.WIDTH = columns;
-    	
     	final String[][] orderedCards = new String[rows][columns];
     	
     	final int SPOTS = rows * columns;
@@ -151,7 +219,7 @@ public class Board {
     	
     	//If set has an odd number of elements assign the last spot and empty space
     	if (SPOTS % 2 == 1) {
-    		orderedCards[HEIGHT - 1][WIDTH - 1] = "";
+    		orderedCards[rows - 1][columns - 1] = "";
     	}
     	
     	//Shuffle the array if applicable
@@ -169,21 +237,63 @@ public class Board {
     			}
     		}
     	}
+    	return orderedCards;
+    }
+    
+    /**
+     * Makes a new board with the cards in layout, face down and controlled by no one. 
+     * @param columns board width
+     * @param rows board height
+     * @param layout card in each space in row major order, or "" for an empty space
+     * @return a new board with the given cards
+     * @throws IllegalArgumentException if the board does not have positive dimensions or layout has the wrong size
+     */
+    static Board fromLayout(int columns, int rows, List<String> layout) throws IllegalArgumentException {
+    	if (rows <= 0 || columns <= 0 || layout.size() != rows * columns) {
+    		throw new IllegalArgumentException("Layout does not fit a " + columns + " x " + rows + " board");
+    	}
+    	final String[][] cards = new String[rows][columns];
+    	for (int i = 0; i < layout.size(); i++) {
+    		cards[i / columns][i % columns] = layout.get(i);
+    	}
+    	return new Board(columns, rows, cards);
+    }
+    
+    /**
+     * Constructs a board with the cards in layout, face down and controlled by no one. 
+     * @param columns number of columns on the board, must be positive
+     * @param rows number of rows on the board, must be positive
+     * @param layout layout[row - 1][col - 1] is the card at (col, row), or "" if the space is empty
+     */
+    private Board(int columns, int rows, String[][] layout) {
+    	this.cards = new BoardSpace[rows][columns];
+    	this.HEIGHT= rows;
+    	this.WIDTH = columns;
+    	this.contention = new ContentionMap(columns, rows);
+    	this.watchers = new WatchIndex(columns, rows);
     	
-    	// Create the card array
+    	// Create the card array, counting the copies of each card to find how many pairs there are
+    	final Map<String, Integer> copies = new HashMap<String, Integer>();
     	for (int k = 0; k < HEIGHT; k++) {
     		for (int j = 0; j < WIDTH; j++) {
-    			if (orderedCards[k][j].equals("")) {
+    			if (layout[k][j].equals("")) {
     				this.cards[k][j] = new EmptySpace(k + 1, j + 1);
     			} else {
+    				this.remaining++;
+    				copies.merge(layout[k][j], 1, Integer::sum);
     				try {
-    					this.cards[k][j] = new Card(orderedCards[k][j], j + 1, k + 1);
+    					this.cards[k][j] = new Card(layout[k][j], j + 1, k + 1, this.contention);
     				} catch (IllegalArgumentException iae){
     					throw new RuntimeException(iae.getMessage());
     				}
     			}
     		}
     	}
+    	long pairs = 0;
+    	for (int count : copies.values()) {
+    		pairs += count / 2;
+    	}
+    	this.stats = new GameStats(pairs);
     	checkRep();
     }
     
@@ -195,53 +305,154 @@ public class Board {
     		assert this.cards[i].length == this.cards.length;
     	}
     	
-    	for (Player p : players.keySet()) {
-    		Pair<BoardSpace> controlledSpots = players.get(p);
-    		// Check that the player controls two unique Cards on the board. 
-    		BoardSpace first = controlledSpots.getFirst();
-    		BoardSpace second = controlledSpots.getSecond();
-    		if (first.equals(second) && !first.isEmpty() && !second.isEmpty()){
-    			try {
-    				assert first.row() != second.row() || first.col() != second.col();
-    			}
-    			catch (AssertionError a) {
-    				throw new RuntimeException("Found player holding two cards in same spot");
-    			}
+    	assert occupiedIsConsistent() : "Occupied spaces do not match the remaining cards";
+    	
+    	// Check that each player controls two unique spots. Only walks the players when assertions are enabled.
+    	assert holdingsAreUnique() : "Found player holding two cards in same spot";
+    }
+    
+    private boolean occupiedIsConsistent() {
+    	synchronized (this.cards) {
+    		return this.occupied == null || this.occupied.size() == this.remaining;
+    	}
+    }
+    
+    private boolean holdingsAreUnique() {
+    	for (Player p : this.playerIDs.values()) {
+    		final int first = this.holdings.first(p.handle);
+    		if (first != HoldingTable.NONE && first == this.holdings.second(p.handle)) {
+    			return false;
     		}
     	}
+    	return true;
     }
     
     /**
-     * 
+     * @param index row major index of a space, (row - 1) * WIDTH + (col - 1)
+     * @return the space at index
+     */
+    private BoardSpace spaceAt(int index) {
+    	return this.cards[index / this.WIDTH][index % this.WIDTH];
+    }
+    
+    /**
+     * @param id id of a player
+     * @return handle of the player or Player.NO_HANDLE if the player is not on the board
+     */
+    private int handleOf(String id) {
+    	if (id == null) {
+    		return Player.NO_HANDLE;
+    	}
+    	final Player p = this.playerIDs.get(id);
+    	return p == null ? Player.NO_HANDLE : p.handle;
+    }
+    
+    /**
+     * @return number of columns on the board
+     */
+    int width() {
+    	return this.WIDTH;
+    }
+
+    /**
+     * @return number of rows on the board
+     */
+    int height() {
+    	return this.HEIGHT;
+    }
+    
+    /**
+     * @return the region covering the whole board
+     */
+    public Region bounds() {
+    	return new Region(1, 1, this.WIDTH, this.HEIGHT);
+    }
+
+    /**
+     *
      * @return A string representation of the board suited for communication with a text server
      */
     public String look(String id) {
-    	StringBuilder sb = new StringBuilder();
-    	
+    	return this.look(id, this.bounds());
+    }
+    
+    /**
+     * Renders only the spaces in region, in the format of look(). 
+     * 
+     * @param id player looking at the board
+     * @param region region of the board to render
+     * @return A string representation of region suited for communication with a text server
+     * @throws IllegalArgumentException if region is not on the board
+     */
+    public String look(String id, Region region) throws IllegalArgumentException {
+    	this.checkRegion(region);
+    	final int handle = this.handleOf(id);
     	synchronized (this.cards) {
-	    	for (int i = 0; i < this.cards.length; i++) {
-	    		for (int j = 0; j < this.cards[i].length; j++) {
-	    			BoardSpace card = this.cards[i][j];
-	    			if (card.isFaceUp()) {
-	    				if (card.getOwner().equals(id)) {
-	    					sb.append(">");
-	    				}
-	    				else {
-	    					sb.append(" ");
-	    				}
-	    				sb.append(card.character());
-	    			}
-	    			else if (!card.isEmpty()) {
-	    				sb.append(" *");
-	    			}
-	    			else {
-	    				sb.append("  ");
-	    			}
-	    		}
-	    		if (i != this.cards.length - 1) {
-	    			sb.append("\n");
-	    		}
-	    	}
+    		return this.renderText(handle, region);
+    	}
+    }
+    
+    /**
+     * Renders region in the given format. 
+     * 
+     * @param id player looking at the board, or null to render the board as a spectator sees it
+     * @param region region of the board to render
+     * @param format TEXT, HTTP or RLE
+     * @return a string representation of region in format
+     * @throws IllegalArgumentException if region is not on the board or format is DELTA, which only describes flips
+     */
+    public String look(String id, Region region, BoardFormat format) throws IllegalArgumentException {
+    	this.checkRegion(region);
+    	final int handle = this.handleOf(id);
+    	synchronized (this.cards) {
+    		switch (format) {
+    		case TEXT:
+    			return this.renderText(handle, region);
+    		case HTTP:
+    			return this.renderHttp(handle, region);
+    		case RLE:
+    			return this.renderRle(handle, region);
+    		default:
+    			throw new IllegalArgumentException("Cannot look at the board as a " + format);
+    		}
+    	}
+    }
+    
+    private void checkRegion(Region region) {
+    	if (!this.bounds().contains(region)) {
+    		throw new IllegalArgumentException("Region " + region + " is not on the board");
+    	}
+    }
+    
+    /**
+     * Renders region in the format of look(). Rows are stored in order, so only the spaces in the region are visited. 
+     * @param handle handle of the player looking at the board or Player.NO_HANDLE
+     * @param region region on the board
+     */
+    private String renderText(int handle, Region region) {
+    	StringBuilder sb = new StringBuilder(2 * region.width() * region.height() + region.height());
+    	for (int i = region.fromRow() - 1; i < region.toRow(); i++) {
+    		for (int j = region.fromCol() - 1; j < region.toCol(); j++) {
+    			BoardSpace card = this.cards[i][j];
+    			if (card.isFaceUp()) {
+    				if (handle != Player.NO_HANDLE && card.getOwnerHandle() == handle) {
+    					sb.append(">");
+    				}
+    				else {
+    					sb.append(" ");
+    				}
+    				sb.append(card.character());
+    			}
+    			else if (!card.isEmpty()) {
+    				sb.append(" *");
+    			}
+    			else {
+    				sb.append("  ");
+    			}
+    		}
+    		if (i != region.toRow() - 1) {
+    			sb.append("\n");
+    		}
     	}
     	return sb.toString();
     }
@@ -263,27 +474,163 @@ public class Board {
 		 *	INT ::= [0-9]+
 		 *	NEWLINE ::= "\n" | "\r" "\n"?
     	 */
-    	StringBuilder sb = new StringBuilder(this.WIDTH + "\n" + this.HEIGHT + "\n");
-    	
-    	for (int i = 0; i < this.cards.length; i++) {
-    		for (int j = 0; j < this.cards[i].length; j++) {
-    			BoardSpace card = this.cards[i][j];
-    			if (card.isFaceUp()) {
-    				if (card.getOwner().equals(id)) {
-    					sb.append("my " + card.character());
-    				}
-    				else sb.append("up " + card.character());
-    			} else if (card.isEmpty()) {
-    				sb.append("none");
-    			}
-    			else {
-    				sb.append("down");
-    			}
+    	return this.renderHttp(this.handleOf(id), this.bounds());
+    }
+    
+    /**
+     * Renders only the spaces in region, in the format of httpLook() with COLUMN and ROW giving the number of 
+     * columns and rows in the region. 
+     * 
+     * @param id player looking at the board
+     * @param region region of the board to render
+     * @return an http server response of region
+     * @throws IllegalArgumentException if region is not on the board
+     */
+    public String httpLook(String id, Region region) throws IllegalArgumentException {
+    	this.checkRegion(region);
+    	return this.renderHttp(this.handleOf(id), region);
+    }
+    
+    /**
+     * Renders region in the format of httpLook(). Rows are stored in order, so only the spaces in the region are visited. 
+     * @param handle handle of the player looking at the board or Player.NO_HANDLE
+     * @param region region on the board
+     */
+    private String renderHttp(int handle, Region region) {
+    	StringBuilder sb = new StringBuilder(region.width() + "\n" + region.height() + "\n");
+    	for (int i = region.fromRow() - 1; i < region.toRow(); i++) {
+    		for (int j = region.fromCol() - 1; j < region.toCol(); j++) {
+    			this.appendSpot(sb, this.cards[i][j], handle);
     			sb.append("\n");
     		}
     	}
     	return sb.toString();
+    }
+    
+    /**
+     * Renders the spaces a flip changed in the format of {@link BoardFormat#DELTA}. Must be called while holding the lock on cards. 
+     * @param handle handle of the player who flipped
+     * @param changed row major indices of the changed spaces or HoldingTable.NONE, in any order
+     */
+    private String renderDelta(int handle, int[] changed, long version) {
+    	StringBuilder sb = new StringBuilder().append(version).append("\n");
+    	final int[] spaces = changed.clone();
+    	Arrays.sort(spaces);
+    	for (int k = 0; k < spaces.length; k++) {
+    		if (spaces[k] == HoldingTable.NONE || (k > 0 && spaces[k] == spaces[k - 1])) {
+    			continue;
+    		}
+    		sb.append(spaces[k] % this.WIDTH + 1).append(",").append(spaces[k] / this.WIDTH + 1).append(" ");
+    		this.appendSpot(sb, this.spaceAt(spaces[k]), handle);
+    		sb.append("\n");
+    	}
+    	return sb.toString();
+    }
+    
+    /**
+     * Renders region in the format of {@link BoardFormat#RLE}. Must be called while holding the lock on cards. 
+     * Once the board keeps the set of occupied spaces, only the remaining cards in the region are visited and the 
+     * empty spaces between them are counted rather than read. 
+     * @param handle handle of the player looking at the board or Player.NO_HANDLE
+     * @param region region on the board
+     */
+    private String renderRle(int handle, Region region) {
+    	final RunEncoder runs = new RunEncoder(region.width() + "\n" + region.height() + "\n");
+    	final StringBuilder spot = new StringBuilder();
+    	for (int i = region.fromRow() - 1; i < region.toRow(); i++) {
+    		final int rowStart = i * this.WIDTH;
+    		if (this.occupied == null) {
+    			for (int j = region.fromCol() - 1; j < region.toCol(); j++) {
+    				spot.setLength(0);
+    				this.appendSpot(spot, this.cards[i][j], handle);
+    				runs.add(spot, 1);
+    			}
+    			continue;
+    		}
+    		int next = rowStart + region.fromCol() - 1;
+    		for (int index : this.occupied.subSet(next, true, rowStart + region.toCol() - 1, true)) {
+    			runs.add(NONE_SPOT, index - next);
+    			spot.setLength(0);
+    			this.appendSpot(spot, this.spaceAt(index), handle);
+    			runs.add(spot, 1);
+    			next = index + 1;
+    		}
+    		runs.add(NONE_SPOT, rowStart + region.toCol() - next);
+    	}
+    	return runs.finish();
+    }
+    
+    private static final String NONE_SPOT = "none";
+    
+    /**
+     * Builds a run length encoding of a sequence of spots, merging equal neighbouring spots into one run
+     */
+    private static class RunEncoder {
+    	private final StringBuilder sb;
+    	private final StringBuilder spot = new StringBuilder();
+    	private int count = 0;
+    	
+    	RunEncoder(String header) {
+    		this.sb = new StringBuilder(header);
+    	}
     	
+    	/**
+    	 * Adds count copies of spot to the sequence
+    	 */
+    	void add(CharSequence spot, int count) {
+    		if (count == 0) {
+    			return;
+    		}
+    		if (this.count > 0 && this.isSpot(spot)) {
+    			this.count += count;
+    			return;
+    		}
+    		this.flush();
+    		this.spot.setLength(0);
+    		this.spot.append(spot);
+    		this.count = count;
+    	}
+    	
+    	private boolean isSpot(CharSequence spot) {
+    		if (this.spot.length() != spot.length()) {
+    			return false;
+    		}
+    		for (int i = 0; i < spot.length(); i++) {
+    			if (this.spot.charAt(i) != spot.charAt(i)) {
+    				return false;
+    			}
+    		}
+    		return true;
+    	}
+    	
+    	private void flush() {
+    		if (this.count > 0) {
+    			this.sb.append(this.count).append(" ").append(this.spot).append("\n");
+    		}
+    	}
+    	
+    	String finish() {
+    		this.flush();
+    		this.count = 0;
+    		return this.sb.toString();
+    	}
+    }
+    
+    /**
+     * Appends the SPOT of httpLook() describing space to sb
+     */
+    private void appendSpot(StringBuilder sb, BoardSpace space, int handle) {
+    	if (space.isFaceUp()) {
+    		if (handle != Player.NO_HANDLE && space.getOwnerHandle() == handle) {
+    			sb.append("my ").append(space.character());
+    		}
+    		else sb.append("up ").append(space.character());
+    	} else if (space.isEmpty()) {
+    		sb.append("none");
+    	}
+    	else {
+    		sb.append("down");
+    	}
     }
     
     /**
@@ -295,58 +642,320 @@ public class Board {
      * @param col column of the card to flipped
      * @param row row of the card to be flipped
      * @param player player on the board flipping the card
-     * @return returns true if the card is flipped or false if the space is empty
+     * @return CLAIMED, MATCHED or MISMATCHED if the card is flipped, otherwise the reason it was not: 
+     * 		ALREADY_HELD, EMPTY, OUT_OF_BOUNDS, UNKNOWN_PLAYER or BUSY. See {@link FlipOutcome}. 
+     */
+    public FlipOutcome flip(int col, int row, String player) {
+    	return this.flip(col, row, player, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Attempts to flip the card located at (row, col) as in {@link #flip(int, int, String)}, but returns BUSY 
+     * immediately instead of blocking if another player controls the card. 
+     * 
+     * @param col column of the card to flipped
+     * @param row row of the card to be flipped
+     * @param player player on the board flipping the card
+     * @return outcome of the flip as in {@link #flip(int, int, String)}. 
+     * 		The board does not change if the outcome is BUSY. 
+     */
+    public FlipOutcome tryFlip(int col, int row, String player) {
+    	return this.flip(col, row, player, 0, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Attempts to flip the card located at (row, col) as in {@link #flip(int, int, String)}, but gives up and 
+     * returns BUSY if another player still controls the card after timeout. 
+     * 
+     * @param col column of the card to flipped
+     * @param row row of the card to be flipped
+     * @param player player on the board flipping the card
+     * @param timeout longest time to wait for control of the card, 0 to not wait
+     * @param unit unit of timeout
+     * @return outcome of the flip as in {@link #flip(int, int, String)}. 
+     * 		The board does not change if the outcome is BUSY. 
+     */
+    public FlipOutcome flip(int col, int row, String player, long timeout, TimeUnit unit) {
+    	return this.flip(col, row, player, timeout, unit, null);
+    }
+    
+    /**
+     * Flips as in {@link #flip(int, int, String, long, TimeUnit)}, recording the spaces the flip changed in changed if it is not null. 
+     */
+    private FlipOutcome flip(int col, int row, String player, long timeout, TimeUnit unit, int[] changed) {
+    	if (!this.onBoard(col, row)) {
+    		return FlipOutcome.OUT_OF_BOUNDS;
+    	}
+    	final Player p = this.playerIDs.get(player);
+    	if (p == null) {
+    		return FlipOutcome.UNKNOWN_PLAYER;
+    	}
+    	if (!this.metered) {
+    		return this.flipCard(col, row, p, unit.toNanos(timeout), changed);
+    	}
+    	final long start = System.nanoTime();
+    	try {
+    		final FlipOutcome outcome = this.flipCard(col, row, p, unit.toNanos(timeout), changed);
+    		if (outcome == FlipOutcome.BUSY) {
+    			BUSY.increment();
+    		}
+    		return outcome;
+    	} finally {
+    		FLIP_LATENCY.record(System.nanoTime() - start);
+    	}
+    }
+    
+    /**
+     * Attempts to flip the card located at (row, col) as in {@link #flip(int, int, String)} without blocking the 
+     * calling thread. If another player controls the card the flip waits in the card's queue and completes once 
+     * the card is released to this player. 
+     * 
+     * @param col column of the card to flipped
+     * @param row row of the card to be flipped
+     * @param player player on the board flipping the card
+     * @return future completed with the outcome of the flip as in {@link #flip(int, int, String)}
+     */
+    public CompletableFuture<FlipOutcome> flipAsync(int col, int row, String player) {
+    	return this.flipAsync(col, row, player, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Attempts to flip the card located at (row, col) as in {@link #flipAsync(int, int, String)}, but gives up 
+     * and completes with BUSY if another player still controls the card after timeout. 
+     * 
+     * @param col column of the card to flipped
+     * @param row row of the card to be flipped
+     * @param player player on the board flipping the card
+     * @param timeout longest time to wait for control of the card, 0 to not wait or Long.MAX_VALUE to wait until it is released. 
+     * 		Timeouts are measured by {@link TimerWheel#global()} and may run one tick late. 
+     * @param unit unit of timeout
+     * @return future completed with the outcome of the flip as in {@link #flip(int, int, String)}. 
+     * 		The board does not change if the outcome is BUSY. 
      */
-    public boolean flip(int col, int row, String player) {
+    public CompletableFuture<FlipOutcome> flipAsync(int col, int row, String player, long timeout, TimeUnit unit) {
+    	return this.flipAsync(col, row, player, timeout, unit, ForkJoinPool.commonPool(), null);
+    }
+    
+    /**
+     * Flips as in {@link #flipAsync(int, int, String, long, TimeUnit)}, recording the spaces the flip changed in changed if it is not null. 
+     * A flip that has to wait for its card is finished on executor. 
+     */
+    private CompletableFuture<FlipOutcome> flipAsync(int col, int row, String player, long timeout, TimeUnit unit, 
+    		Executor executor, int[] changed) {
+    	if (!this.onBoard(col, row)) {
+    		return CompletableFuture.completedFuture(FlipOutcome.OUT_OF_BOUNDS);
+    	}
+    	final Player p = this.playerIDs.get(player);
+    	if (p == null) {
+    		return CompletableFuture.completedFuture(FlipOutcome.UNKNOWN_PLAYER);
+    	}
+    	final long start = System.nanoTime();
+    	final int index = (row - 1) * this.WIDTH + (col - 1);
+    	
+    	final CompletableFuture<FlipOutcome> claimed = this.cards[row - 1][col - 1].claimAsync(player, p.handle);
+    	if (!claimed.isDone()) {
+    		if (timeout == 0) {
+    			claimed.complete(FlipOutcome.BUSY);
+    		} else if (timeout != Long.MAX_VALUE) {
+    			final TimerWheel.Timeout expiry = TimerWheel.global().schedule(() -> claimed.complete(FlipOutcome.BUSY), timeout, unit);
+    			claimed.whenComplete((outcome, error) -> expiry.cancel());
+    		}
+    	}
+    	
+    	final CompletableFuture<FlipOutcome> flipped;
+    	if (claimed.isDone()) {
+    		flipped = CompletableFuture.completedFuture(this.finishFlip(p, index, claimed.join(), changed));
+    	} else {
+    		// Finish the flip on another thread, never inside the release() or timer task that completed the claim
+    		flipped = claimed.thenApplyAsync(outcome -> this.finishFlip(p, index, outcome, changed), executor);
+    	}
+    	if (!this.metered) {
+    		return flipped;
+    	}
+    	return flipped.whenComplete((outcome, error) -> {
+    		if (outcome == FlipOutcome.BUSY) {
+    			BUSY.increment();
+    		}
+    		FLIP_LATENCY.record(System.nanoTime() - start);
+    	});
+    }
+    
+    /**
+     * Flips as in {@link #flip(int, int, String, long, TimeUnit)} and renders the board as the player sees it right 
+     * after the flip. The render is taken once the flip has finished and while holding the lock that matches and 
+     * releases are made under, so it always includes this flip, and the result carries the version it was taken at. 
+     * Flipping and rendering in one call saves the separate look() a server would otherwise make, and DELTA renders 
+     * only the spaces the flip changed. 
+     * 
+     * @param col column of the card to flipped
+     * @param row row of the card to be flipped
+     * @param player player on the board flipping the card
+     * @param timeout longest time to wait for control of the card, 0 to not wait
+     * @param unit unit of timeout
+     * @param format format of the render
+     * @return outcome of the flip with the board version and render
+     */
+    public FlipResult flipAndRender(int col, int row, String player, long timeout, TimeUnit unit, BoardFormat format) {
+    	final int[] changed = newChanged();
+    	final FlipOutcome outcome = this.flip(col, row, player, timeout, unit, changed);
+    	return this.render(outcome, player, format, changed);
+    }
+    
+    /**
+     * Flips without blocking as in {@link #flipAsync(int, int, String, long, TimeUnit)} and renders the board 
+     * as in {@link #flipAndRender(int, int, String, long, TimeUnit, BoardFormat)}. 
+     * 
+     * @param col column of the card to flipped
+     * @param row row of the card to be flipped
+     * @param player player on the board flipping the card
+     * @param timeout longest time to wait for control of the card, 0 to not wait or Long.MAX_VALUE to wait until it is released
+     * @param unit unit of timeout
+     * @param format format of the render
+     * @return future completed with the outcome of the flip with the board version and render
+     */
+    public CompletableFuture<FlipResult> flipAndRenderAsync(int col, int row, String player, long timeout, TimeUnit unit, BoardFormat format) {
+    	return this.flipAndRenderAsync(col, row, player, timeout, unit, format, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Flips and renders as in {@link #flipAndRenderAsync(int, int, String, long, TimeUnit, BoardFormat)}, but a flip 
+     * that has to wait for its card is finished and rendered on executor rather than on the common fork-join pool, 
+     * so a server can keep the work on threads it bounds. 
+     * 
+     * @param col column of the card to flipped
+     * @param row row of the card to be flipped
+     * @param player player on the board flipping the card
+     * @param timeout longest time to wait for control of the card, 0 to not wait or Long.MAX_VALUE to wait until it is released
+     * @param unit unit of timeout
+     * @param format format of the render
+     * @param executor runs the rest of a flip once its card is released or its timeout passes. Must not run tasks on 
+     * 		the calling thread, which may be releasing a card under the board lock or be the timer thread. 
+     * @return future completed with the outcome of the flip with the board version and render
+     */
+    public CompletableFuture<FlipResult> flipAndRenderAsync(int col, int row, String player, long timeout, TimeUnit unit, 
+    		BoardFormat format, Executor executor) {
+    	final int[] changed = newChanged();
+    	return this.flipAsync(col, row, player, timeout, unit, executor, changed)
+    			.thenApply(outcome -> this.render(outcome, player, format, changed));
+    }
+    
+    /**
+     * @return the number of changes made to the board so far. Every render of the board taken after reading 
+     * 		the version includes all changes up to it. 
+     */
+    public long version() {
+    	return this.version.get();
+    }
+    
+    private static int[] newChanged() {
+    	return new int[] {HoldingTable.NONE, HoldingTable.NONE, HoldingTable.NONE};
+    }
+    
+    private FlipResult render(FlipOutcome outcome, String player, BoardFormat format, int[] changed) {
+    	final int handle = this.handleOf(player);
+    	synchronized (this.cards) {
+    		final long version = this.version.get();
+    		switch (format) {
+    		case TEXT:
+    			return new FlipResult(outcome, version, this.renderText(handle, this.bounds()));
+    		case HTTP:
+    			return new FlipResult(outcome, version, this.renderHttp(handle, this.bounds()));
+    		case RLE:
+    			return new FlipResult(outcome, version, this.renderRle(handle, this.bounds()));
+    		default:
+    			return new FlipResult(outcome, version, this.renderDelta(handle, changed, version));
+    		}
+    	}
+    }
+    
+    /**
+     * @return true if (col, row) is a space on the board
+     */
+    private boolean onBoard(int col, int row) {
+    	return col >= 1 && col <= this.WIDTH && row >= 1 && row <= this.HEIGHT;
+    }
+    
+    private FlipOutcome flipCard(int col, int row, Player p, long timeoutNanos, int[] changed) {
+    	final int index = (row - 1) * this.WIDTH + (col - 1);
+    	
+    	// Atempt to claim the card. If the card is locked then this blocks until a lock is obtained or the timeout passes. 
+    	final FlipOutcome claimed = this.cards[row - 1][col - 1].tryClaim(p.ID, p.handle, timeoutNanos);
+    	return this.finishFlip(p, index, claimed, changed);
+    }
+    
+    /**
+     * Completes a flip once the player has tried to claim the card at index. 
+     * @param player player flipping the card
+     * @param index row major index of the card
+     * @param claimed outcome of claiming the card
+     * @param changed if not null, receives the indices of the spaces the flip changed
+     * @return outcome of the flip
+     */
+    private FlipOutcome finishFlip(Player player, int index, FlipOutcome claimed, int[] changed) {
+    	final int handle = player.handle;
     	// If this is the first card a player is flipping over check to see if 
     	// they already hold two cards. If they do, removed the cards if they match, otherwise
     	// flip the cards back over as long as they are still face up and not controlled by another 
     	// player. 
+    	if (claimed == FlipOutcome.BUSY) {
+    		// The player did not make a move, so the cards they hold are left alone
+    		return claimed;
+    	}
     	
-    	Player p = this.playerIDs.get(player);
+    	// Handle the cards the player holds. If the player holds two matching cards they are removed from the board.
+    	// If the player holds two non-matching cards they are released and turned over
+    	this.checkCards(player, changed);
+    	final int first = this.holdings.first(handle);
+    	final int second = this.holdings.second(handle);
     	
-    	// Atempt to claim the card. If the card is locked then this blocks until a lock is obtained. 
-    	boolean result = this.cards[row - 1][col - 1].claim(player);
-    	try {
-	    		final BoardSpace card = this.cards[row - 1][col - 1];
-	    		
-	    		// Handle the cards the player holds. If the player holds two matching cards they are removed from the board.
-	    		// If the player holds two non-matching cards they are released and turned over
-	    		this.checkCards(player);
-	    		BoardSpace first = this.players.get(p).getFirst();
-	    		BoardSpace second = this.players.get(p).getSecond();
-	    		
-	    		// Check if the player tries to flip a card he already controls
-	    		if (first.equals(card) || second.equals(card)) {
-	    			return false;
-	    		}
-	    		
-	    		try {
-	    			// If the player successfully flipped the card. Add the card to the players control and notify all board listeners
-	    			if (result) {
-	    				if (first.isEmpty()) {
-	    					this.players.put(p, new Pair<BoardSpace>(card, second));
-	    				} 
-	    				else if (second.isEmpty()) {
-	    					this.players.put(p, new Pair<BoardSpace>(first, card));
-	    				}
-	    				else {
-	    					throw new RuntimeException("Should never get here player already holds two cards");
-	    				}
-	    				this.notifyBoardListeners();
-	    			}
-	    			checkRep();
-	    			return result;
-	    		} catch (IndexOutOfBoundsException e) {
-	    			return false;
-	    		}
-    	} catch (Exception e) {
-    		System.out.println(e);
-    		e.printStackTrace();
-    		throw new RuntimeException(e.getMessage());
-    	} 
+    	// Check if the player tries to flip a card he already controls
+    	if (first == index || second == index) {
+    		return FlipOutcome.ALREADY_HELD;
+    	}
+    	if (!claimed.isFlipped()) {
+    		return claimed;
+    	}
     	
+    	// The player successfully flipped the card. Add the card to the players control and notify all board listeners
+    	final FlipOutcome outcome;
+    	if (first == HoldingTable.NONE && second == HoldingTable.NONE) {
+    		this.holdings.set(handle, index, HoldingTable.NONE);
+    		outcome = FlipOutcome.CLAIMED;
+    	} else if (first == HoldingTable.NONE || second == HoldingTable.NONE) {
+    		final int held = first == HoldingTable.NONE ? second : first;
+    		this.holdings.set(handle, held, index);
+    		outcome = this.spaceAt(held).match(this.spaceAt(index)) ? FlipOutcome.MATCHED : FlipOutcome.MISMATCHED;
+    	} else {
+    		throw new IllegalStateException("Player already holds two cards");
+    	}
+    	if (changed != null) {
+    		changed[CHANGED_FLIPPED] = index;
     	}
+    	this.publish(GameEvent.Type.FLIPPED, player.ID, index, HoldingTable.NONE, outcome);
+    	this.notifyBoardListeners(index);
+    	checkRep();
+    	return outcome;
+    }
+
+    /**
+     * Renders how long players have waited for control of each space on the board. 
+     * See {@link ContentionMap#heatmap(int, int)} for the format. 
+     * @param maxColumns maximum width of the heatmap, larger boards are scaled down
+     * @param maxRows maximum height of the heatmap, larger boards are scaled down
+     * @return heatmap of wait times
+     */
+    public String contentionHeatmap(int maxColumns, int maxRows) {
+    	return this.contention.heatmap(maxColumns, maxRows);
+    }
+    
+    /**
+     * Lists the spaces players have waited on the longest. See {@link ContentionMap#hottest(int)} for the format.
+     * @param n maximum number of spaces to list
+     * @return report of the n hottest spaces
+     */
+    public String hottestCards(int n) {
+    	return this.contention.hottest(n);
+    }
 
 	/**
      * Return the card at (row, column) = (i,j) on the board
@@ -371,68 +980,312 @@ public class Board {
      * cards no action is taken. If the player holds two matching cards, they are removed from
      * the board and the player relinquishes control of the cards. If the two cards do not match
      * the player relinquishes control and the cards are turned faced down. 
-     * @param id id of the player whose cards are being checked. 
+     * @param player player whose cards are being checked. 
+     * @param changed if not null, receives the indices of the cards that were removed or released
+     * @return true if the player held two cards
      */
-    private void checkCards(String id) {
-    	Player player = playerIDs.get(id);
-    	
-    	// Get the cards the player currently holds
-    	BoardSpace first = players.get(player).getFirst();
-    	BoardSpace second = players.get(player).getSecond();
-    	
-    	final BoardSpace empty1 = new EmptySpace(first.col(), first.row());
-    	final BoardSpace empty2 = new EmptySpace(second.col(), second.row());
+    private boolean checkCards(Player player, int[] changed) {
+    	final int handle = player.handle;
+    	// Get the spaces the player currently holds
+    	final int firstIndex = this.holdings.first(handle);
+    	final int secondIndex = this.holdings.second(handle);
+    	if (firstIndex == HoldingTable.NONE || secondIndex == HoldingTable.NONE) {
+    		return false;
+    	}
+    	if (changed != null) {
+    		changed[CHANGED_FIRST] = firstIndex;
+    		changed[CHANGED_SECOND] = secondIndex;
+    	}
     	
     	// Obtain a lock on the array. Do not need to lock each card since Card is threadsafe. 
     	synchronized (this.cards) {
+    		final BoardSpace first = this.spaceAt(firstIndex);
+    		final BoardSpace second = this.spaceAt(secondIndex);
     		if (first.match(second)){
     			// If the cards match release the card and remove it from the board. 
-    			this.cards[first.row() - 1][first.col() - 1].release();
-    			this.cards[first.row() - 1][first.col() - 1] = empty1;
-    			this.cards[second.row() - 1][second.col() - 1].release();
-    			this.cards[second.row() - 1][second.col() - 1] = empty2;
-    			this.players.put(player, new Pair<BoardSpace>(empty1, empty2));
-    			this.notifyBoardListeners();
-    		} else if (!first.isEmpty() && !second.isEmpty()){
+    			// The match is published first so that players waiting for the cards see it before they are removed. 
+    			this.publish(GameEvent.Type.MATCH_REMOVED, player.ID, firstIndex, secondIndex, null);
+    			first.remove();
+    			this.cards[first.row() - 1][first.col() - 1] = new EmptySpace(first.col(), first.row());
+    			second.remove();
+    			this.cards[second.row() - 1][second.col() - 1] = new EmptySpace(second.col(), second.row());
+    			this.holdings.set(handle, HoldingTable.NONE, HoldingTable.NONE);
+    			this.removed(firstIndex, secondIndex);
+    			if (this.metered) {
+    				MATCHES.increment();
+    			}
+    			this.notifyBoardListeners(firstIndex, secondIndex);
+    		} else {
     			// Otherwise if the cards don't match and the player holds two cards. Release the cards and put them face down
+    			this.publish(GameEvent.Type.MISMATCH_RELEASED, player.ID, firstIndex, secondIndex, null);
     			first.release();
     			second.release();
-    			this.notifyBoardListeners();
-    			this.players.put(player, new Pair<BoardSpace>(empty1, empty2));
+    			this.notifyBoardListeners(firstIndex, secondIndex);
+    			this.holdings.set(handle, HoldingTable.NONE, HoldingTable.NONE);
     		}
     	}
-    	
+    	return true;
+    }
+    
+    /**
+     * Removes or releases the two cards a player controls as their next flip would, without flipping another card. 
+     * Used to replay games, see {@link GameReplay}. 
+     * @param id id of a player on the board
+     * @return true if the player controlled two cards
+     */
+    boolean resolve(String id) {
+    	final Player p = this.playerIDs.get(id);
+    	return p != null && this.checkCards(p, null);
+    }
+    
+    /**
+     * Records that the cards at first and second were removed. Once few enough cards are left the board starts 
+     * keeping the set of occupied spaces so that sparse renders only visit the remaining cards. 
+     * Must be called while holding the lock on cards. 
+     */
+    private void removed(int first, int second) {
+    	this.remaining -= 2;
+    	if (this.occupied != null) {
+    		this.occupied.remove(first);
+    		this.occupied.remove(second);
+    	} else if (this.remaining < SPARSE_OCCUPANCY * this.WIDTH * this.HEIGHT) {
+    		final NavigableSet<Integer> occupied = new TreeSet<Integer>();
+    		for (int index = 0; index < this.WIDTH * this.HEIGHT; index++) {
+    			if (!this.spaceAt(index).isEmpty()) {
+    				occupied.add(index);
+    			}
+    		}
+    		this.occupied = occupied;
+    	}
+    }
+    
+    /**
+     * Identifies a player's view of the board without rendering it. The tag changes whenever the board version 
+     * or the cards the player controls change, so a client holding a render can tell whether it is out of date 
+     * by comparing tags. A change in progress is only reflected once it completes. 
+     * @param id id of a player
+     * @return tag of the form VERSION "." FIRST "." SECOND where FIRST and SECOND are the spaces the player controls
+     */
+    public String viewTag(String id) {
+    	// Read the version first so that a render taken after this call reflects at least the tagged version
+    	final long version = this.version.get();
+    	final int handle = this.handleOf(id);
+    	if (handle == Player.NO_HANDLE) {
+    		return version + "." + HoldingTable.NONE + "." + HoldingTable.NONE;
+    	}
+    	return version + "." + this.holdings.first(handle) + "." + this.holdings.second(handle);
+    }
+    
+    /**
+     * @param id id of a player
+     * @return true if the player is on the board and controls a card, so their view of the board differs from a spectator's
+     */
+    public boolean controlsCards(String id) {
+    	final int handle = this.handleOf(id);
+    	return handle != Player.NO_HANDLE 
+    			&& (this.holdings.first(handle) != HoldingTable.NONE || this.holdings.second(handle) != HoldingTable.NONE);
     }
     
     /**
      * Adds a player to the board. The player controls no cards when they are added. 
+     * Each player is interned to a dense integer handle that indexes the cards they control. 
      * @param id id of player to be added. Must be a unique player id
      * @return true if the player is added to the board. 
      */
     public boolean addPlayer(String id) {
-    	Player p = new Player(id);
-    	final boolean result = !this.playerIDs.containsKey(id);
-    	this.playerIDs.putIfAbsent(id, p);
-    	this.players.putIfAbsent(p, new Pair<BoardSpace>(EMPTY_SPACE, EMPTY_SPACE));
+    	if (this.playerIDs.containsKey(id)) {
+    		return false;
+    	}
+    	final boolean[] added = new boolean[1];
+    	this.playerIDs.computeIfAbsent(id, key -> {
+    		final Integer free = this.freeHandles.poll();
+    		final Player p = new Player(key, free != null ? free : this.nextHandle.getAndIncrement());
+    		this.holdings.ensure(p.handle);
+    		added[0] = true;
+    		return p;
+    	});
+    	if (added[0]) {
+    		this.publish(GameEvent.Type.PLAYER_ADDED, id, HoldingTable.NONE, HoldingTable.NONE, null);
+    	}
+    	final boolean result = added[0];
     	checkRep();
     	return result;
     }
     
     /**
-     * Adds a board listener
+     * Removes a player from the board. Cards the player controls are released and turned face down,
+     * even if they match, and the player's handle may be given to a player added later. 
+     * Must not be called while the player has a flip in progress. 
+     * @param id id of the player to be removed
+     * @return true if the player was on the board
+     */
+    public boolean removePlayer(String id) {
+    	final Player p = this.playerIDs.get(id);
+    	if (p == null) {
+    		return false;
+    	}
+    	final int first, second;
+    	final boolean releasedFirst, releasedSecond;
+    	synchronized (this.cards) {
+    		if (!this.playerIDs.remove(id, p)) {
+    			return false;
+    		}
+    		this.publish(GameEvent.Type.PLAYER_REMOVED, id, HoldingTable.NONE, HoldingTable.NONE, null);
+    		first = this.holdings.first(p.handle);
+    		second = this.holdings.second(p.handle);
+    		releasedFirst = this.releaseHeld(p.handle, first);
+    		releasedSecond = this.releaseHeld(p.handle, second);
+    		this.holdings.set(p.handle, HoldingTable.NONE, HoldingTable.NONE);
+    	}
+    	this.freeHandles.add(p.handle);
+    	if (releasedFirst && releasedSecond) {
+    		this.notifyBoardListeners(first, second);
+    	} else if (releasedFirst || releasedSecond) {
+    		this.notifyBoardListeners(releasedFirst ? first : second);
+    	}
+    	checkRep();
+    	return true;
+    }
+    
+    /**
+     * Releases the space at index if it is controlled by the player with handle. Must be called while holding the lock on cards. 
+     * @return true if a card was released
+     */
+    private boolean releaseHeld(int handle, int index) {
+    	if (index == HoldingTable.NONE) {
+    		return false;
+    	}
+    	final BoardSpace space = this.spaceAt(index);
+    	if (space.getOwnerHandle() != handle) {
+    		return false;
+    	}
+    	space.release();
+    	return true;
+    }
+    
+    /**
+     * Reports this board to the process-wide {@link MetricsRegistry}: the time its flips take, busy flips and matches 
+     * from now on, and its players and watchers as the memory_players and memory_watchers gauges, replacing the board 
+     * reported before. Servers call this for the board they serve. Boards made for simulations, replays or tests are 
+     * not reported unless this is called, so they do not skew the server's metrics. 
+     */
+    public void exportMetrics() {
+    	MetricsRegistry.global().gauge("memory_players", "Players on the served board", () -> this.playerIDs.size());
+    	MetricsRegistry.global().gauge("memory_watchers", "Board listeners watching the served board for changes", 
+    			() -> this.watching.sum());
+    	this.metered = true;
+    }
+    
+    /**
+     * Adds a board listener that is notified of changes anywhere on the board
      * @param listener listener to be added. 
      */
     public void addBoardListener(BoardListener listener) {
-    	this.listeners.add(listener);
+    	if (this.watchers.add(listener, null)) {
+    		this.watching.increment();
+    	}
+    }
+    
+    /**
+     * Adds a board listener that is only notified of changes to spaces in region. 
+     * Listeners are kept in a spatial index, so a change only visits the listeners watching nearby spaces. 
+     * @param listener listener to be added. 
+     * @param region region of the board to watch
+     * @throws IllegalArgumentException if region is not on the board
+     */
+    public void addBoardListener(BoardListener listener, Region region) throws IllegalArgumentException {
+    	this.checkRegion(region);
+    	if (this.watchers.add(listener, region)) {
+    		this.watching.increment();
+    	}
+    }
+    
+    /**
+     * Removes a board listener so that it is no longer notified of changes. 
+     * May be called from the listener's onBoardChange(). 
+     * @param listener listener to be removed
+     * @return true if the listener was watching the board
+     */
+    public boolean removeBoardListener(BoardListener listener) {
+    	if (this.watchers.remove(listener)) {
+    		this.watching.decrement();
+    		return true;
+    	}
+    	return false;
+    }
+    
+    /**
+     * Adds a listener that is told of every change made to the game from now on, see {@link GameEventListener}. 
+     * @param listener listener to be added
+     */
+    public void addGameEventListener(GameEventListener listener) {
+    	this.gameListeners.add(listener);
+    }
+    
+    /**
+     * Removes a game event listener so that it is no longer told of changes. 
+     * @param listener listener to be removed
+     * @return true if the listener was added to this board
+     */
+    public boolean removeGameEventListener(GameEventListener listener) {
+    	return this.gameListeners.remove(listener);
+    }
+    
+    /**
+     * @return live statistics of the game, updated as the board changes
+     */
+    public GameStats stats() {
+    	return this.stats;
+    }
+    
+    /**
+     * Records a change in the game statistics and tells the game event listeners of it. 
+     * Nothing is allocated if there are no listeners. 
+     * @param type kind of change
+     * @param player id of the player making the change
+     * @param first row major index of the first space changed, or NONE
+     * @param second row major index of the second space changed, or NONE
+     * @param outcome outcome of a flip, otherwise null
+     */
+    private void publish(GameEvent.Type type, String player, int first, int second, FlipOutcome outcome) {
+    	this.stats.record(type, player, outcome);
+    	if (this.gameListeners.isEmpty()) {
+    		return;
+    	}
+    	final GameEvent event = new GameEvent(type, player, 
+    			first == HoldingTable.NONE ? 0 : first % this.WIDTH + 1, first == HoldingTable.NONE ? 0 : first / this.WIDTH + 1, 
+    			second == HoldingTable.NONE ? 0 : second % this.WIDTH + 1, second == HoldingTable.NONE ? 0 : second / this.WIDTH + 1, 
+    			outcome);
+    	for (GameEventListener listener : this.gameListeners) {
+    		listener.onGameEvent(event);
+    	}
+    }
+    
+    /**
+     * @return the card in each space in row major order, or "" for an empty space. 
+     * 		Cards are listed whether or not they are face up. 
+     */
+    List<String> layout() {
+    	final List<String> layout = new ArrayList<String>(this.WIDTH * this.HEIGHT);
+    	synchronized (this.cards) {
+    		for (int index = 0; index < this.WIDTH * this.HEIGHT; index++) {
+    			final BoardSpace space = this.spaceAt(index);
+    			layout.add(space.isEmpty() ? "" : space.character());
+    		}
+    	}
+    	return layout;
     }
     
     /**
-     * Notifies all board listeners of a change to the board and performs the action associated with the listener. 
+     * Notifies the board listeners watching any of the changed spaces of a change to the board and performs the action 
+     * associated with the listener. Each listener is notified at most once per change.
      * Players are notified when a card is turned over, removed or released. Note that players are only notified when 
      * after a player releases both cards and both cards are already face down or after both matching cards are removed. 
+     * @param changed row major indices of the spaces that changed
      */
-    protected void notifyBoardListeners() {
-    	this.listeners.forEach(listener -> listener.onBoardChange());
+    protected void notifyBoardListeners(int... changed) {
+    	this.version.incrementAndGet();
+    	this.watchers.notify(changed);
     }
     
     @Override
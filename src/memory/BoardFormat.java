@@ -0,0 +1,37 @@
+package memory;
+
+/**
+ * Ways a player's view of a Memory Scramble board can be rendered. 
+ */
+public enum BoardFormat {
+	
+	/**
+	 * The text protocol format of {@link Board#look(String)}
+	 */
+	TEXT,
+	
+	/**
+	 * The HTTP format of {@link Board#httpLook(String)}
+	 */
+	HTTP,
+	
+	/**
+	 * Only the spaces a flip changed, in the HTTP spot format. 
+	 * 
+	 * Response has format
+	 *  DELTA ::= VERSION NEWLINE (COLUMN "," ROW " " SPOT NEWLINE)*
+	 *  VERSION ::= INT
+	 */
+	DELTA,
+	
+	/**
+	 * The spots of {@link Board#httpLook(String)} in row major order, with runs of equal spots written once. 
+	 * On mostly empty boards this is rendered from the remaining cards only. 
+	 * 
+	 * Response has format
+	 *  RLE ::= COLUMN NEWLINE ROW NEWLINE (COUNT " " SPOT NEWLINE)*
+	 *  COUNT ::= INT
+	 */
+	RLE;
+	
+}
@@ -1,5 +1,6 @@
 package memory;
 
+import java.util.concurrent.CompletableFuture;
 
 public interface BoardSpace {
 
@@ -39,17 +40,61 @@ public interface BoardSpace {
 	 */
 	public boolean claim(String id);
 	
+	/**
+	 * Attempts to turn over a card so that it is face up, recording the handle of the player
+	 * so that ownership can be checked without comparing ids. 
+	 * @param id id of the player turning the card over
+	 * @param handle handle of the player on the board, or Player.NO_HANDLE
+	 * @return true if the card is turned over. returns false if the card was already controlled
+	 */
+	public boolean claim(String id, int handle);
+	
+	/**
+	 * Attempts to turn over a card so that it is face up, waiting at most timeoutNanos for 
+	 * another player to release it. 
+	 * @param id id of the player turning the card over
+	 * @param handle handle of the player on the board, or Player.NO_HANDLE
+	 * @param timeoutNanos longest time to wait in nanoseconds, 0 to not wait or Long.MAX_VALUE to wait until the card is released
+	 * @return CLAIMED if the card is turned over, BUSY if another player controlled it until the timeout,
+	 * 		ALREADY_HELD if this player controls the card or EMPTY if the space is empty or the card was removed
+	 */
+	public FlipOutcome tryClaim(String id, int handle, long timeoutNanos);
+	
+	/**
+	 * Attempts to turn over a card so that it is face up without blocking. If another player controls the card 
+	 * the claim waits in a queue and is completed when the card is released to it. Completing the returned future 
+	 * early, e.g. with BUSY after a timeout, gives up the claim. 
+	 * @param id id of the player turning the card over
+	 * @param handle handle of the player on the board, or Player.NO_HANDLE
+	 * @return future completed with CLAIMED once the player controls the card, ALREADY_HELD if this player 
+	 * 		controls the card or EMPTY if the space is empty or the card was removed
+	 */
+	public CompletableFuture<FlipOutcome> claimAsync(String id, int handle);
+	
 	/**
 	 * Releases the card from its owner and puts it face down. 
 	 */
 	public void release();
 	
+	/**
+	 * Releases the card from its owner and takes it off the board. Players waiting for the card 
+	 * are told it was not flipped and later claims fail. 
+	 */
+	public void remove();
+	
 	/**
 	 * 
 	 * @return id of the current owner of the card. 
 	 */
 	public String getOwner();
 	
+	/**
+	 * 
+	 * @return handle of the current owner of the card, or Player.NO_HANDLE if the card has no owner
+	 * 		or was claimed without a handle
+	 */
+	public int getOwnerHandle();
+	
 	/**
 	 * 
 	 * @return true if the card has an owner
@@ -0,0 +1,44 @@
+package memory;
+
+/**
+ * A simulated player of one game of Memory Scramble, used by {@link SelfPlay}.
+ *
+ * <p>A bot sees what a player at the table would see: every card turned face up by any player and every
+ * pair removed from the board. Spaces are given as row major indices (row - 1) * columns + (col - 1).
+ * Bots are used by one thread at a time and need not be threadsafe.
+ */
+public interface Bot {
+
+	/**
+	 * Called when any player turns over the card at index.
+	 * @param index space of the card
+	 * @param card the card
+	 */
+	public void seen(int index, String card);
+
+	/**
+	 * Called when the card at index is removed from the board.
+	 * @param index space that is now empty
+	 */
+	public void removed(int index);
+
+	/**
+	 * Called when the bot tried to flip the card at index but another player controlled it.
+	 * @param index space of the card
+	 */
+	public void busy(int index);
+
+	/**
+	 * @return space of the first card to flip this turn, which must not have been removed
+	 */
+	public int chooseFirst();
+
+	/**
+	 * @param first space of the first card flipped this turn
+	 * @param card the first card, which has also been passed to seen()
+	 * @return space of the second card to flip this turn, which must not be first or have been removed,
+	 * 		or first if there is no other card left
+	 */
+	public int chooseSecond(int first, String card);
+
+}
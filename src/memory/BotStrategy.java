@@ -0,0 +1,69 @@
+package memory;
+
+import java.util.Random;
+
+/**
+ * A way of playing Memory Scramble that {@link SelfPlay} can seat at a simulated game.
+ * Strategies are immutable and make a new {@link Bot} for every game.
+ */
+public interface BotStrategy {
+
+	/**
+	 * @param spaces number of spaces on the board
+	 * @param random source of randomness for the bot's choices
+	 * @return a new bot that has seen nothing of the board
+	 */
+	public Bot newBot(int spaces, Random random);
+
+	/**
+	 * @return a strategy that flips random cards and remembers nothing
+	 */
+	public static BotStrategy random() {
+		return limitedMemory(0);
+	}
+
+	/**
+	 * @return a strategy that remembers every card it has seen, flips known pairs and otherwise turns over cards it has not seen
+	 */
+	public static BotStrategy perfectMemory() {
+		return limitedMemory(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param cards number of cards the bot remembers, forgetting the card it saw longest ago first
+	 * @return a strategy that plays as perfectMemory() but only remembers the cards it saw most recently
+	 */
+	public static BotStrategy limitedMemory(int cards) {
+		if (cards < 0) {
+			throw new IllegalArgumentException("Memory must not be negative: " + cards);
+		}
+		return new BotStrategy() {
+			@Override
+			public Bot newBot(int spaces, Random random) {
+				return new MemoryBot(spaces, cards, random);
+			}
+
+			@Override
+			public String toString() {
+				return cards == 0 ? "random" : cards == Integer.MAX_VALUE ? "perfect" : "memory:" + cards;
+			}
+		};
+	}
+
+	/**
+	 * @param name "random", "perfect" or "memory:N" for a bot that remembers N cards
+	 * @return the strategy with that name
+	 * @throws IllegalArgumentException if name is not one of these
+	 */
+	public static BotStrategy parse(String name) throws IllegalArgumentException {
+		if (name.equals("random")) {
+			return random();
+		} else if (name.equals("perfect")) {
+			return perfectMemory();
+		} else if (name.matches("memory:[0-9]{1,9}")) {
+			return limitedMemory(Integer.parseInt(name.substring("memory:".length())));
+		}
+		throw new IllegalArgumentException("Unknown strategy '" + name + "', expected random, perfect or memory:N");
+	}
+
+}
@@ -1,6 +1,16 @@
 package memory;
 
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import memory.metrics.LatencyHistogram;
+import memory.metrics.MetricsRegistry;
 
 public class Card implements BoardSpace{
 
@@ -9,10 +19,44 @@ public class Card implements BoardSpace{
 	 * Cards can be controlled by players and turned over on the board. 
 	 */
 	final String character;
-	Boolean faceUp = false;
-	String owner = "";
+	volatile boolean faceUp = false;
+	volatile String owner = "";
+	volatile int ownerHandle = Player.NO_HANDLE;
 	private final int row, col;
-	private final ReentrantLock lock = new ReentrantLock();
+	private final Object lock = new Object();
+	// Thread that claimed the card, ASYNC if it was claimed by claimAsync(), or null if the card is not controlled
+	private Object holder = null;
+	// Claims waiting for the card, oldest first. When FAIR is false threads blocked in tryClaim() are not included. 
+	private final Queue<Waiter> waiters = new ArrayDeque<Waiter>();
+	// True once the card has been matched and taken off the board
+	private boolean removed = false;
+	private final ContentionMap contention;
+	
+	// Holder of cards claimed by claimAsync(), which are not controlled by any thread
+	private static final Object ASYNC = new Object();
+	
+	// If true, claims wait in one FIFO queue and release() hands the card to the longest waiting claim. 
+	// If false, blocked threads are woken one at a time and race new claimers for the card. 
+	static final boolean FAIR = Boolean.parseBoolean(System.getProperty("memory.card.fair", "true"));
+	
+	/**
+	 * A claim waiting for the card to be released
+	 */
+	private static class Waiter {
+		final Object holder;
+		final String id;
+		final int handle;
+		final CompletableFuture<FlipOutcome> future = new CompletableFuture<FlipOutcome>();
+		
+		Waiter(Object holder, String id, int handle) {
+			this.holder = holder;
+			this.id = id;
+			this.handle = handle;
+		}
+	}
+	
+	private static final LatencyHistogram LOCK_WAIT = MetricsRegistry.global().histogram("memory_card_lock_wait_seconds", "",
+			"Time players spent blocked waiting for control of a card held by another player");
 	
 	/*
 	 * AF(character) - A card at (row, col) that can be played on a memory scramble board. 
@@ -21,9 +65,13 @@ public class Card implements BoardSpace{
 	 * 		only final values or primitive types are returned
 	 * Thread Safety Argument - 
 	 * 		int() and col() return immutable parts of the rep and are therefore threadsafe
-	 * 		The following methods all obtain a lock on the Card before returning values and are therefore threadsafe. 
-	 * 		All methods which mutate or observe non final parts of the rep 
-	 * 		first obtain a lock on that part of the rep before it is viewed or modified. 
+	 * 		holder, waiters, removed, owner, ownerHandle and faceUp are only modified while holding the lock monitor. 
+	 * 		owner, ownerHandle and faceUp are volatile so observers read them without taking the lock. 
+	 * 		Control is tracked by holder rather than by a thread owned lock, so any thread may release the card, 
+	 * 		e.g. when an idle player is removed from the board. 
+	 * 		release() hands the card to the oldest waiter while holding the lock and completes its future after 
+	 * 		letting go of the lock, so code waiting on the future never runs inside the lock. Only the thread or 
+	 * 		flip the card was handed to is woken, so released cards are never contended. 
 	 */
 	
 	/**
@@ -33,12 +81,24 @@ public class Card implements BoardSpace{
 	 * @throws IllegalArgumentException if row or col <= 0
 	 */
 	public Card (String character, int col, int row) throws IllegalArgumentException {
+		this(character, col, row, null);
+	}
+	
+	/**
+	 * @param row row of the new card on the board
+	 * @param col column of the new card on the board
+	 * @param character Character or emoji which will appear on the card. 
+	 * @param contention records time players spend waiting for control of this card, or null to not record waits
+	 * @throws IllegalArgumentException if row or col <= 0
+	 */
+	Card (String character, int col, int row, ContentionMap contention) throws IllegalArgumentException {
 		this.character = character;
 		if (row <= 0 || col <= 0) {
 			throw new IllegalArgumentException("(" + row + ", " + col + ") Row and Column must be positive");
 		}
 		this.col = col;
 		this. row = row;
+		this.contention = contention;
 		this.checkRep();
 	}
 	
@@ -54,9 +114,7 @@ public class Card implements BoardSpace{
 	
 	@Override
 	public boolean isFaceUp() {
-		synchronized (this.faceUp) {
-			return this.faceUp;
-		}
+		return this.faceUp;
 	}
 	
 	private void checkRep() {
@@ -67,47 +125,187 @@ public class Card implements BoardSpace{
 	
 	@Override
 	public boolean claim(String id) {
-		this.lock();
-			if (!this.hasOwner()) {
-				synchronized (owner) {
-					this.owner = id;
+		return this.claim(id, Player.NO_HANDLE);
+	}
+	
+	@Override
+	public boolean claim(String id, int handle) {
+		return this.tryClaim(id, handle, Long.MAX_VALUE).isFlipped();
+	}
+	
+	@Override
+	public FlipOutcome tryClaim(String id, int handle, long timeoutNanos) {
+		if (!FAIR) {
+			synchronized (this.lock) {
+				final FlipOutcome outcome = this.lock(id, timeoutNanos);
+				if (outcome != FlipOutcome.CLAIMED) {
+					return outcome;
 				}
-				synchronized (faceUp) {
-					this.faceUp = true;
+				this.take(Thread.currentThread(), id, handle);
+				return outcome;
+			}
+		}
+		
+		// Join the queue of waiters and park until release() hands the card to this thread or the timeout passes
+		final CompletableFuture<FlipOutcome> claim = this.claim(Thread.currentThread(), id, handle, timeoutNanos > 0);
+		try {
+			return timeoutNanos == Long.MAX_VALUE ? claim.get() : claim.get(timeoutNanos, TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			// Unless the card was handed over at the last moment
+			claim.complete(FlipOutcome.BUSY);
+			return claim.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			if (claim.complete(FlipOutcome.BUSY)) {
+				throw new RuntimeException("wait interupted");
+			}
+			return claim.join();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+	
+	@Override
+	public CompletableFuture<FlipOutcome> claimAsync(String id, int handle) {
+		return this.claim(ASYNC, id, handle, true);
+	}
+	
+	/**
+	 * Claims the card if it is not controlled, otherwise adds a waiter to the end of the queue. 
+	 * @param holder thread claiming the card or ASYNC
+	 * @param id id of the player claiming the card
+	 * @param handle handle of the player
+	 * @param wait if false a claim that would have to wait completes with BUSY instead
+	 * @return future completed with the outcome of the claim
+	 */
+	private CompletableFuture<FlipOutcome> claim(Object holder, String id, int handle, boolean wait) {
+		final Waiter waiter;
+		synchronized (this.lock) {
+			if (this.removed) {
+				return CompletableFuture.completedFuture(FlipOutcome.EMPTY);
+			}
+			if (this.holder == null) {
+				this.take(holder, id, handle);
+				return CompletableFuture.completedFuture(FlipOutcome.CLAIMED);
+			}
+			if (this.owner.equals(id)) {
+				return CompletableFuture.completedFuture(FlipOutcome.ALREADY_HELD);
+			}
+			// Another player claimed the card on this thread, so this thread would wait for itself
+			if (holder instanceof Thread && this.holder == holder) {
+				return CompletableFuture.completedFuture(FlipOutcome.BUSY);
+			}
+			if (!wait) {
+				return CompletableFuture.completedFuture(FlipOutcome.BUSY);
+			}
+			waiter = new Waiter(holder, id, handle);
+			this.waiters.add(waiter);
+		}
+		
+		final long waitStart = System.nanoTime();
+		if (this.contention != null) {
+			this.contention.startWait(this.col, this.row);
+		}
+		waiter.future.whenComplete((outcome, error) -> {
+			final long waited = System.nanoTime() - waitStart;
+			LOCK_WAIT.record(waited);
+			if (this.contention != null) {
+				this.contention.endWait(this.col, this.row, waited);
+			}
+			if (outcome != FlipOutcome.CLAIMED) {
+				// The claim was given up, e.g. completed with BUSY after a timeout
+				synchronized (this.lock) {
+					this.waiters.remove(waiter);
 				}
-				checkRep();
-				return true;
 			}
-			return false;
+		});
+		return waiter.future;
 	}
 	
 	@Override
 	public void release() {
-		synchronized (this.lock){
-			synchronized (owner) {
-				this.owner = "";
+		Waiter next;
+		synchronized (this.lock) {
+			if (this.holder == null) {
+				throw new IllegalMonitorStateException("Card is not controlled by a player");
 			}
-			synchronized (faceUp) {
-				this.faceUp = false;
+			next = this.handOff();
+		}
+		// A waiter may have given up after it was handed the card, in which case release it again
+		while (next != null && !next.future.complete(FlipOutcome.CLAIMED)) {
+			synchronized (this.lock) {
+				next = this.handOff();
 			}
-			this.lock.unlock();
-			this.lock.notify();
 		}
 		checkRep();
 	}
 	
 	@Override
-	public String getOwner() {
-		synchronized (owner) {
-			return this.owner;
+	public void remove() {
+		final List<Waiter> abandoned;
+		synchronized (this.lock) {
+			if (this.holder == null) {
+				throw new IllegalMonitorStateException("Card is not controlled by a player");
+			}
+			this.removed = true;
+			this.holder = null;
+			this.owner = "";
+			this.ownerHandle = Player.NO_HANDLE;
+			this.faceUp = false;
+			abandoned = new ArrayList<Waiter>(this.waiters);
+			this.waiters.clear();
+			this.lock.notifyAll();
 		}
+		for (Waiter waiter : abandoned) {
+			waiter.future.complete(FlipOutcome.EMPTY);
+		}
+		checkRep();
+	}
+	
+	/**
+	 * Gives the card to the oldest waiter that has not given up, or releases it and wakes a blocked 
+	 * claimer if there is none. Must be called while holding the lock monitor. 
+	 * @return the waiter that now controls the card, or null if the card was released
+	 */
+	private Waiter handOff() {
+		for (Waiter next = this.waiters.poll(); next != null; next = this.waiters.poll()) {
+			if (!next.future.isDone()) {
+				this.take(next.holder, next.id, next.handle);
+				return next;
+			}
+		}
+		this.holder = null;
+		this.owner = "";
+		this.ownerHandle = Player.NO_HANDLE;
+		this.faceUp = false;
+		this.lock.notify();
+		return null;
+	}
+	
+	/**
+	 * Gives control of the card to player id. Must be called while holding the lock monitor. 
+	 */
+	private void take(Object holder, String id, int handle) {
+		this.holder = holder;
+		this.owner = id;
+		this.ownerHandle = handle;
+		this.faceUp = true;
+		checkRep();
+	}
+	
+	@Override
+	public String getOwner() {
+		return this.owner;
+	}
+	
+	@Override
+	public int getOwnerHandle() {
+		return this.ownerHandle;
 	}
 	
 	@Override
 	public boolean hasOwner() {
-		synchronized (owner) {
-			return !this.owner.equals("");
-		}
+		return !this.owner.equals("");
 	}
 	
 	@Override
@@ -125,20 +323,57 @@ public class Card implements BoardSpace{
 	}
 	
 	/**
-	 * Attempts to obtain the lock on the card. 
+	 * Waits until the card is not controlled, competing with any other woken or newly arrived claimer. 
+	 * Only used when FAIR is false. Must be called while holding the lock monitor. 
+	 * @param id player waiting for the card
+	 * @param timeoutNanos longest time to wait, or Long.MAX_VALUE to wait until the card is released
+	 * @return CLAIMED if the card is no longer controlled, BUSY if it is still controlled after timeoutNanos or 
+	 * 		was claimed by another player on the calling thread, ALREADY_HELD if player id controls it or EMPTY if 
+	 * 		it was removed from the board
 	 */
-	private void lock(){
-		synchronized (this.lock){
-			while (this.lock.isLocked()) {
-				if (this.lock.isHeldByCurrentThread()) {return;}
+	private FlipOutcome lock(String id, long timeoutNanos) {
+		long waitStart = 0;
+		try {
+			while (this.holder != null || this.removed) {
+				if (this.removed) {
+					return FlipOutcome.EMPTY;
+				}
+				if (this.owner.equals(id)) {
+					return FlipOutcome.ALREADY_HELD;
+				}
+				if (this.holder == Thread.currentThread()) {
+					return FlipOutcome.BUSY;
+				}
+				final long remaining = waitStart == 0 ? timeoutNanos : timeoutNanos - (System.nanoTime() - waitStart);
+				if (remaining <= 0) {
+					return FlipOutcome.BUSY;
+				}
+				if (waitStart == 0) {
+					waitStart = System.nanoTime();
+					if (this.contention != null) {
+						this.contention.startWait(this.col, this.row);
+					}
+				}
 				try {
-					this.lock.wait();
+					if (timeoutNanos == Long.MAX_VALUE) {
+						this.lock.wait();
+					} else {
+						TimeUnit.NANOSECONDS.timedWait(this.lock, remaining);
+					}
 				} catch (InterruptedException e) {
-					e.printStackTrace();
+					Thread.currentThread().interrupt();
 					throw new RuntimeException("wait interupted");
 				}
 			}
-			this.lock.lock();
+			return FlipOutcome.CLAIMED;
+		} finally {
+			if (waitStart != 0) {
+				final long waited = System.nanoTime() - waitStart;
+				LOCK_WAIT.record(waited);
+				if (this.contention != null) {
+					this.contention.endWait(this.col, this.row, waited);
+				}
+			}
 		}
 	}
 	
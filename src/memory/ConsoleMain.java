@@ -37,7 +37,7 @@ public class ConsoleMain {
                 	final int row = random.nextInt(size - 1) + 1;
                 	// Try to flip over a first card at (random.nextInt(size), random.nextInt(size))
                 	//      which might block until this player can control that card
-                	if (board.flip(col, row, id)) {
+                	if (board.flip(col, row, id).isFlipped()) {
                 		// And if that succeeded,
                 		//      try to flip over a second card at (random.nextInt(size), random.nextInt(size))
                 		final int col1 = random.nextInt(size - 1) + 1; 
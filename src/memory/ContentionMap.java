@@ -0,0 +1,266 @@
+package memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A mutable threadsafe record of how often players blocked waiting for control of the card in
+ * each space of a board, how long they waited in total and at most, and how many are waiting
+ * right now and at most.
+ * Only waits are recorded, so claiming an uncontrolled card costs nothing, and the per-space arrays
+ * are only allocated on the first wait, so a board nobody waits on costs nothing either.
+ */
+public class ContentionMap {
+
+	/**
+	 * Statistics of every space, allocated together on the first wait
+	 */
+	private static class Spaces {
+		final AtomicLongArray waits;
+		final AtomicLongArray waitNanos;
+		final AtomicIntegerArray waiters;
+		final AtomicLongArray maxWaitNanos;
+		final AtomicIntegerArray maxWaiters;
+
+		Spaces(int spaces) {
+			this.waits = new AtomicLongArray(spaces);
+			this.waitNanos = new AtomicLongArray(spaces);
+			this.waiters = new AtomicIntegerArray(spaces);
+			this.maxWaitNanos = new AtomicLongArray(spaces);
+			this.maxWaiters = new AtomicIntegerArray(spaces);
+		}
+	}
+
+	private final int width, height;
+	// Statistics of every space, or null until a player first waits
+	private volatile Spaces spaces = null;
+
+	// Shades used by heatmap() from coolest to hottest
+	private static final String SHADES = ".:-=+*#%@";
+
+	/*
+	 * AF(width, height, spaces) ::= contention statistics for a width x height board where, if spaces is null, no space 
+	 * 		was ever waited on, and otherwise the space at (col, row) was waited on spaces.waits[i] times for a total of 
+	 * 		spaces.waitNanos[i] and at most spaces.maxWaitNanos[i] at a time, and has spaces.waiters[i] players currently 
+	 * 		waiting on it and had at most spaces.maxWaiters[i] waiting at once, with i = (row - 1) * width + (col - 1)
+	 * Rep Invariant - if spaces is not null, each of its arrays has length width * height
+	 * Safety from rep exposure:
+	 * 		only primitive types and new Strings are returned
+	 * Thread Safety Argument -
+	 * 		spaces is volatile and only set once, under the lock on this, so every thread updates the same arrays. 
+	 * 		All statistics are stored in atomic arrays and only updated with atomic operations.
+	 * 		Reports read each space independently and may be slightly out of date.
+	 */
+
+	/**
+	 * @param width number of columns on the board
+	 * @param height number of rows on the board
+	 */
+	public ContentionMap(int width, int height) {
+		this.width = width;
+		this.height = height;
+		checkRep();
+	}
+
+	private void checkRep() {
+		final Spaces spaces = this.spaces;
+		if (spaces != null) {
+			assert spaces.waits.length() == this.width * this.height;
+			assert spaces.waitNanos.length() == spaces.waits.length() && spaces.waiters.length() == spaces.waits.length();
+			assert spaces.maxWaitNanos.length() == spaces.waits.length() && spaces.maxWaiters.length() == spaces.waits.length();
+		}
+	}
+
+	/**
+	 * @return statistics of every space, allocated if no player has waited before
+	 */
+	private Spaces spaces() {
+		Spaces spaces = this.spaces;
+		if (spaces == null) {
+			synchronized (this) {
+				spaces = this.spaces;
+				if (spaces == null) {
+					spaces = new Spaces(this.width * this.height);
+					this.spaces = spaces;
+					checkRep();
+				}
+			}
+		}
+		return spaces;
+	}
+
+	private int index(int col, int row) {
+		return (row - 1) * this.width + (col - 1);
+	}
+
+	/**
+	 * Records that a player started waiting for the card at (col, row)
+	 * @param col column of the card
+	 * @param row row of the card
+	 */
+	void startWait(int col, int row) {
+		final Spaces spaces = this.spaces();
+		final int i = this.index(col, row);
+		final int waiting = spaces.waiters.incrementAndGet(i);
+		spaces.maxWaiters.accumulateAndGet(i, waiting, Math::max);
+	}
+
+	/**
+	 * Records that a player stopped waiting for the card at (col, row). Must follow a call to startWait.
+	 * @param col column of the card
+	 * @param row row of the card
+	 * @param nanos time the player waited
+	 */
+	void endWait(int col, int row, long nanos) {
+		final Spaces spaces = this.spaces();
+		final int i = this.index(col, row);
+		spaces.waiters.decrementAndGet(i);
+		spaces.waits.incrementAndGet(i);
+		spaces.waitNanos.addAndGet(i, nanos);
+		spaces.maxWaitNanos.accumulateAndGet(i, nanos, Math::max);
+	}
+
+	/**
+	 * @return number of times a player waited for the card at (col, row)
+	 */
+	public long waits(int col, int row) {
+		final Spaces spaces = this.spaces;
+		return spaces == null ? 0 : spaces.waits.get(this.index(col, row));
+	}
+
+	/**
+	 * @return total time in nanoseconds players waited for the card at (col, row)
+	 */
+	public long waitNanos(int col, int row) {
+		final Spaces spaces = this.spaces;
+		return spaces == null ? 0 : spaces.waitNanos.get(this.index(col, row));
+	}
+
+	/**
+	 * @return number of players currently waiting for the card at (col, row)
+	 */
+	public int waiters(int col, int row) {
+		final Spaces spaces = this.spaces;
+		return spaces == null ? 0 : spaces.waiters.get(this.index(col, row));
+	}
+	
+	/**
+	 * @return longest time in nanoseconds a player waited for the card at (col, row)
+	 */
+	public long maxWaitNanos(int col, int row) {
+		final Spaces spaces = this.spaces;
+		return spaces == null ? 0 : spaces.maxWaitNanos.get(this.index(col, row));
+	}
+	
+	/**
+	 * @return largest number of players that waited for the card at (col, row) at the same time
+	 */
+	public int maxWaiters(int col, int row) {
+		final Spaces spaces = this.spaces;
+		return spaces == null ? 0 : spaces.maxWaiters.get(this.index(col, row));
+	}
+
+	/**
+	 * Renders the total wait time of each space as a grid of characters, hottest spaces using the
+	 * darkest shade of ".:-=+*#%@" and spaces that were never waited on a blank. Boards larger
+	 * than maxColumns x maxRows are scaled down and each character covers a tile of spaces.
+	 *
+	 * Response has format
+	 *  HEATMAP ::= COLUMN NEWLINE ROW NEWLINE TILE_COLUMNS NEWLINE TILE_ROWS NEWLINE (SHADE+ NEWLINE)+
+	 *  SHADE ::= " " | [.:\-=+*#%@]
+	 *
+	 * @param maxColumns maximum width of the grid, must be positive
+	 * @param maxRows maximum height of the grid, must be positive
+	 * @return heatmap of wait times
+	 */
+	public String heatmap(int maxColumns, int maxRows) {
+		final int tileWidth = (this.width + maxColumns - 1) / maxColumns;
+		final int tileHeight = (this.height + maxRows - 1) / maxRows;
+		final int columns = (this.width + tileWidth - 1) / tileWidth;
+		final int rows = (this.height + tileHeight - 1) / tileHeight;
+
+		final long[] tiles = new long[columns * rows];
+		long hottest = 0;
+		final Spaces spaces = this.spaces;
+		for (int i = 0; spaces != null && i < spaces.waitNanos.length(); i++) {
+			final int tile = (i / this.width / tileHeight) * columns + (i % this.width) / tileWidth;
+			tiles[tile] += spaces.waitNanos.get(i);
+			hottest = Math.max(hottest, tiles[tile]);
+		}
+
+		final StringBuilder sb = new StringBuilder();
+		sb.append(this.width).append('\n').append(this.height).append('\n');
+		sb.append(tileWidth).append('\n').append(tileHeight).append('\n');
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < columns; c++) {
+				sb.append(shade(tiles[r * columns + c], hottest));
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Shades are assigned on a log scale so that moderately hot spaces remain visible next to the hottest one.
+	 */
+	private static char shade(long value, long hottest) {
+		if (value == 0) {
+			return ' ';
+		}
+		final double scale = Math.log1p(value) / Math.log1p(hottest);
+		return SHADES.charAt((int) Math.min(SHADES.length() - 1, scale * SHADES.length()));
+	}
+
+	/**
+	 * Lists the spaces with the largest total wait time, hottest first.
+	 *
+	 * Response has format
+	 *  REPORT ::= (COLUMN "," ROW " waits=" INT " waitMillis=" INT " maxWaitMillis=" INT " waiting=" INT " maxWaiting=" INT NEWLINE)*
+	 *
+	 * @param n maximum number of spaces to list
+	 * @return report of at most n spaces that were waited on
+	 */
+	public String hottest(int n) {
+		final Spaces spaces = this.spaces;
+		if (spaces == null) {
+			return "";
+		}
+		// Min heap of {waitNanos, index} for the n hottest spaces seen so far
+		final PriorityQueue<long[]> heap = new PriorityQueue<long[]>(Math.max(1, n), (a, b) -> Long.compare(a[0], b[0]));
+		for (int i = 0; i < spaces.waitNanos.length() && n > 0; i++) {
+			if (spaces.waits.get(i) == 0 && spaces.waiters.get(i) == 0) {
+				continue;
+			}
+			final long nanos = spaces.waitNanos.get(i);
+			if (heap.size() < n) {
+				heap.add(new long[] {nanos, i});
+			} else if (nanos > heap.peek()[0]) {
+				heap.poll();
+				heap.add(new long[] {nanos, i});
+			}
+		}
+		final List<Integer> hottest = new ArrayList<Integer>();
+		while (!heap.isEmpty()) {
+			hottest.add((int) heap.poll()[1]);
+		}
+		Collections.reverse(hottest);
+
+		final StringBuilder sb = new StringBuilder();
+		for (int i : hottest) {
+			sb.append(i % this.width + 1).append(',').append(i / this.width + 1)
+				.append(" waits=").append(spaces.waits.get(i))
+				.append(" waitMillis=").append(TimeUnit.NANOSECONDS.toMillis(spaces.waitNanos.get(i)))
+				.append(" maxWaitMillis=").append(TimeUnit.NANOSECONDS.toMillis(spaces.maxWaitNanos.get(i)))
+				.append(" waiting=").append(spaces.waiters.get(i))
+				.append(" maxWaiting=").append(spaces.maxWaiters.get(i))
+				.append('\n');
+		}
+		return sb.toString();
+	}
+
+}
@@ -1,5 +1,7 @@
 package memory;
 
+import java.util.concurrent.CompletableFuture;
+
 public class EmptySpace implements BoardSpace {
 
 	/**
@@ -75,16 +77,41 @@ public class EmptySpace implements BoardSpace {
 		return false;
 	}
 
+	@Override
+	public boolean claim(String id, int handle) {
+		return false;
+	}
+
+	@Override
+	public FlipOutcome tryClaim(String id, int handle, long timeoutNanos) {
+		return FlipOutcome.EMPTY;
+	}
+
+	@Override
+	public CompletableFuture<FlipOutcome> claimAsync(String id, int handle) {
+		return CompletableFuture.completedFuture(FlipOutcome.EMPTY);
+	}
+
 	@Override
 	public void release() {
 		
 	}
 
+	@Override
+	public void remove() {
+		
+	}
+
 	@Override
 	public String getOwner() {
 		return "";
 	}
 
+	@Override
+	public int getOwnerHandle() {
+		return Player.NO_HANDLE;
+	}
+
 	@Override
 	public boolean hasOwner() {
 		return false;
@@ -0,0 +1,58 @@
+package memory;
+
+/**
+ * Result of a player trying to flip a card on a Memory Scramble board. 
+ * Flips report why they failed with an outcome rather than an exception, so losing or malformed flips are cheap. 
+ */
+public enum FlipOutcome {
+	
+	/**
+	 * The player turned over their first card and now controls it
+	 */
+	CLAIMED,
+	
+	/**
+	 * The player turned over their second card, which matches the first. The player controls both cards 
+	 * and they are removed from the board on the player's next move. 
+	 */
+	MATCHED,
+	
+	/**
+	 * The player turned over their second card, which does not match the first. The player controls both cards 
+	 * and they are released on the player's next move. 
+	 */
+	MISMATCHED,
+	
+	/**
+	 * The player already controls the card. The board did not change. 
+	 */
+	ALREADY_HELD,
+	
+	/**
+	 * The space has no card, or its card was removed while the player waited for it. The board did not change. 
+	 */
+	EMPTY,
+	
+	/**
+	 * The space is not on the board. The board did not change. 
+	 */
+	OUT_OF_BOUNDS,
+	
+	/**
+	 * The player is not on the board, e.g. because their session expired and they were removed. The board did not change. 
+	 */
+	UNKNOWN_PLAYER,
+	
+	/**
+	 * Another player controlled the card for the whole time the player was willing to wait. The board did not change. 
+	 */
+	BUSY;
+	
+	/**
+	 * @return true if the player controls the card after the flip
+	 */
+	public boolean isFlipped() {
+		return this == CLAIMED || this == MATCHED || this == MISMATCHED;
+	}
+	
+}
@@ -7,13 +7,32 @@ public class FlipRequest implements Request {
 	private final int row, col;
 	private final String player;
 	private final HttpExchange exchange;
+	private final long timeout;
+	private final BoardFormat format;
 
 	 
 	public FlipRequest(int column, int row, String player, HttpExchange exchange) {
+		this(column, row, player, exchange, NO_TIMEOUT);
+	}
+	
+	/**
+	 * @param timeout longest time in milliseconds to wait for control of the card, or NO_TIMEOUT to wait until it is released
+	 */
+	public FlipRequest(int column, int row, String player, HttpExchange exchange, long timeout) {
+		this(column, row, player, exchange, timeout, BoardFormat.HTTP);
+	}
+	
+	/**
+	 * @param timeout longest time in milliseconds to wait for control of the card, or NO_TIMEOUT to wait until it is released
+	 * @param format format of the board sent in the response
+	 */
+	public FlipRequest(int column, int row, String player, HttpExchange exchange, long timeout, BoardFormat format) {
 		this.row = row;
 		this.col = column;
 		this.player = player;
 		this.exchange = exchange;
+		this.timeout = timeout;
+		this.format = format;
 	}
 	
 	@Override
@@ -51,6 +70,16 @@ public class FlipRequest implements Request {
 		return this.player;
 	}
 
+	@Override
+	public long timeout() {
+		return this.timeout;
+	}
+
+	@Override
+	public BoardFormat format() {
+		return this.format;
+	}
+
 	@Override
 	public HttpExchange exchange() {
 		return this.exchange;
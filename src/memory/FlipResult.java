@@ -0,0 +1,61 @@
+package memory;
+
+/**
+ * Immutable result of a flip together with the board as the flipping player saw it right after the flip. 
+ */
+public class FlipResult {
+	
+	private final FlipOutcome outcome;
+	private final long version;
+	private final String render;
+	
+	// AF(outcome, version, render) ::= a flip with the given outcome after which the board, at version or later, 
+	// 		looked like render to the player who flipped
+	// Rep Invariant - version >= 0
+	// Safety from rep exposure:
+	// 	 all fields are immutable
+	
+	/**
+	 * @param outcome outcome of the flip
+	 * @param version version of the board the render was taken from
+	 * @param render the board in the format requested
+	 */
+	FlipResult(FlipOutcome outcome, long version, String render) {
+		this.outcome = outcome;
+		this.version = version;
+		this.render = render;
+		checkRep();
+	}
+	
+	private void checkRep() {
+		assert this.version >= 0;
+	}
+	
+	/**
+	 * @return outcome of the flip
+	 */
+	public FlipOutcome outcome() {
+		return this.outcome;
+	}
+	
+	/**
+	 * @return version of the board the render reflects. The render includes the flip and every change 
+	 * 		made before this version, and may include changes still in progress. 
+	 */
+	public long version() {
+		return this.version;
+	}
+	
+	/**
+	 * @return the board as the flipping player saw it, in the format requested
+	 */
+	public String render() {
+		return this.render;
+	}
+	
+	@Override
+	public String toString() {
+		return this.outcome + " @" + this.version;
+	}
+	
+}
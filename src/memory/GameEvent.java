@@ -0,0 +1,153 @@
+package memory;
+
+import java.util.Objects;
+
+public class GameEvent {
+
+	/**
+	 * An immutable change to a Memory Scramble board made by one player.
+	 * Boards publish an event for every change to the game to their {@link GameEventListener}s, in an order
+	 * in which the changes could have been made one at a time, so replaying the events in order reproduces the game.
+	 */
+	public enum Type {
+		/**
+		 * The player was added to the board
+		 */
+		PLAYER_ADDED,
+		/**
+		 * The player was removed from the board and the cards they controlled were released
+		 */
+		PLAYER_REMOVED,
+		/**
+		 * The player took control of the card at (col, row). outcome() is CLAIMED, MATCHED or MISMATCHED.
+		 */
+		FLIPPED,
+		/**
+		 * The matching cards at (col, row) and (otherCol, otherRow) the player controlled were removed from the board
+		 */
+		MATCH_REMOVED,
+		/**
+		 * The cards at (col, row) and (otherCol, otherRow) the player controlled did not match and were released
+		 */
+		MISMATCH_RELEASED
+	}
+
+	private final Type type;
+	private final String player;
+	private final int col, row, otherCol, otherRow;
+	private final FlipOutcome outcome;
+
+	/*
+	 * AF(type, player, col, row, otherCol, otherRow, outcome) ::= a change of kind type made by player to the spaces
+	 * 		(col, row) and (otherCol, otherRow) of a board, where a coordinate of 0 means the event has no such space,
+	 * 		and outcome is the outcome of a FLIPPED event
+	 * Rep Invariant - outcome != null iff type == FLIPPED
+	 * 		col, row, otherCol and otherRow are 0 for PLAYER_ADDED and PLAYER_REMOVED, and otherCol and otherRow are 0 for FLIPPED
+	 * Safety from rep exposure:
+	 * 		all fields are final and immutable
+	 */
+
+	/**
+	 * @param type kind of change
+	 * @param player id of the player making the change
+	 * @param col column of the first space changed, or 0 if the event changes no space
+	 * @param row row of the first space changed, or 0 if the event changes no space
+	 * @param otherCol column of the second space changed, or 0 if the event changes fewer than two spaces
+	 * @param otherRow row of the second space changed, or 0 if the event changes fewer than two spaces
+	 * @param outcome outcome of a FLIPPED event, otherwise null
+	 */
+	GameEvent(Type type, String player, int col, int row, int otherCol, int otherRow, FlipOutcome outcome) {
+		this.type = type;
+		this.player = player;
+		this.col = col;
+		this.row = row;
+		this.otherCol = otherCol;
+		this.otherRow = otherRow;
+		this.outcome = outcome;
+		checkRep();
+	}
+
+	private void checkRep() {
+		assert (this.outcome != null) == (this.type == Type.FLIPPED);
+		assert this.type != Type.FLIPPED || (this.otherCol == 0 && this.otherRow == 0);
+		assert this.type != Type.PLAYER_ADDED && this.type != Type.PLAYER_REMOVED || (this.col == 0 && this.row == 0);
+	}
+
+	/**
+	 * @return kind of change
+	 */
+	public Type type() {
+		return this.type;
+	}
+
+	/**
+	 * @return id of the player who made the change
+	 */
+	public String player() {
+		return this.player;
+	}
+
+	/**
+	 * @return column of the card flipped, matched or released, or 0 for events about players
+	 */
+	public int col() {
+		return this.col;
+	}
+
+	/**
+	 * @return row of the card flipped, matched or released, or 0 for events about players
+	 */
+	public int row() {
+		return this.row;
+	}
+
+	/**
+	 * @return column of the other card matched or released, or 0 for other events
+	 */
+	public int otherCol() {
+		return this.otherCol;
+	}
+
+	/**
+	 * @return row of the other card matched or released, or 0 for other events
+	 */
+	public int otherRow() {
+		return this.otherRow;
+	}
+
+	/**
+	 * @return outcome of a FLIPPED event: CLAIMED, MATCHED or MISMATCHED, otherwise null
+	 */
+	public FlipOutcome outcome() {
+		return this.outcome;
+	}
+
+	@Override
+	public boolean equals(Object that) {
+		if (!(that instanceof GameEvent)) {
+			return false;
+		}
+		final GameEvent other = (GameEvent) that;
+		return this.type == other.type && this.player.equals(other.player) && this.col == other.col && this.row == other.row
+				&& this.otherCol == other.otherCol && this.otherRow == other.otherRow && this.outcome == other.outcome;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(this.type, this.player, this.col, this.row, this.otherCol, this.otherRow, this.outcome);
+	}
+
+	@Override
+	public String toString() {
+		switch (this.type) {
+		case FLIPPED:
+			return this.type + " " + this.col + "," + this.row + " " + this.outcome + " " + this.player;
+		case MATCH_REMOVED:
+		case MISMATCH_RELEASED:
+			return this.type + " " + this.col + "," + this.row + " " + this.otherCol + "," + this.otherRow + " " + this.player;
+		default:
+			return this.type + " " + this.player;
+		}
+	}
+
+}
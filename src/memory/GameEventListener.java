@@ -0,0 +1,13 @@
+package memory;
+
+public interface GameEventListener {
+
+	/**
+	 * Called with every change made to the board the listener was added to, in an order in which the changes could
+	 * have been made one at a time. Runs on the thread making the change, possibly while it holds the board's lock,
+	 * so it must be quick, must not block and must not call back into the board.
+	 * @param event the change
+	 */
+	public void onGameEvent(GameEvent event);
+
+}
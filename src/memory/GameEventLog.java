@@ -0,0 +1,250 @@
+package memory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A mutable threadsafe record of a Memory Scramble game: the layout of the board when recording started and
+ * every change made to it since, in the order the board published them. {@link GameReplay} re-runs a log
+ * against a fresh board.
+ *
+ * <p>Events are stored as four ints each and player ids are interned, so a log of a long game stays small.
+ * A log can be saved with {@link #write(Writer)} and loaded with {@link #read(Reader)} in the format
+ * <pre>
+ *  LOG ::= COLUMNS NEWLINE ROWS NEWLINE (CARD NEWLINE){COLUMNS * ROWS} (EVENT NEWLINE)*
+ *  CARD ::= card in row major order, or an empty line for an empty space
+ *  EVENT ::= "add " PLAYER | "remove " PLAYER | "flip " SPACE " " OUTCOME " " PLAYER
+ *          | "match " SPACE " " SPACE " " PLAYER | "release " SPACE " " SPACE " " PLAYER
+ *  SPACE ::= COL "," ROW
+ *  OUTCOME ::= "CLAIMED" | "MATCHED" | "MISMATCHED"
+ * </pre>
+ * where PLAYER is the rest of the line.
+ */
+public class GameEventLog implements GameEventListener {
+
+	private static final String[] KEYWORDS = {"add", "remove", "flip", "match", "release"};
+	private static final int INTS_PER_EVENT = 4;
+
+	private final int width, height;
+	private final List<String> layout;
+	private final List<String> players = new ArrayList<String>();
+	private final Map<String, Integer> playerIndices = new HashMap<String, Integer>();
+	private int[] events = new int[INTS_PER_EVENT * 64];
+	private int size = 0;
+
+	/*
+	 * AF(width, height, layout, players, events, size) ::= a game on a width x height board that started with the cards
+	 * 		in layout, in which event i had type GameEvent.Type.values()[events[4i] >> 8], outcome
+	 * 		FlipOutcome.values()[(events[4i] & 0xff) - 1] or none if it is 0, player players[events[4i + 1]] and spaces
+	 * 		with row major indices events[4i + 2] and events[4i + 3], where -1 means no space
+	 * Rep Invariant - layout.size() == width * height
+	 * 		0 <= size <= events.length / 4
+	 * 		playerIndices maps players[i] to i
+	 * Safety from rep exposure:
+	 * 		layout is unmodifiable. events and players are never returned, and GameEvents are immutable.
+	 * Thread Safety Argument -
+	 * 		width, height and layout are final and immutable. players, playerIndices, events and size are only
+	 * 		accessed while holding the lock on this, so events are stored in the order the board published them.
+	 */
+
+	/**
+	 * Starts recording the game on board. The log stores the layout of the board now and is told of every change
+	 * from now on, so recording should start before players join.
+	 * @param board board to record
+	 * @return the new log
+	 */
+	public static GameEventLog record(Board board) {
+		final GameEventLog log = new GameEventLog(board.width(), board.height(), board.layout());
+		board.addGameEventListener(log);
+		return log;
+	}
+
+	/**
+	 * @param width number of columns on the board
+	 * @param height number of rows on the board
+	 * @param layout card in each space in row major order, or "" for an empty space
+	 */
+	GameEventLog(int width, int height, List<String> layout) {
+		this.width = width;
+		this.height = height;
+		this.layout = Collections.unmodifiableList(new ArrayList<String>(layout));
+		checkRep();
+	}
+
+	private void checkRep() {
+		assert this.layout.size() == this.width * this.height;
+		assert this.size >= 0 && this.size <= this.events.length / INTS_PER_EVENT;
+	}
+
+	/**
+	 * @return number of columns on the board
+	 */
+	public int width() {
+		return this.width;
+	}
+
+	/**
+	 * @return number of rows on the board
+	 */
+	public int height() {
+		return this.height;
+	}
+
+	/**
+	 * @return card in each space of the board when recording started in row major order, or "" for an empty space
+	 */
+	public List<String> layout() {
+		return this.layout;
+	}
+
+	@Override
+	public synchronized void onGameEvent(GameEvent event) {
+		if (this.size * INTS_PER_EVENT == this.events.length) {
+			this.events = Arrays.copyOf(this.events, this.events.length * 2);
+		}
+		Integer player = this.playerIndices.get(event.player());
+		if (player == null) {
+			player = this.players.size();
+			this.players.add(event.player());
+			this.playerIndices.put(event.player(), player);
+		}
+		final int i = this.size * INTS_PER_EVENT;
+		this.events[i] = event.type().ordinal() << 8 | (event.outcome() == null ? 0 : event.outcome().ordinal() + 1);
+		this.events[i + 1] = player;
+		this.events[i + 2] = this.indexOf(event.col(), event.row());
+		this.events[i + 3] = this.indexOf(event.otherCol(), event.otherRow());
+		this.size++;
+	}
+
+	/**
+	 * @return number of events recorded
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * @param i position of the event, 0 for the first
+	 * @return the ith event recorded
+	 * @throws IndexOutOfBoundsException if i is not less than size()
+	 */
+	public synchronized GameEvent event(int i) {
+		if (i < 0 || i >= this.size) {
+			throw new IndexOutOfBoundsException("No event " + i + " in a log of " + this.size);
+		}
+		final int e = i * INTS_PER_EVENT;
+		final int outcome = this.events[e] & 0xff;
+		final int first = this.events[e + 2];
+		final int second = this.events[e + 3];
+		return new GameEvent(GameEvent.Type.values()[this.events[e] >> 8], this.players.get(this.events[e + 1]),
+				this.colOf(first), this.rowOf(first), this.colOf(second), this.rowOf(second),
+				outcome == 0 ? null : FlipOutcome.values()[outcome - 1]);
+	}
+
+	private int indexOf(int col, int row) {
+		return col == 0 ? HoldingTable.NONE : (row - 1) * this.width + (col - 1);
+	}
+
+	private int colOf(int index) {
+		return index == HoldingTable.NONE ? 0 : index % this.width + 1;
+	}
+
+	private int rowOf(int index) {
+		return index == HoldingTable.NONE ? 0 : index / this.width + 1;
+	}
+
+	/**
+	 * Writes the log in the format given above.
+	 * @param out writer to write to, not closed
+	 * @throws IOException if the log could not be written
+	 */
+	public void write(Writer out) throws IOException {
+		out.write(this.width + "\n" + this.height + "\n");
+		for (String card : this.layout) {
+			out.write(card + "\n");
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < this.size(); i++) {
+			final GameEvent event = this.event(i);
+			sb.setLength(0);
+			sb.append(KEYWORDS[event.type().ordinal()]).append(' ');
+			if (event.col() != 0) {
+				sb.append(event.col()).append(',').append(event.row()).append(' ');
+			}
+			if (event.otherCol() != 0) {
+				sb.append(event.otherCol()).append(',').append(event.otherRow()).append(' ');
+			}
+			if (event.outcome() != null) {
+				sb.append(event.outcome()).append(' ');
+			}
+			out.write(sb.append(event.player()).append('\n').toString());
+		}
+		out.flush();
+	}
+
+	/**
+	 * Reads a log written by {@link #write(Writer)}.
+	 * @param in reader to read from, not closed
+	 * @return the log
+	 * @throws IOException if the log could not be read or is not in the format given above
+	 */
+	public static GameEventLog read(Reader in) throws IOException {
+		final BufferedReader lines = new BufferedReader(in);
+		try {
+			final int width = Integer.parseInt(lines.readLine());
+			final int height = Integer.parseInt(lines.readLine());
+			final List<String> layout = new ArrayList<String>();
+			for (int i = 0; i < width * height; i++) {
+				final String card = lines.readLine();
+				if (card == null) {
+					throw new IOException("Log ended in the layout of the board");
+				}
+				layout.add(card);
+			}
+			final GameEventLog log = new GameEventLog(width, height, layout);
+			for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+				log.onGameEvent(parse(line));
+			}
+			return log;
+		} catch (RuntimeException e) {
+			throw new IOException("Could not read game log: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @param line an EVENT in the format given above
+	 * @return the event
+	 * @throws IllegalArgumentException if line is not an EVENT
+	 */
+	private static GameEvent parse(String line) throws IllegalArgumentException {
+		final String[] words = line.split(" ", 2);
+		final GameEvent.Type type = GameEvent.Type.values()[Arrays.asList(KEYWORDS).indexOf(words[0])];
+		final int[] spaces = new int[4];
+		String rest = words[1];
+		final int count = type == GameEvent.Type.FLIPPED ? 1
+				: type == GameEvent.Type.MATCH_REMOVED || type == GameEvent.Type.MISMATCH_RELEASED ? 2 : 0;
+		for (int i = 0; i < count; i++) {
+			final String[] split = rest.split(" ", 2);
+			final String[] space = split[0].split(",");
+			spaces[2 * i] = Integer.parseInt(space[0]);
+			spaces[2 * i + 1] = Integer.parseInt(space[1]);
+			rest = split[1];
+		}
+		FlipOutcome outcome = null;
+		if (type == GameEvent.Type.FLIPPED) {
+			final String[] split = rest.split(" ", 2);
+			outcome = FlipOutcome.valueOf(split[0]);
+			rest = split[1];
+		}
+		return new GameEvent(type, rest, spaces[0], spaces[1], spaces[2], spaces[3], outcome);
+	}
+
+}
@@ -0,0 +1,86 @@
+package memory;
+
+/**
+ * Re-runs a game recorded in a {@link GameEventLog} against a fresh board, one event at a time on the calling
+ * thread, without sleeping or waiting for other players. Every flip is replayed with
+ * {@link Board#tryFlip(int, int, String)}, and matches and releases are applied at the point in the game where
+ * they happened, so the replay never blocks and reproduces the recorded game exactly.
+ *
+ * <p>Replays are used to reproduce problems seen in a running server and as a repeatable workload for
+ * benchmarking boards.
+ */
+public class GameReplay {
+
+	private final GameEventLog log;
+
+	/*
+	 * AF(log) ::= a replay of the game recorded in log
+	 * Rep Invariant - true
+	 * Safety from rep exposure:
+	 * 		log is threadsafe and shared with the caller on purpose, so a replay can follow a log that is still recording
+	 * Thread Safety Argument -
+	 * 		log is final and threadsafe. Each replay uses its own board.
+	 */
+
+	/**
+	 * @param log recorded game to replay
+	 */
+	public GameReplay(GameEventLog log) {
+		this.log = log;
+	}
+
+	/**
+	 * @return a new board with the cards the recorded game started with, face down and controlled by no one
+	 */
+	public Board newBoard() {
+		return Board.fromLayout(this.log.width(), this.log.height(), this.log.layout());
+	}
+
+	/**
+	 * Replays the events recorded so far on a new board.
+	 * @return the board at the end of the replay
+	 * @throws IllegalStateException if the board did not change the way the log recorded
+	 */
+	public Board replay() throws IllegalStateException {
+		final Board board = this.newBoard();
+		this.replay(board);
+		return board;
+	}
+
+	/**
+	 * Replays the events recorded so far on board.
+	 * @param board board returned by newBoard() that no one has played on
+	 * @return number of events replayed
+	 * @throws IllegalStateException if the board did not change the way the log recorded
+	 */
+	public int replay(Board board) throws IllegalStateException {
+		final int size = this.log.size();
+		for (int i = 0; i < size; i++) {
+			final GameEvent event = this.log.event(i);
+			final String player = event.player();
+			final boolean applied;
+			switch (event.type()) {
+			case PLAYER_ADDED:
+				applied = board.addPlayer(player);
+				break;
+			case PLAYER_REMOVED:
+				applied = board.removePlayer(player);
+				break;
+			case FLIPPED:
+				final FlipOutcome outcome = board.tryFlip(event.col(), event.row(), player);
+				if (outcome != event.outcome()) {
+					throw new IllegalStateException("Event " + i + " " + event + " replayed as " + outcome);
+				}
+				applied = true;
+				break;
+			default:
+				applied = board.resolve(player);
+			}
+			if (!applied) {
+				throw new IllegalStateException("Event " + i + " " + event + " could not be replayed");
+			}
+		}
+		return size;
+	}
+
+}
@@ -0,0 +1,251 @@
+package memory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live statistics of one game, kept up to date by the {@link Board} as it changes rather than computed
+ * by scanning it.
+ *
+ * <p>The board records every flip, match, release and player joining or leaving at the point it makes
+ * the change. Recording costs a constant amount of work and no locks: a lookup in a concurrent map and
+ * a few atomic counters. Reading the statistics only walks the players on the board.
+ */
+public class GameStats {
+
+	// Seconds of recent flips averaged by recentFlipsPerSecond()
+	static final int RATE_WINDOW_SECONDS = 10;
+
+	/**
+	 * Statistics of one player on the board.
+	 */
+	private static class PlayerStats {
+		private final long joinedNanos = System.nanoTime();
+		private final LongAdder flips = new LongAdder();
+		private final LongAdder matches = new LongAdder();
+		private final LongAdder mismatches = new LongAdder();
+		private final AtomicBoolean matched = new AtomicBoolean();
+		// True from a MATCHED flip until the pair is removed from the board
+		private final AtomicBoolean holdingMatch = new AtomicBoolean();
+	}
+
+	private final long startNanos = System.nanoTime();
+	private final ConcurrentMap<String, PlayerStats> players = new ConcurrentHashMap<String, PlayerStats>();
+	private final LongAdder flips = new LongAdder();
+	private final LongAdder matches = new LongAdder();
+	private final LongAdder mismatches = new LongAdder();
+	private final LongAdder released = new LongAdder();
+	private final AtomicLong pairsLeft;
+	private final LongAdder firstMatches = new LongAdder();
+	private final LongAdder firstMatchNanos = new LongAdder();
+	// Flips made in each of the last few seconds, in the slot of the second modulo its length, and which second each slot counts
+	private final AtomicLongArray flipsInSecond = new AtomicLongArray(RATE_WINDOW_SECONDS + 1);
+	private final AtomicLongArray secondOfSlot = new AtomicLongArray(RATE_WINDOW_SECONDS + 1);
+
+	// Abstraction function:
+	//   AF(players, flips, matches, mismatches, released, pairsLeft, firstMatches, firstMatchNanos, flipsInSecond) ::=
+	//     statistics of a game that started at startNanos, in which flips cards have been turned over, matches pairs matched,
+	//     mismatches pairs failed to match and released of them turned back over, pairsLeft pairs are still to be matched,
+	//     firstMatches players made their first match a total of firstMatchNanos after joining, and
+	//     flipsInSecond[secondOfSlot[i] % length == i] flips were made in second secondOfSlot[i].
+	//     Each player on the board has the statistics players.get(id). Matches are counted when flipped and no longer
+	//     count if the player leaves before the pair is removed, since leaving releases the pair back onto the board.
+	// Representation invariant:
+	//   all counters are non-negative, firstMatches <= players that ever joined
+	// Safety from rep exposure:
+	//   only primitive values and Strings are returned
+	// Thread safety argument:
+	//   players is a ConcurrentHashMap and every count is a LongAdder, AtomicLong or AtomicLongArray updated atomically.
+	//   A player's first match is counted once by whichever flip wins the compareAndSet of matched. Counts read together
+	//   may be from slightly different moments. When a slot of flipsInSecond moves on to a new second, a flip counted
+	//   between claiming the slot and clearing it can be lost, so the recent rate is approximate.
+
+	/**
+	 * @param pairs number of pairs on the board when the game starts
+	 */
+	GameStats(long pairs) {
+		this.pairsLeft = new AtomicLong(pairs);
+	}
+
+	/**
+	 * Records a change made by the board. Takes constant time.
+	 * @param type kind of change
+	 * @param player id of the player making the change
+	 * @param outcome outcome of a flip, otherwise null
+	 */
+	void record(GameEvent.Type type, String player, FlipOutcome outcome) {
+		switch (type) {
+		case PLAYER_ADDED:
+			this.players.put(player, new PlayerStats());
+			break;
+		case PLAYER_REMOVED:
+			this.removed(this.players.remove(player));
+			break;
+		case FLIPPED:
+			this.flipped(player, outcome);
+			break;
+		case MISMATCH_RELEASED:
+			this.released.increment();
+			break;
+		case MATCH_REMOVED:
+			// Counted when the match was flipped
+			this.matchRemoved(this.players.get(player));
+			break;
+		}
+	}
+
+	private void flipped(String player, FlipOutcome outcome) {
+		final long now = System.nanoTime();
+		this.flips.increment();
+		this.countFlip(now);
+		final PlayerStats stats = this.players.get(player);
+		if (stats != null) {
+			stats.flips.increment();
+		}
+		if (outcome == FlipOutcome.MATCHED) {
+			this.matches.increment();
+			this.pairsLeft.decrementAndGet();
+			if (stats != null) {
+				stats.matches.increment();
+				stats.holdingMatch.set(true);
+				if (stats.matched.compareAndSet(false, true)) {
+					this.firstMatches.increment();
+					this.firstMatchNanos.add(now - stats.joinedNanos);
+				}
+			}
+		} else if (outcome == FlipOutcome.MISMATCHED) {
+			this.mismatches.increment();
+			if (stats != null) {
+				stats.mismatches.increment();
+			}
+		}
+	}
+
+	private void matchRemoved(PlayerStats stats) {
+		if (stats != null) {
+			stats.holdingMatch.set(false);
+		}
+	}
+
+	/**
+	 * A player removed while holding a matched pair has the pair released back onto the board, so the match no longer counts.
+	 */
+	private void removed(PlayerStats stats) {
+		if (stats != null && stats.holdingMatch.getAndSet(false)) {
+			this.matches.decrement();
+			this.pairsLeft.incrementAndGet();
+		}
+	}
+
+	private void countFlip(long now) {
+		final long second = TimeUnit.NANOSECONDS.toSeconds(now - this.startNanos);
+		final int slot = (int) (second % this.flipsInSecond.length());
+		final long counting = this.secondOfSlot.get(slot);
+		if (counting != second && this.secondOfSlot.compareAndSet(slot, counting, second)) {
+			this.flipsInSecond.set(slot, 0);
+		}
+		this.flipsInSecond.incrementAndGet(slot);
+	}
+
+	/**
+	 * @return number of cards turned over since the game started
+	 */
+	public long flips() {
+		return this.flips.sum();
+	}
+
+	/**
+	 * @return number of pairs matched since the game started
+	 */
+	public long matches() {
+		return this.matches.sum();
+	}
+
+	/**
+	 * @return number of second cards that did not match the first since the game started
+	 */
+	public long mismatches() {
+		return this.mismatches.sum();
+	}
+
+	/**
+	 * @return number of pairs still to be matched
+	 */
+	public long remainingPairs() {
+		return this.pairsLeft.get();
+	}
+
+	/**
+	 * @param player id of a player
+	 * @return number of pairs the player has matched, or 0 if the player is not on the board
+	 */
+	public long matches(String player) {
+		final PlayerStats stats = this.players.get(player);
+		return stats == null ? 0 : stats.matches.sum();
+	}
+
+	/**
+	 * @return mean time in seconds from a player joining to their first match, over the players who have
+	 * 		made one, or 0 if none has
+	 */
+	public double meanSecondsToFirstMatch() {
+		final long players = this.firstMatches.sum();
+		return players == 0 ? 0 : this.firstMatchNanos.sum() / 1e9 / players;
+	}
+
+	/**
+	 * @return mean flips per second since the game started
+	 */
+	public double flipsPerSecond() {
+		final double seconds = (System.nanoTime() - this.startNanos) / 1e9;
+		return seconds == 0 ? 0 : this.flips() / seconds;
+	}
+
+	/**
+	 * @return mean flips per second over the last RATE_WINDOW_SECONDS whole seconds, not counting the current second
+	 */
+	public double recentFlipsPerSecond() {
+		final long now = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - this.startNanos);
+		long flips = 0;
+		for (int slot = 0; slot < this.flipsInSecond.length(); slot++) {
+			final long second = this.secondOfSlot.get(slot);
+			if (second < now && second >= now - RATE_WINDOW_SECONDS) {
+				flips += this.flipsInSecond.get(slot);
+			}
+		}
+		return (double) flips / Math.max(1, Math.min(now, RATE_WINDOW_SECONDS));
+	}
+
+	/**
+	 * Renders the statistics as text: one line per game statistic, then a table of the players on the
+	 * board, ordered by id, with their flips, matches and mismatches.
+	 * @return report of the statistics
+	 */
+	public String report() {
+		final StringBuilder report = new StringBuilder();
+		report.append(String.format("remaining pairs: %d%n", this.remainingPairs()));
+		report.append(String.format("flips: %d%n", this.flips()));
+		report.append(String.format("flips per second: %.2f, last %d s: %.2f%n",
+				this.flipsPerSecond(), RATE_WINDOW_SECONDS, this.recentFlipsPerSecond()));
+		report.append(String.format("matches: %d%n", this.matches()));
+		report.append(String.format("mismatches: %d, released: %d%n", this.mismatches(), this.released.sum()));
+		report.append(String.format("mean seconds to first match: %.3f over %d players%n",
+				this.meanSecondsToFirstMatch(), this.firstMatches.sum()));
+		final Map<String, PlayerStats> players = new TreeMap<String, PlayerStats>(this.players);
+		report.append(String.format("players: %d%n", players.size()));
+		for (Map.Entry<String, PlayerStats> player : players.entrySet()) {
+			final PlayerStats stats = player.getValue();
+			report.append(String.format("%s flips: %d matches: %d mismatches: %d%n", player.getKey(),
+					stats.flips.sum(), stats.matches.sum(), stats.mismatches.sum()));
+		}
+		return report.toString();
+	}
+
+}
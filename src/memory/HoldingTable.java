@@ -0,0 +1,85 @@
+package memory;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+class HoldingTable {
+
+	/**
+	 * A mutable threadsafe table of the spaces each player controls, indexed by the player's dense integer handle.
+	 * Each player has two slots holding the row major index of a controlled space or {@link #NONE}.
+	 * Slots are stored in fixed size chunks that never move, so growing the table never loses a write.
+	 */
+	static final int NONE = -1;
+
+	private static final int CHUNK_BITS = 10;
+	private static final int CHUNK_PLAYERS = 1 << CHUNK_BITS;
+
+	private volatile AtomicIntegerArray[] chunks = new AtomicIntegerArray[0];
+
+	/*
+	 * AF(chunks) ::= player h controls the spaces chunks[h >> CHUNK_BITS][2 * (h % CHUNK_PLAYERS)] and
+	 * 		chunks[h >> CHUNK_BITS][2 * (h % CHUNK_PLAYERS) + 1], where NONE means no space
+	 * Rep Invariant - every chunk has 2 * CHUNK_PLAYERS slots
+	 * Safety from rep exposure:
+	 * 		only primitive types are returned
+	 * Thread Safety Argument -
+	 * 		chunks is only replaced while holding the lock on this, by a copy containing the same chunk objects,
+	 * 		so a slot written through an older copy of chunks is still visible through the newer one.
+	 * 		Slots are AtomicIntegerArrays so reads observe the latest write.
+	 */
+
+	/**
+	 * Makes sure the table has slots for player handle. The player initially controls no spaces.
+	 * @param handle handle of the player, must be non-negative
+	 */
+	void ensure(int handle) {
+		final int chunk = handle >> CHUNK_BITS;
+		if (chunk < this.chunks.length) {
+			return;
+		}
+		synchronized (this) {
+			final AtomicIntegerArray[] old = this.chunks;
+			if (chunk < old.length) {
+				return;
+			}
+			final AtomicIntegerArray[] grown = new AtomicIntegerArray[Math.max(chunk + 1, old.length * 2)];
+			System.arraycopy(old, 0, grown, 0, old.length);
+			for (int i = old.length; i < grown.length; i++) {
+				grown[i] = new AtomicIntegerArray(2 * CHUNK_PLAYERS);
+				for (int j = 0; j < 2 * CHUNK_PLAYERS; j++) {
+					grown[i].set(j, NONE);
+				}
+			}
+			this.chunks = grown;
+		}
+	}
+
+	/**
+	 * @param handle handle of a player passed to ensure()
+	 * @return index of the first space the player controls or NONE
+	 */
+	int first(int handle) {
+		return this.chunks[handle >> CHUNK_BITS].get(2 * (handle & (CHUNK_PLAYERS - 1)));
+	}
+
+	/**
+	 * @param handle handle of a player passed to ensure()
+	 * @return index of the second space the player controls or NONE
+	 */
+	int second(int handle) {
+		return this.chunks[handle >> CHUNK_BITS].get(2 * (handle & (CHUNK_PLAYERS - 1)) + 1);
+	}
+
+	/**
+	 * @param handle handle of a player passed to ensure()
+	 * @param first index of the first space the player controls or NONE
+	 * @param second index of the second space the player controls or NONE
+	 */
+	void set(int handle, int first, int second) {
+		final AtomicIntegerArray chunk = this.chunks[handle >> CHUNK_BITS];
+		final int slot = 2 * (handle & (CHUNK_PLAYERS - 1));
+		chunk.set(slot, first);
+		chunk.set(slot + 1, second);
+	}
+
+}
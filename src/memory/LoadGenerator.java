@@ -0,0 +1,510 @@
+package memory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import memory.metrics.LatencyHistogram;
+
+/**
+ * Closed-loop load generator for capacity planning.
+ *
+ * <p>Simulates players making random moves against an in-process {@link Board}, a local
+ * {@link TextServer} or a local {@link WebServer}. Each player waits for the response to a request
+ * before sending the next one, but requests are scheduled at a fixed rate and latency is measured
+ * from the time a request was scheduled to be sent. A slow response therefore counts against every
+ * request it delayed, which corrects for coordinated omission. Requests still waiting for a response
+ * when the test ends are recorded with the time they had waited so far.
+ *
+ * <p>Latencies are recorded for replies that show the board. Other replies, such as busy or rate
+ * limited text replies and HTTP responses with a status other than 200, are counted by status.
+ */
+public class LoadGenerator {
+
+	private static final String[] CARDS = {"A", "B", "C", "D"};
+	// Fraction of requests that are looks rather than flips
+	private static final double LOOK_FRACTION = 0.2;
+
+	/**
+	 * Run a load test using the given arguments.
+	 *
+	 * <p> Command-line usage:
+	 * <pre> java memory.LoadGenerator PROTOCOL PLAYERS RATE SECONDS FILENAME </pre>
+	 * or:
+	 * <pre> java memory.LoadGenerator PROTOCOL PLAYERS RATE SECONDS COLUMNS ROWS </pre>
+	 * where:
+	 *
+	 * <p> PROTOCOL is "board" to call the board directly, "text" for a local text-protocol server,
+	 *     or "web" for a local HTTP web server
+	 * <p> PLAYERS is the number of simulated players, each on its own thread
+	 * <p> RATE is the target number of requests per second summed over all players
+	 * <p> SECONDS is how long to generate load for
+	 * <p> FILENAME is the path to a valid board file, or COLUMNS and ROWS give the size of a
+	 *     randomly-generated board
+	 *
+	 * <p> For example, to send 2000 requests per second from 50 players to a web server
+	 *     for 30 seconds on a 100-by-100 board:
+	 * <pre> web 50 2000 30 100 100 </pre>
+	 *
+	 * @param args arguments as described above
+	 * @throws IOException if an error occurs parsing a file or starting a server
+	 * @throws InterruptedException if interrupted while waiting for the test to finish
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		final Queue<String> arguments = new LinkedList<>(Arrays.asList(args));
+		final String protocol;
+		final int players;
+		final double rate;
+		final int seconds;
+		final Board board;
+		try {
+			protocol = arguments.remove();
+			players = Integer.parseInt(arguments.remove());
+			rate = Double.parseDouble(arguments.remove());
+			seconds = Integer.parseInt(arguments.remove());
+		} catch (NoSuchElementException | NumberFormatException e) {
+			throw new IllegalArgumentException("expected PROTOCOL PLAYERS RATE SECONDS", e);
+		}
+		if (arguments.size() == 1) {
+			board = Board.parseFromFile(arguments.remove());
+		} else if (arguments.size() == 2) {
+			try {
+				final int columns = Integer.parseInt(arguments.remove());
+				final int rows = Integer.parseInt(arguments.remove());
+				board = Board.generateRandom(columns, rows, new HashSet<>(Arrays.asList(CARDS)));
+			} catch (NumberFormatException nfe) {
+				throw new IllegalArgumentException("invalid size", nfe);
+			}
+		} else {
+			throw new IllegalArgumentException("expected FILENAME or COLUMNS ROWS");
+		}
+		if (players <= 0 || rate <= 0 || seconds <= 0) {
+			throw new IllegalArgumentException("PLAYERS, RATE and SECONDS must be positive");
+		}
+
+		final LoadGenerator generator = new LoadGenerator(board, protocol, players, rate);
+		generator.run(seconds);
+		generator.report(System.out);
+		System.exit(0);
+	}
+
+	/**
+	 * A connection from one simulated player to the game.
+	 */
+	private interface Client {
+		/**
+		 * @return OK if the reply showed the board, otherwise the status of the reply
+		 */
+		String flip(int col, int row) throws IOException;
+
+		/**
+		 * @return OK if the reply showed the board, otherwise the status of the reply
+		 */
+		String look() throws IOException;
+
+		/**
+		 * Closes the connection, making a request in progress on another thread fail.
+		 */
+		void close();
+	}
+
+	/**
+	 * A request a player is waiting on, and the histogram its latency is recorded in.
+	 */
+	private static class Pending {
+		final LatencyHistogram histogram;
+		final long intended;
+
+		Pending(LatencyHistogram histogram, long intended) {
+			this.histogram = histogram;
+			this.intended = intended;
+		}
+	}
+
+	// Status of a reply that showed the board
+	private static final String OK = "ok";
+	// Longest time to wait for the players to stop once the test ends
+	private static final long STOP_MILLIS = 1000;
+
+	private final Board board;
+	private final int players;
+	private final long intervalNanos;
+	private final int columns, rows;
+	private final String protocol;
+	private int port;
+
+	private final LatencyHistogram flips = new LatencyHistogram();
+	private final LatencyHistogram looks = new LatencyHistogram();
+	private final AtomicInteger errors = new AtomicInteger();
+	private final ConcurrentMap<String, LongAdder> replies = new ConcurrentSkipListMap<String, LongAdder>();
+	private final AtomicReferenceArray<Pending> pending;
+	private final List<Client> clients = new ArrayList<Client>();
+	private volatile boolean stopped;
+	private int blockedAtEnd;
+	private long elapsedNanos;
+
+	// Abstraction function:
+	//   AF(board, players, intervalNanos, protocol) ::= a load test in which players players each send a request
+	//     every intervalNanos to board over protocol, with latencies of requests answered with the board in flips
+	//     and looks, the number of replies with each status in replies, and the request player i is waiting on
+	//     in pending[i], or null
+	// Representation invariant:
+	//   players > 0, intervalNanos > 0, pending.length() == players
+	// Safety from rep exposure:
+	//   no fields are returned
+	// Thread safety argument:
+	//   histograms and counters are threadsafe types. A pending request is recorded by whichever of its player
+	//   or run() takes it out of pending first, so it is recorded once. clients is guarded by its own lock.
+	//   blockedAtEnd, elapsedNanos and port are only accessed by the thread calling run() and report(), and
+	//   run() joins the players before returning so report() reads histograms no player is still writing.
+
+	/**
+	 * @param board board to play on
+	 * @param protocol "board", "text" or "web"
+	 * @param players number of simulated players
+	 * @param rate target requests per second over all players
+	 */
+	LoadGenerator(Board board, String protocol, int players, double rate) {
+		this.board = board;
+		this.protocol = protocol;
+		this.players = players;
+		this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) * players / rate));
+		this.columns = board.width();
+		this.rows = board.height();
+		this.pending = new AtomicReferenceArray<Pending>(players);
+	}
+
+	/**
+	 * Starts the server for the protocol if needed and generates load for the given duration.
+	 * Requests still waiting on a response at the end are recorded with the time they waited so far
+	 * and counted as blocked, then the players are stopped.
+	 * @param seconds duration of the test
+	 * @throws IOException if the server could not be started
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	void run(int seconds) throws IOException, InterruptedException {
+		switch (this.protocol) {
+		case "board":
+			break;
+		case "text":
+			final TextServer textServer = new TextServer(this.board, 0);
+			final Thread serverThread = new Thread(() -> {
+				try {
+					textServer.serve();
+				} catch (IOException ioe) {
+					ioe.printStackTrace();
+				}
+			});
+			serverThread.setDaemon(true);
+			serverThread.start();
+			this.port = textServer.port();
+			break;
+		case "web":
+			final WebServer webServer = new WebServer(this.board, 0);
+			webServer.start();
+			this.port = webServer.port();
+			break;
+		default:
+			throw new IllegalArgumentException("invalid PROTOCOL '" + this.protocol + "'");
+		}
+
+		final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+		final long end = start + TimeUnit.SECONDS.toNanos(seconds);
+		final CountDownLatch done = new CountDownLatch(this.players);
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < this.players; i++) {
+			final int player = i;
+			// Spread the players' schedules evenly over one interval
+			final long first = start + this.intervalNanos * i / this.players;
+			final Thread thread = new Thread(() -> {
+				try {
+					final Client client = this.connect("load" + player);
+					synchronized (this.clients) {
+						this.clients.add(client);
+					}
+					this.play(player, client, first, end);
+				} catch (IOException e) {
+					this.errors.incrementAndGet();
+				} finally {
+					done.countDown();
+				}
+			});
+			thread.setDaemon(true);
+			threads.add(thread);
+			thread.start();
+		}
+		done.await(end - System.nanoTime() + TimeUnit.SECONDS.toNanos(1), TimeUnit.NANOSECONDS);
+		this.stop(threads);
+		this.elapsedNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * Records the requests the players are still waiting on, then closes their connections and waits
+	 * for them to finish so that nothing is recorded after the test.
+	 */
+	private void stop(List<Thread> threads) throws InterruptedException {
+		this.stopped = true;
+		final long now = System.nanoTime();
+		for (int player = 0; player < this.players; player++) {
+			final Pending request = this.pending.getAndSet(player, null);
+			if (request != null) {
+				request.histogram.record(now - request.intended);
+				this.blockedAtEnd++;
+			}
+		}
+		synchronized (this.clients) {
+			for (Client client : this.clients) {
+				client.close();
+			}
+		}
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STOP_MILLIS);
+		for (Thread thread : threads) {
+			thread.interrupt();
+			thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+		}
+	}
+
+	private Client connect(String id) throws IOException {
+		switch (this.protocol) {
+		case "text":
+			return new TextClient(this.port, this.rows);
+		case "web":
+			return new WebClient(this.port, id);
+		default:
+			return new BoardClient(this.board, id);
+		}
+	}
+
+	/**
+	 * Sends requests on a fixed schedule until end, recording the latency of each one from
+	 * the time it was scheduled.
+	 */
+	private void play(int player, Client client, long first, long end) {
+		final Random random = new Random();
+		for (long intended = first; intended < end && !this.stopped; intended += this.intervalNanos) {
+			long now;
+			while ((now = System.nanoTime()) < intended) {
+				LockSupport.parkNanos(intended - now);
+			}
+			final boolean look = random.nextDouble() < LOOK_FRACTION;
+			final Pending request = new Pending(look ? this.looks : this.flips, intended);
+			this.pending.set(player, request);
+			try {
+				final String status = look ? client.look()
+						: client.flip(random.nextInt(this.columns) + 1, random.nextInt(this.rows) + 1);
+				// Once the test has ended, stop() has already recorded the request
+				if (this.pending.compareAndSet(player, request, null)) {
+					if (status.equals(OK)) {
+						request.histogram.record(System.nanoTime() - intended);
+					} else {
+						this.replies.computeIfAbsent(status, s -> new LongAdder()).increment();
+					}
+				}
+			} catch (IOException e) {
+				if (this.pending.compareAndSet(player, request, null)) {
+					this.errors.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Prints throughput and latency percentiles for each operation.
+	 * @param out stream to print the report to
+	 */
+	void report(PrintStream out) {
+		final double seconds = this.elapsedNanos / 1e9;
+		final long completed = this.flips.count() + this.looks.count();
+		out.println("protocol: " + this.protocol + ", players: " + this.players + ", board: "
+				+ this.columns + " x " + this.rows);
+		out.printf("target: %.1f req/s, achieved: %.1f req/s over %.1f s%n",
+				TimeUnit.SECONDS.toNanos(1) * (double) this.players / this.intervalNanos, completed / seconds, seconds);
+		out.println("errors: " + this.errors.get() + ", still blocked at end: " + this.blockedAtEnd);
+		final StringBuilder other = new StringBuilder();
+		for (Map.Entry<String, LongAdder> status : this.replies.entrySet()) {
+			other.append(other.length() == 0 ? "" : ", ").append(status.getKey()).append(": ").append(status.getValue().sum());
+		}
+		out.println("replies without the board: " + (other.length() == 0 ? "none" : other));
+		out.printf("%-6s %10s %12s %12s %12s %12s%n", "op", "count", "p50 (us)", "p99 (us)", "p99.9 (us)", "max (us)");
+		printLatencies(out, "flip", this.flips);
+		printLatencies(out, "look", this.looks);
+	}
+
+	private static void printLatencies(PrintStream out, String op, LatencyHistogram histogram) {
+		out.printf("%-6s %10d %12.1f %12.1f %12.1f %12.1f%n", op, histogram.count(),
+				histogram.percentile(50) / 1e3, histogram.percentile(99) / 1e3,
+				histogram.percentile(99.9) / 1e3, histogram.max() / 1e3);
+	}
+
+	private static class BoardClient implements Client {
+		private final Board board;
+		private final String id;
+
+		BoardClient(Board board, String id) {
+			this.board = board;
+			this.id = id;
+			board.addPlayer(id);
+		}
+
+		@Override
+		public String flip(int col, int row) throws IOException {
+			final FlipOutcome outcome;
+			try {
+				outcome = this.board.flip(col, row, this.id);
+			} catch (RuntimeException e) {
+				// A flip waiting for a card fails when the player's thread is interrupted at the end of the test
+				throw new IOException("flip failed", e);
+			}
+			if (outcome == FlipOutcome.OUT_OF_BOUNDS) {
+				return "out of bounds";
+			}
+			return outcome == FlipOutcome.UNKNOWN_PLAYER ? "unknown player" : OK;
+		}
+
+		@Override
+		public String look() {
+			this.board.look(this.id);
+			return OK;
+		}
+
+		@Override
+		public void close() {
+			// Nothing to close, a flip waiting for a card is ended by interrupting its player
+		}
+	}
+
+	private static class TextClient implements Client {
+		private final Socket socket;
+		private final BufferedReader in;
+		private final PrintWriter out;
+		private final int rows;
+
+		TextClient(int port, int rows) throws IOException {
+			this.socket = new Socket("127.0.0.1", port);
+			this.in = new BufferedReader(new InputStreamReader(this.socket.getInputStream(), StandardCharsets.UTF_8));
+			this.out = new PrintWriter(this.socket.getOutputStream(), true);
+			this.rows = rows;
+		}
+
+		@Override
+		public String flip(int col, int row) throws IOException {
+			this.out.println("flip " + col + " " + row);
+			return this.readReply();
+		}
+
+		@Override
+		public String look() throws IOException {
+			this.out.println("look");
+			return this.readReply();
+		}
+
+		@Override
+		public void close() {
+			try {
+				this.socket.close();
+			} catch (IOException ioe) {
+				// The connection is being abandoned
+			}
+		}
+
+		/**
+		 * Reads one reply. Every row of a board starts with " " or ">", so a first line that does not is a
+		 * one line reply such as "busy", "out of bounds", "unknown player", "rate limited: ..." or "...: Command not recognized".
+		 * @return OK if the reply was a board, otherwise the one line reply up to any ":"
+		 */
+		private String readReply() throws IOException {
+			final String first = this.readLine();
+			if (!first.startsWith(" ") && !first.startsWith(">")) {
+				final int colon = first.indexOf(':');
+				return first.endsWith("Command not recognized") ? "not recognized"
+						: colon < 0 ? first : first.substring(0, colon);
+			}
+			for (int i = 1; i < this.rows; i++) {
+				this.readLine();
+			}
+			return OK;
+		}
+
+		private String readLine() throws IOException {
+			final String line = this.in.readLine();
+			if (line == null) {
+				throw new IOException("server closed the connection");
+			}
+			return line;
+		}
+	}
+
+	private static class WebClient implements Client {
+		private final String base;
+		private final String id;
+		private final byte[] buffer = new byte[8192];
+		// Connection of the request in progress, disconnected by close()
+		private volatile HttpURLConnection connection;
+
+		WebClient(int port, String id) {
+			this.base = "http://127.0.0.1:" + port;
+			this.id = id;
+		}
+
+		@Override
+		public String flip(int col, int row) throws IOException {
+			return this.get("/flip/" + this.id + "/" + col + "," + row);
+		}
+
+		@Override
+		public String look() throws IOException {
+			return this.get("/look/" + this.id);
+		}
+
+		@Override
+		public void close() {
+			final HttpURLConnection connection = this.connection;
+			if (connection != null) {
+				connection.disconnect();
+			}
+		}
+
+		/**
+		 * @return OK for a 200 response, otherwise the status code, e.g. "429"
+		 */
+		private String get(String path) throws IOException {
+			final HttpURLConnection connection = (HttpURLConnection) new URL(this.base + path).openConnection();
+			this.connection = connection;
+			final int status = connection.getResponseCode();
+			final InputStream stream = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			if (stream != null) {
+				try (InputStream body = stream) {
+					while (body.read(this.buffer) >= 0) {
+						// drain the response so the connection can be reused
+					}
+				}
+			}
+			return status == 200 ? OK : String.valueOf(status);
+		}
+	}
+
+}
@@ -7,10 +7,29 @@ public class LookRequest implements Request {
 	
 	private final String player;
 	private final HttpExchange exchange;
+	private final Region region;
+	private final BoardFormat format;
 
 	public LookRequest(String player, HttpExchange exchange) {
+		this(player, exchange, null);
+	}
+	
+	/**
+	 * @param region region of the board to look at, or null for the whole board
+	 */
+	public LookRequest(String player, HttpExchange exchange, Region region) {
+		this(player, exchange, region, BoardFormat.HTTP);
+	}
+	
+	/**
+	 * @param region region of the board to look at, or null for the whole board
+	 * @param format format of the board sent in the response, HTTP or RLE
+	 */
+	public LookRequest(String player, HttpExchange exchange, Region region, BoardFormat format) {
 		this.player = player;
 		this.exchange = exchange;
+		this.region = region;
+		this.format = format;
 	}
 	@Override
 	public boolean isFlip() {
@@ -47,6 +66,16 @@ public class LookRequest implements Request {
 		return this.player;
 	}
 	
+	@Override
+	public Region region() {
+		return this.region;
+	}
+
+	@Override
+	public BoardFormat format() {
+		return this.format;
+	}
+
 	@Override
 	public HttpExchange exchange() {
 		return this.exchange;
@@ -0,0 +1,206 @@
+package memory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A bot that remembers up to capacity of the cards it has seen. On its turn it flips a pair it knows if it
+ * knows one, otherwise a card it has not seen, and for its second card the partner of the first card if it
+ * remembers one, otherwise another card it has not seen. With a capacity of 0 it flips at random.
+ */
+class MemoryBot implements Bot {
+
+	private final int capacity;
+	private final Random random;
+	private final boolean[] gone;
+	// Spaces that are neither remembered nor removed, unseen[0 .. unseenSize), where position[i] is the place of space i or -1
+	private final int[] unseen;
+	private final int[] position;
+	private int unseenSize;
+	// Remembered card at each space, or null
+	private final String[] known;
+	// Remembered spaces, seen longest ago first
+	private final Set<Integer> remembered = new LinkedHashSet<Integer>();
+	// Remembered spaces of each card
+	private final Map<String, List<Integer>> spacesOf = new HashMap<String, List<Integer>>();
+	// Cards with at least two remembered spaces
+	private final Set<String> pairs = new LinkedHashSet<String>();
+	// Spaces flipped on the bot's last turn, which it may still control
+	private int lastFirst = -1, lastSecond = -1;
+	// Space another player controlled when the bot last tried to flip it, avoided on its next turn, or -1
+	private int blocked = -1;
+
+	/*
+	 * AF(gone, known, unseen, unseenSize) ::= a bot that knows the spaces i with gone[i] are empty, remembers the card
+	 * 		known[i] at each space where it is not null, and knows nothing about the spaces in unseen[0 .. unseenSize)
+	 * Rep Invariant - every space is exactly one of gone, remembered (known[i] != null) or unseen
+	 * 		remembered.size() <= capacity
+	 * 		spacesOf and pairs agree with known
+	 * Safety from rep exposure:
+	 * 		only primitive types are returned
+	 * Thread Safety Argument -
+	 * 		not threadsafe, a bot is confined to the thread playing its game
+	 */
+
+	/**
+	 * @param spaces number of spaces on the board
+	 * @param capacity number of cards remembered, must not be negative
+	 * @param random source of randomness for choices
+	 */
+	MemoryBot(int spaces, int capacity, Random random) {
+		this.capacity = capacity;
+		this.random = random;
+		this.gone = new boolean[spaces];
+		this.known = new String[spaces];
+		this.unseen = new int[spaces];
+		this.position = new int[spaces];
+		for (int i = 0; i < spaces; i++) {
+			this.unseen[i] = i;
+			this.position[i] = i;
+		}
+		this.unseenSize = spaces;
+	}
+
+	@Override
+	public void seen(int index, String card) {
+		if (this.capacity == 0 || this.gone[index]) {
+			return;
+		}
+		if (this.known[index] != null) {
+			// Seen again, so it is now the most recent
+			this.remembered.remove(index);
+			this.remembered.add(index);
+			return;
+		}
+		this.removeUnseen(index);
+		this.known[index] = card;
+		this.remembered.add(index);
+		final List<Integer> spaces = this.spacesOf.computeIfAbsent(card, c -> new ArrayList<Integer>(2));
+		spaces.add(index);
+		if (spaces.size() == 2) {
+			this.pairs.add(card);
+		}
+		if (this.remembered.size() > this.capacity) {
+			final int oldest = this.remembered.iterator().next();
+			this.forget(oldest);
+			this.addUnseen(oldest);
+		}
+	}
+
+	@Override
+	public void removed(int index) {
+		if (this.gone[index]) {
+			return;
+		}
+		this.gone[index] = true;
+		if (this.known[index] != null) {
+			this.forget(index);
+		} else {
+			this.removeUnseen(index);
+		}
+	}
+
+	@Override
+	public void busy(int index) {
+		this.blocked = index;
+	}
+
+	@Override
+	public int chooseFirst() {
+		int first = -1;
+		for (String card : this.pairs) {
+			final List<Integer> spaces = this.spacesOf.get(card);
+			// Trying a card another player holds again could wait on a player who is waiting on this bot's cards
+			if (spaces.get(0) == this.blocked || spaces.get(1) == this.blocked) {
+				continue;
+			}
+			// Start with a card the bot does not control so that the flip is not wasted
+			first = spaces.get(0) == this.lastFirst || spaces.get(0) == this.lastSecond ? spaces.get(1) : spaces.get(0);
+			break;
+		}
+		if (first == -1) {
+			first = this.anyUnseenOrLeft(this.blocked);
+		}
+		this.blocked = -1;
+		this.lastFirst = first;
+		this.lastSecond = -1;
+		return first;
+	}
+
+	@Override
+	public int chooseSecond(int first, String card) {
+		final List<Integer> spaces = this.spacesOf.get(card);
+		int second = -1;
+		if (spaces != null) {
+			for (int space : spaces) {
+				if (space != first && space != this.blocked) {
+					second = space;
+					break;
+				}
+			}
+		}
+		if (second == -1) {
+			second = this.anyUnseenOrLeft(first);
+		}
+		this.blocked = -1;
+		this.lastSecond = second;
+		return second;
+	}
+
+	/**
+	 * @return a random unseen space other than exclude, preferring ones the bot did not flip or find busy last turn,
+	 * 		otherwise any space left other than exclude, otherwise exclude
+	 */
+	private int anyUnseenOrLeft(int exclude) {
+		for (int tries = 0; tries < 4 && this.unseenSize > 0; tries++) {
+			final int space = this.unseen[this.random.nextInt(this.unseenSize)];
+			if (space != exclude && space != this.lastFirst && space != this.lastSecond && space != this.blocked) {
+				return space;
+			}
+		}
+		final int start = this.random.nextInt(this.gone.length);
+		for (int i = 0; i < this.gone.length; i++) {
+			final int space = (start + i) % this.gone.length;
+			if (!this.gone[space] && space != exclude) {
+				return space;
+			}
+		}
+		return exclude;
+	}
+
+	private void forget(int index) {
+		final String card = this.known[index];
+		this.known[index] = null;
+		this.remembered.remove(index);
+		final List<Integer> spaces = this.spacesOf.get(card);
+		spaces.remove((Integer) index);
+		if (spaces.size() < 2) {
+			this.pairs.remove(card);
+		}
+		if (spaces.isEmpty()) {
+			this.spacesOf.remove(card);
+		}
+	}
+
+	private void addUnseen(int index) {
+		this.position[index] = this.unseenSize;
+		this.unseen[this.unseenSize++] = index;
+	}
+
+	private void removeUnseen(int index) {
+		final int at = this.position[index];
+		if (at < 0) {
+			return;
+		}
+		final int last = this.unseen[--this.unseenSize];
+		this.unseen[at] = last;
+		this.position[last] = at;
+		this.position[index] = -1;
+	}
+
+}
@@ -6,16 +6,22 @@ public class Player {
 	 * A player playing a Memory Scramble game represented by a player ID such as an ID # or a name. 
 	 */
 	
-	// AF(ID, cards) ::= A player can be identified by ID and controls at most two cards in cards. 
-	// Rep Invariant ::= cards.size <= 2;
+	// AF(ID, handle) ::= A player can be identified by ID, or on the board they were added to by the dense integer handle. 
+	// Rep Invariant ::= handle >= 0 || handle == NO_HANDLE;
 	// Safety from Rep exposure:
 	// 	Only immutable or final types are returned. 
 	//	Defensive copy of cards is returned. 
 	
 	final String ID;
+	final int handle;
+	
+	/**
+	 * Handle of a player that has not been added to a board. 
+	 */
+	public static final int NO_HANDLE = -1;
 	
 	private void checkRep() {
-		assert true;
+		assert this.handle >= 0 || this.handle == NO_HANDLE;
 	}
 	
 	
@@ -24,7 +30,17 @@ public class Player {
 	 * @param id id of the new player
 	 */
 	public Player(String id) {
+		this(id, NO_HANDLE);
+	}
+	
+	/**
+	 * Creates a new player holding no cards. 
+	 * @param id id of the new player
+	 * @param handle dense integer identifying the player on the board they are added to
+	 */
+	Player(String id, int handle) {
 		this.ID = id;
+		this.handle = handle;
 		checkRep();
 	}
 	
@@ -36,6 +52,14 @@ public class Player {
 		return this.ID;
 	}
 	
+	/**
+	 * 
+	 * @return the player's handle on their board or NO_HANDLE
+	 */
+	public int getHandle() {
+		return this.handle;
+	}
+	
 	
 	@Override
 	public String toString() {
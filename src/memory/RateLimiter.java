@@ -0,0 +1,146 @@
+package memory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import memory.metrics.MetricsRegistry;
+
+/**
+ * A mutable threadsafe admission controller that limits how fast each player, and all players together,
+ * may send requests to a server. Each player has a {@link TokenBucket} and all players share another, and
+ * a request is admitted only if both have a token, so one player cannot use up the server's threads.
+ * A player's bucket is dropped once it has refilled, so players who stop sending requests, or ids that
+ * were only ever used once, do not keep a bucket.
+ *
+ * <p>The servers read their limits from system properties when they start. A rate of 0 or less removes the limit,
+ * and both limits are off unless their rate is set.
+ * <pre>
+ *   memory.rate.player.perSecond  requests each player may make per second (default 0, no limit)
+ *   memory.rate.player.burst      requests each player may make at once (default 100)
+ *   memory.rate.global.perSecond  requests all players together may make per second (default 0, no limit)
+ *   memory.rate.global.burst      requests all players together may make at once (default 10000)
+ * </pre>
+ */
+public class RateLimiter {
+
+	private static final LongAdder PLAYER_REJECTED = MetricsRegistry.global().counter("memory_rate_limited_total",
+			"scope=\"player\"", "Requests rejected because the player or the server as a whole exceeded its rate limit, by scope");
+	private static final LongAdder GLOBAL_REJECTED = MetricsRegistry.global().counter("memory_rate_limited_total",
+			"scope=\"global\"", "Requests rejected because the player or the server as a whole exceeded its rate limit, by scope");
+
+	/**
+	 * @return a rate limiter with the limits given by the system properties
+	 */
+	public static RateLimiter fromProperties() {
+		return new RateLimiter(
+				Double.parseDouble(System.getProperty("memory.rate.player.perSecond", "0")),
+				Integer.getInteger("memory.rate.player.burst", 100),
+				Double.parseDouble(System.getProperty("memory.rate.global.perSecond", "0")),
+				Integer.getInteger("memory.rate.global.burst", 10000));
+	}
+
+	// Fewest buckets worth sweeping for full ones
+	static final int MIN_SWEEP = 1024;
+
+	private final double playerRate;
+	private final int playerBurst;
+	private final ConcurrentMap<String, TokenBucket> players = new ConcurrentHashMap<String, TokenBucket>();
+	private final TokenBucket global;
+	// Number of buckets at which the next sweep starts
+	private final AtomicInteger sweepAt = new AtomicInteger(MIN_SWEEP);
+
+	/*
+	 * AF(playerRate, playerBurst, players, global) ::= a limiter admitting player p's requests while players.get(p),
+	 * 		created full with playerRate and playerBurst, and global both have tokens. A null global, or a
+	 * 		playerRate <= 0, means there is no limit of that scope. A player with no bucket has a full one.
+	 * Rep Invariant - playerRate > 0 or players is empty
+	 * Safety from rep exposure:
+	 * 		buckets are never returned
+	 * Thread Safety Argument -
+	 * 		players is a ConcurrentHashMap and TokenBucket is threadsafe. Only the thread that moves sweepAt to
+	 * 		Integer.MAX_VALUE sweeps. A request racing the sweep may take a token from a bucket as it is dropped,
+	 * 		so a player can be admitted at most one request more than their burst. The other fields are final.
+	 */
+
+	/**
+	 * @param playerRate requests each player may make per second, 0 or less for no limit
+	 * @param playerBurst requests each player may make at once, must be positive
+	 * @param globalRate requests all players together may make per second, 0 or less for no limit
+	 * @param globalBurst requests all players together may make at once, must be positive
+	 */
+	public RateLimiter(double playerRate, int playerBurst, double globalRate, int globalBurst) {
+		this.playerRate = playerRate;
+		this.playerBurst = playerBurst;
+		this.global = globalRate > 0 ? new TokenBucket(globalRate, globalBurst) : null;
+	}
+
+	/**
+	 * Admits a request from player if neither their limit nor the server's is exceeded. Never blocks.
+	 * @param player id of the player making the request
+	 * @return true if the request may be served
+	 */
+	public boolean tryAcquire(String player) {
+		final TokenBucket bucket = this.playerRate > 0 ? this.bucket(player) : null;
+		if (bucket != null && !bucket.tryAcquire()) {
+			PLAYER_REJECTED.increment();
+			return false;
+		}
+		if (this.global != null && !this.global.tryAcquire()) {
+			// The request was not admitted, so it does not count against the player
+			if (bucket != null) {
+				bucket.refund();
+			}
+			GLOBAL_REJECTED.increment();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the bucket of player, creating it and first dropping full buckets if there are many
+	 */
+	private TokenBucket bucket(String player) {
+		final TokenBucket bucket = this.players.get(player);
+		if (bucket != null) {
+			return bucket;
+		}
+		final int sweepAt = this.sweepAt.get();
+		if (this.players.size() >= sweepAt && this.sweepAt.compareAndSet(sweepAt, Integer.MAX_VALUE)) {
+			this.players.values().removeIf(TokenBucket::isFull);
+			// Sweep again once the buckets still in use have doubled, so sweeps take constant time per bucket created
+			this.sweepAt.set(Math.max(MIN_SWEEP, this.players.size() * 2));
+		}
+		return this.players.computeIfAbsent(player, key -> new TokenBucket(this.playerRate, this.playerBurst));
+	}
+
+	/**
+	 * @return number of players with a bucket
+	 */
+	int buckets() {
+		return this.players.size();
+	}
+
+	/**
+	 * @param player id of a player
+	 * @return whole seconds a rejected player should wait before trying again, at least 1
+	 */
+	public long retryAfterSeconds(String player) {
+		final TokenBucket bucket = this.players.get(player);
+		long nanos = bucket == null ? 0 : bucket.nanosUntilAvailable();
+		if (this.global != null) {
+			nanos = Math.max(nanos, this.global.nanosUntilAvailable());
+		}
+		return Math.max(1, (nanos + 999_999_999L) / 1_000_000_000L);
+	}
+
+	/**
+	 * Drops the bucket of a player who left, so a player who returns starts with a full bucket.
+	 * @param player id of the player
+	 */
+	public void forget(String player) {
+		this.players.remove(player);
+	}
+
+}
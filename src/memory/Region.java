@@ -0,0 +1,118 @@
+package memory;
+
+/**
+ * Immutable rectangle of spaces on a Memory Scramble board, such as the part of a board a client can see. 
+ * Spaces are numbered as on {@link Board}, so (1, 1) is the upper left hand corner. 
+ */
+public class Region {
+	
+	private final int fromCol, fromRow, toCol, toRow;
+	
+	// AF(fromCol, fromRow, toCol, toRow) ::= the spaces (col, row) with fromCol <= col <= toCol and fromRow <= row <= toRow
+	// Rep Invariant - 1 <= fromCol <= toCol and 1 <= fromRow <= toRow
+	// Safety from rep exposure:
+	// 	 all fields are immutable primitives
+	
+	/**
+	 * @param fromCol first column of the region, must be positive
+	 * @param fromRow first row of the region, must be positive
+	 * @param toCol last column of the region, must be at least fromCol
+	 * @param toRow last row of the region, must be at least fromRow
+	 * @throws IllegalArgumentException if the region is empty or not made of positive coordinates
+	 */
+	public Region(int fromCol, int fromRow, int toCol, int toRow) throws IllegalArgumentException {
+		if (fromCol < 1 || fromRow < 1 || toCol < fromCol || toRow < fromRow) {
+			throw new IllegalArgumentException("Not a region: " + fromCol + "-" + toCol + ", " + fromRow + "-" + toRow);
+		}
+		this.fromCol = fromCol;
+		this.fromRow = fromRow;
+		this.toCol = toCol;
+		this.toRow = toRow;
+		checkRep();
+	}
+	
+	private void checkRep() {
+		assert this.fromCol >= 1 && this.fromCol <= this.toCol;
+		assert this.fromRow >= 1 && this.fromRow <= this.toRow;
+	}
+	
+	/**
+	 * @return first column of the region
+	 */
+	public int fromCol() {
+		return this.fromCol;
+	}
+	
+	/**
+	 * @return first row of the region
+	 */
+	public int fromRow() {
+		return this.fromRow;
+	}
+	
+	/**
+	 * @return last column of the region
+	 */
+	public int toCol() {
+		return this.toCol;
+	}
+	
+	/**
+	 * @return last row of the region
+	 */
+	public int toRow() {
+		return this.toRow;
+	}
+	
+	/**
+	 * @return number of columns in the region
+	 */
+	public int width() {
+		return this.toCol - this.fromCol + 1;
+	}
+	
+	/**
+	 * @return number of rows in the region
+	 */
+	public int height() {
+		return this.toRow - this.fromRow + 1;
+	}
+	
+	/**
+	 * @return true if (col, row) is in the region
+	 */
+	public boolean contains(int col, int row) {
+		return col >= this.fromCol && col <= this.toCol && row >= this.fromRow && row <= this.toRow;
+	}
+	
+	/**
+	 * @return true if every space of other is in this region
+	 */
+	public boolean contains(Region other) {
+		return this.contains(other.fromCol, other.fromRow) && this.contains(other.toCol, other.toRow);
+	}
+	
+	@Override
+	public boolean equals(Object that) {
+		if (!(that instanceof Region)) {
+			return false;
+		}
+		final Region other = (Region) that;
+		return this.fromCol == other.fromCol && this.fromRow == other.fromRow 
+				&& this.toCol == other.toCol && this.toRow == other.toRow;
+	}
+	
+	@Override
+	public int hashCode() {
+		return ((this.fromCol * 31 + this.fromRow) * 31 + this.toCol) * 31 + this.toRow;
+	}
+	
+	/**
+	 * @return the region as "FROM_COL-TO_COL,FROM_ROW-TO_ROW"
+	 */
+	@Override
+	public String toString() {
+		return this.fromCol + "-" + this.toCol + "," + this.fromRow + "-" + this.toRow;
+	}
+	
+}
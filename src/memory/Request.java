@@ -4,6 +4,11 @@ import com.sun.net.httpserver.HttpExchange;
 
 public interface Request {
 	
+	/**
+	 * Timeout of requests that wait until they can be completed
+	 */
+	public static final long NO_TIMEOUT = -1;
+	
 	public boolean isFlip();
 	
 	public boolean isLook();
@@ -24,4 +29,29 @@ public interface Request {
 	
 	public String  player();
 	
+	/**
+	 * 
+	 * @return longest time in milliseconds a flip may wait for control of a card or a watch may wait for a change, 
+	 * 		or NO_TIMEOUT to wait until the card is released or the board changes
+	 */
+	public default long timeout() {
+		return NO_TIMEOUT;
+	}
+	
+	/**
+	 * 
+	 * @return format the board is rendered in for the response
+	 */
+	public default BoardFormat format() {
+		return BoardFormat.HTTP;
+	}
+	
+	/**
+	 * 
+	 * @return region of the board rendered for the response, or null for the whole board
+	 */
+	public default Region region() {
+		return null;
+	}
+	
 }
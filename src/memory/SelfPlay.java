@@ -0,0 +1,424 @@
+package memory;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import memory.metrics.LatencyHistogram;
+
+/**
+ * Self-play simulator for evaluating board sizes, card sets and playing strategies offline.
+ *
+ * <p>Plays many independent games in parallel on a fork-join pool. Each game is played on its own
+ * {@link Board} by one thread, with the bots taking turns and every flip made with
+ * {@link Board#tryFlip(int, int, String)}, so games never block and run as fast as the board allows.
+ * Flipping a card another bot controls is counted as contention. Games are seeded, so a run can be
+ * repeated exactly with the same seed.
+ */
+public class SelfPlay {
+
+	/**
+	 * Run a simulation using the given arguments.
+	 *
+	 * <p> Command-line usage:
+	 * <pre> java memory.SelfPlay GAMES COLUMNS ROWS CARDS STRATEGY... </pre>
+	 * where:
+	 *
+	 * <p> GAMES is the number of games to play
+	 * <p> COLUMNS and ROWS give the size of the board
+	 * <p> CARDS is the number of different cards on the board
+	 * <p> STRATEGY is the strategy of each seat at the table: "random", "perfect" or "memory:N"
+	 *
+	 * <p> For example, to play a million games on a 6-by-6 board with 8 different cards between a bot
+	 *     with perfect memory and one that remembers the last 4 cards it saw:
+	 * <pre> 1000000 6 6 8 perfect memory:4 </pre>
+	 *
+	 * <p> The system property memory.sim.seed sets the seed of the first game and memory.sim.threads
+	 *     the number of threads, by default one per core.
+	 *
+	 * @param args arguments as described above
+	 */
+	public static void main(String[] args) {
+		final Queue<String> arguments = new LinkedList<>(Arrays.asList(args));
+		final int games, columns, rows, cards;
+		try {
+			games = Integer.parseInt(arguments.remove());
+			columns = Integer.parseInt(arguments.remove());
+			rows = Integer.parseInt(arguments.remove());
+			cards = Integer.parseInt(arguments.remove());
+		} catch (NoSuchElementException | NumberFormatException e) {
+			throw new IllegalArgumentException("expected GAMES COLUMNS ROWS CARDS STRATEGY...", e);
+		}
+		if (arguments.isEmpty()) {
+			throw new IllegalArgumentException("expected at least one STRATEGY");
+		}
+		final List<BotStrategy> seats = new ArrayList<BotStrategy>();
+		for (String name : arguments) {
+			seats.add(BotStrategy.parse(name));
+		}
+		final Set<String> cardSet = new HashSet<String>();
+		for (int i = 0; i < cards; i++) {
+			cardSet.add(i < 26 ? String.valueOf((char) ('A' + i)) : "C" + i);
+		}
+
+		final SelfPlay simulation = new SelfPlay(columns, rows, cardSet, seats,
+				Long.getLong("memory.sim.seed", System.nanoTime()));
+		final ForkJoinPool pool = new ForkJoinPool(Integer.getInteger("memory.sim.threads", Runtime.getRuntime().availableProcessors()));
+		simulation.run(games, pool).report(System.out);
+		pool.shutdown();
+	}
+
+	/**
+	 * A mutable threadsafe summary of the games played by a simulation.
+	 */
+	public static class Stats {
+		private final List<BotStrategy> seats;
+		// Lengths of finished games are plain counts, recorded in histograms built for nanoseconds since their buckets suit any count
+		private final LatencyHistogram flips = new LatencyHistogram();
+		private final LatencyHistogram turns = new LatencyHistogram();
+		private final LongAdder allFlips = new LongAdder();
+		private final LongAdder busy = new LongAdder();
+		private final LongAdder capped = new LongAdder();
+		private final LongAdder deadlocked = new LongAdder();
+		private final LongAdder ties = new LongAdder();
+		private final AtomicLongArray wins;
+		private final AtomicLongArray matches;
+		private volatile long elapsedNanos;
+
+		// Abstraction function:
+		//   AF(flips, turns, allFlips, busy, capped, deadlocked, ties, wins, matches) ::= a set of games of which flips.count()
+		//     finished, taking the recorded numbers of flips and turns, and capped + deadlocked were abandoned before every pair
+		//     was matched, capped of them at the turn limit and deadlocked because no bot could turn over a card. Over all
+		//     games allFlips flips were made and busy of them found the card controlled by another bot. In the finished games
+		//     seat i made matches[i] matches and had the most matches in wins[i] games, and ties games had no single winner
+		// Representation invariant:
+		//   wins.length() == matches.length() == seats.size()
+		// Safety from rep exposure:
+		//   only primitive values and Strings are returned
+		// Thread safety argument:
+		//   all fields are threadsafe types only updated with atomic operations. elapsedNanos is volatile.
+
+		Stats(List<BotStrategy> seats) {
+			this.seats = seats;
+			this.wins = new AtomicLongArray(seats.size());
+			this.matches = new AtomicLongArray(seats.size());
+		}
+
+		/**
+		 * Records a game. Only finished games count towards game lengths, matches and wins, so abandoned games
+		 * do not skew them.
+		 * @param finished true if every pair was matched
+		 * @param deadlocked true if the game was abandoned because no bot could turn over a card
+		 * @param turns number of turns taken
+		 * @param flips number of flips made
+		 * @param busy number of flips of a card another bot controlled
+		 * @param matches number of matches made by each seat
+		 */
+		void record(boolean finished, boolean deadlocked, long turns, long flips, long busy, int[] matches) {
+			this.allFlips.add(flips);
+			this.busy.add(busy);
+			if (!finished) {
+				(deadlocked ? this.deadlocked : this.capped).increment();
+				return;
+			}
+			this.turns.record(turns);
+			this.flips.record(flips);
+			int winner = 0;
+			boolean tied = false;
+			for (int seat = 0; seat < matches.length; seat++) {
+				this.matches.addAndGet(seat, matches[seat]);
+				if (matches[seat] > matches[winner]) {
+					winner = seat;
+					tied = false;
+				} else if (seat != winner && matches[seat] == matches[winner]) {
+					tied = true;
+				}
+			}
+			if (tied) {
+				this.ties.increment();
+			} else {
+				this.wins.incrementAndGet(winner);
+			}
+		}
+
+		/**
+		 * @return number of games played, finished or not
+		 */
+		public long games() {
+			return this.finished() + this.unfinished();
+		}
+
+		/**
+		 * @return number of games in which every pair was matched
+		 */
+		public long finished() {
+			return this.flips.count();
+		}
+
+		/**
+		 * @return number of games abandoned before every pair was matched, because they deadlocked or reached the turn limit
+		 */
+		public long unfinished() {
+			return this.capped.sum() + this.deadlocked.sum();
+		}
+
+		/**
+		 * @return number of unfinished games abandoned because every bot was waiting for a card another bot held
+		 */
+		public long deadlocked() {
+			return this.deadlocked.sum();
+		}
+
+		/**
+		 * @return mean number of flips per finished game
+		 */
+		public double meanFlips() {
+			return this.flips.mean();
+		}
+
+		/**
+		 * @return number of flips, over all games, of a card another bot controlled
+		 */
+		public long busyFlips() {
+			return this.busy.sum();
+		}
+
+		/**
+		 * @param seat seat at the table, 0 for the first strategy
+		 * @return number of finished games in which the seat made more matches than any other
+		 */
+		public long wins(int seat) {
+			return this.wins.get(seat);
+		}
+
+		/**
+		 * Prints throughput, the distribution of game lengths, contention and how each seat fared.
+		 * @param out stream to print the report to
+		 */
+		public void report(PrintStream out) {
+			final long games = this.games();
+			final long finished = this.finished();
+			final double seconds = this.elapsedNanos / 1e9;
+			out.printf("games: %d in %.1f s, %.0f games/hour, finished: %d%n",
+					games, seconds, seconds == 0 ? 0 : games / seconds * 3600, finished);
+			out.printf("abandoned: %d, deadlocked: %d, at the turn limit: %d%n",
+					this.unfinished(), this.deadlocked(), this.capped.sum());
+			out.printf("%-6s %10s %10s %10s %10s %10s  (finished games)%n", "length", "mean", "p50", "p90", "p99", "max");
+			printLengths(out, "turns", this.turns);
+			printLengths(out, "flips", this.flips);
+			out.printf("busy flips: %d, %.2f per game, %.2f%% of flips%n", this.busyFlips(),
+					games == 0 ? 0 : (double) this.busyFlips() / games,
+					this.allFlips.sum() == 0 ? 0 : 100.0 * this.busyFlips() / this.allFlips.sum());
+			out.printf("%-4s %-12s %10s %12s %10s%n", "seat", "strategy", "wins", "win rate", "matches");
+			for (int seat = 0; seat < this.seats.size(); seat++) {
+				out.printf("%-4d %-12s %10d %11.1f%% %10d%n", seat, this.seats.get(seat), this.wins(seat),
+						finished == 0 ? 0 : 100.0 * this.wins(seat) / finished, this.matches.get(seat));
+			}
+			out.println("ties: " + this.ties.sum());
+		}
+
+		private static void printLengths(PrintStream out, String name, LatencyHistogram histogram) {
+			out.printf("%-6s %10.1f %10d %10d %10d %10d%n", name, histogram.mean(), histogram.percentile(50),
+					histogram.percentile(90), histogram.percentile(99), histogram.max());
+		}
+	}
+
+	// Games played by one fork-join task before it stops splitting
+	private static final int GAMES_PER_TASK = 16;
+	// Longest game, in flips per space on the board, before it is abandoned as unfinished
+	private static final int MAX_FLIPS_PER_SPACE = 1000;
+	// Turns per seat without any card being turned over before a game is abandoned as deadlocked. A busy flip
+	// does not release the card a bot holds, so bots can each hold one card of a pair another bot holds forever.
+	private static final int STALLED_TURNS_PER_SEAT = 100;
+
+	private final int columns, rows;
+	private final List<String> cards;
+	private final List<BotStrategy> seats;
+	private final long seed;
+
+	// Abstraction function:
+	//   AF(columns, rows, cards, seats, seed) ::= a simulation of games on columns x rows boards holding a shuffle of
+	//     cards, between bots playing the strategies in seats in turn, where game g is seeded from seed and g
+	// Representation invariant:
+	//   cards.size() == columns * rows, seats is not empty
+	// Safety from rep exposure:
+	//   cards and seats are unmodifiable copies, and strategies are immutable
+	// Thread safety argument:
+	//   all fields are final and immutable. Each game has its own board, bots and Random confined to one thread.
+
+	/**
+	 * @param columns board width
+	 * @param rows board height
+	 * @param cards cards that appear on the board, in as equal numbers as possible
+	 * @param seats strategy of each bot at the table, in the order they take turns
+	 * @param seed seed of the first game
+	 * @throws IllegalArgumentException if the board does not have positive dimensions or there are no seats
+	 */
+	public SelfPlay(int columns, int rows, Set<String> cards, List<BotStrategy> seats, long seed) throws IllegalArgumentException {
+		if (seats.isEmpty()) {
+			throw new IllegalArgumentException("expected at least one seat");
+		}
+		this.columns = columns;
+		this.rows = rows;
+		this.cards = Collections.unmodifiableList(new Board(columns, rows, cards, false).layout());
+		this.seats = Collections.unmodifiableList(new ArrayList<BotStrategy>(seats));
+		this.seed = seed;
+	}
+
+	/**
+	 * Plays games in parallel on pool and waits for them to finish.
+	 * @param games number of games to play
+	 * @param pool pool to play on
+	 * @return summary of the games
+	 */
+	public Stats run(int games, ForkJoinPool pool) {
+		final Stats stats = new Stats(this.seats);
+		final long start = System.nanoTime();
+		pool.invoke(new Games(0, games, stats));
+		stats.elapsedNanos = System.nanoTime() - start;
+		return stats;
+	}
+
+	/**
+	 * Plays the games numbered from up to but not including to, splitting the range across the pool.
+	 */
+	private class Games extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from, to;
+		private final Stats stats;
+
+		Games(int from, int to, Stats stats) {
+			this.from = from;
+			this.to = to;
+			this.stats = stats;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= GAMES_PER_TASK) {
+				for (int game = this.from; game < this.to; game++) {
+					play(game, this.stats);
+				}
+				return;
+			}
+			final int middle = (this.from + this.to) >>> 1;
+			invokeAll(new Games(this.from, middle, this.stats), new Games(middle, this.to, this.stats));
+		}
+	}
+
+	/**
+	 * Plays one game on a new board with a new bot in every seat and records it in stats.
+	 * @param game number of the game, which seeds its layout and bots
+	 * @param stats summary the game is recorded in
+	 */
+	void play(long game, Stats stats) {
+		final Random random = new Random(this.seed + game * 0x9E3779B97F4A7C15L);
+		final List<String> layout = new ArrayList<String>(this.cards);
+		Collections.shuffle(layout, random);
+		// The board never exports its metrics, so simulated games do not show up in a server's metrics
+		final Board board = Board.fromLayout(this.columns, this.rows, layout);
+		final int spaces = layout.size();
+
+		final Bot[] bots = new Bot[this.seats.size()];
+		final String[] ids = new String[bots.length];
+		for (int seat = 0; seat < bots.length; seat++) {
+			bots[seat] = this.seats.get(seat).newBot(spaces, random);
+			ids[seat] = "bot" + seat;
+			board.addPlayer(ids[seat]);
+		}
+		int pairsLeft = 0;
+		for (int space = 0; space < spaces; space++) {
+			if (layout.get(space).isEmpty()) {
+				tellRemoved(bots, space);
+			} else {
+				pairsLeft++;
+			}
+		}
+		pairsLeft /= 2;
+
+		final int[] matches = new int[bots.length];
+		// Card each bot still controls alone because its second flip was busy, which makes its next flip a second card, or -1
+		final int[] holding = new int[bots.length];
+		Arrays.fill(holding, -1);
+		final long maxFlips = (long) MAX_FLIPS_PER_SPACE * spaces;
+		final long maxStalledTurns = (long) STALLED_TURNS_PER_SEAT * bots.length;
+		long turns = 0, flips = 0, busy = 0, lastProgress = 0;
+		while (pairsLeft > 0 && flips < maxFlips && turns - lastProgress < maxStalledTurns) {
+			final int seat = (int) (turns++ % bots.length);
+			int first = holding[seat];
+			if (first == -1) {
+				first = bots[seat].chooseFirst();
+				final FlipOutcome firstOutcome = this.flip(board, bots, ids[seat], first, layout);
+				flips++;
+				if (firstOutcome == FlipOutcome.BUSY) {
+					bots[seat].busy(first);
+					busy++;
+				}
+				if (!firstOutcome.isFlipped()) {
+					continue;
+				}
+				lastProgress = turns;
+			}
+			holding[seat] = -1;
+			final int second = bots[seat].chooseSecond(first, layout.get(first));
+			if (second == first) {
+				continue;
+			}
+			final FlipOutcome secondOutcome = this.flip(board, bots, ids[seat], second, layout);
+			flips++;
+			if (secondOutcome == FlipOutcome.BUSY) {
+				bots[seat].busy(second);
+				busy++;
+				holding[seat] = first;
+				continue;
+			}
+			lastProgress = turns;
+			if (secondOutcome == FlipOutcome.MATCHED) {
+				// The pair is out of play from now on, although it is only removed on the bot's next flip
+				matches[seat]++;
+				pairsLeft--;
+				tellRemoved(bots, first);
+				tellRemoved(bots, second);
+			}
+		}
+		for (String id : ids) {
+			board.removePlayer(id);
+		}
+		stats.record(pairsLeft == 0, turns - lastProgress >= maxStalledTurns, turns, flips, busy, matches);
+	}
+
+	/**
+	 * Flips the card at space for player, showing it to every bot if it was turned over and telling them
+	 * the space is empty if it was.
+	 */
+	private FlipOutcome flip(Board board, Bot[] bots, String player, int space, List<String> layout) {
+		final FlipOutcome outcome = board.tryFlip(space % this.columns + 1, space / this.columns + 1, player);
+		if (outcome.isFlipped()) {
+			for (Bot bot : bots) {
+				bot.seen(space, layout.get(space));
+			}
+		} else if (outcome == FlipOutcome.EMPTY) {
+			tellRemoved(bots, space);
+		}
+		return outcome;
+	}
+
+	private static void tellRemoved(Bot[] bots, int space) {
+		for (Bot bot : bots) {
+			bot.removed(space);
+		}
+	}
+
+}
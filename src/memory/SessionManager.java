@@ -0,0 +1,194 @@
+package memory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import memory.log.AsyncLog;
+import memory.metrics.MetricsRegistry;
+
+/**
+ * A mutable threadsafe tracker of the players connected to a server.
+ *
+ * <p>A player's session starts with their first request. Servers call {@link #begin(String)} and
+ * {@link #end(String)} around every request, and a session that has had no outstanding request for
+ * the idle timeout expires. When a session expires or the player disconnects, the player is removed
+ * from the board, releasing any cards they control, and the server is told so it can free its own
+ * resources for the player. Idle checks are driven by a {@link TimerWheel}.
+ *
+ * <p>The default idle timeout is 300 seconds and can be changed with the system property
+ * memory.session.idleSeconds.
+ */
+public class SessionManager {
+
+	/**
+	 * Idle timeout used by the servers, in milliseconds
+	 */
+	public static final long DEFAULT_IDLE_MILLIS =
+			TimeUnit.SECONDS.toMillis(Long.getLong("memory.session.idleSeconds", 300));
+
+	private static final LongAdder SESSIONS = MetricsRegistry.global().gauge("memory_sessions",
+			"Player sessions currently open");
+	private static final LongAdder EXPIRED = MetricsRegistry.global().counter("memory_sessions_expired_total",
+			"Player sessions closed because the player was idle");
+
+	/**
+	 * A player's session
+	 */
+	private static class Session {
+		final String id;
+		// Number of requests the player has started but not finished
+		int active = 0;
+		long lastActive = System.nanoTime();
+		boolean closed = false;
+
+		Session(String id) {
+			this.id = id;
+		}
+	}
+
+	private final Board board;
+	private final TimerWheel timer;
+	private final long idleNanos;
+	private final Consumer<String> onClose;
+	private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+
+	/*
+	 * AF(board, sessions, idleNanos) ::= the players connected to board, where player id has sessions.get(id).active
+	 * 		outstanding requests and has been idle since sessions.get(id).lastActive. Idle sessions are closed after idleNanos.
+	 * Rep Invariant - every session in sessions is not closed and has active >= 0
+	 * Safety from rep exposure:
+	 * 		Sessions are never returned
+	 * Thread Safety Argument -
+	 * 		sessions is a ConcurrentHashMap. The fields of a Session are only accessed while holding its lock.
+	 * 		A session is closed and removed from sessions while holding its lock, so a request either begins
+	 * 		before the session closes and keeps it open, or finds it closed and starts a new session.
+	 */
+
+	/**
+	 * @param board board players are removed from when their session closes, or null if the server has no board
+	 * @param timer timer wheel used to check for idle sessions
+	 * @param idleTimeout time a player with no outstanding requests may stay idle, must be positive
+	 * @param unit unit of idleTimeout
+	 * @param onClose called with the player's id after a session closes and the player has been removed from the board.
+	 * 		Runs on the thread closing the session, which may be the timer thread, and must not block.
+	 */
+	public SessionManager(Board board, TimerWheel timer, long idleTimeout, TimeUnit unit, Consumer<String> onClose) {
+		this.board = board;
+		this.timer = timer;
+		this.idleNanos = unit.toNanos(idleTimeout);
+		this.onClose = onClose;
+	}
+
+	/**
+	 * Records that player id started a request, starting a session if they have none.
+	 * The session will not expire until a matching call to end().
+	 * @param id id of the player
+	 */
+	public void begin(String id) {
+		while (true) {
+			final boolean[] created = new boolean[1];
+			final Session session = this.sessions.computeIfAbsent(id, key -> {
+				created[0] = true;
+				return new Session(key);
+			});
+			synchronized (session) {
+				if (session.closed) {
+					continue;
+				}
+				session.active++;
+				session.lastActive = System.nanoTime();
+			}
+			if (created[0]) {
+				SESSIONS.increment();
+				this.scheduleCheck(session, this.idleNanos);
+			}
+			return;
+		}
+	}
+
+	/**
+	 * Records that player id finished a request started with begin().
+	 * @param id id of the player
+	 */
+	public void end(String id) {
+		final Session session = this.sessions.get(id);
+		if (session == null) {
+			return;
+		}
+		synchronized (session) {
+			if (!session.closed && session.active > 0) {
+				session.active--;
+				session.lastActive = System.nanoTime();
+			}
+		}
+	}
+
+	/**
+	 * Closes the session of player id immediately, e.g. when they disconnect, even if they have outstanding requests.
+	 * @param id id of the player
+	 * @return true if the player had an open session
+	 */
+	public boolean disconnect(String id) {
+		final Session session = this.sessions.get(id);
+		return session != null && this.close(session);
+	}
+
+	/**
+	 * @return number of open sessions
+	 */
+	public int size() {
+		return this.sessions.size();
+	}
+
+	private void scheduleCheck(Session session, long delayNanos) {
+		this.timer.schedule(() -> this.check(session), delayNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Closes session if it is idle, otherwise checks it again when it could next become idle.
+	 */
+	private void check(Session session) {
+		final long remaining;
+		synchronized (session) {
+			if (session.closed) {
+				return;
+			}
+			remaining = session.active > 0 ? this.idleNanos : session.lastActive + this.idleNanos - System.nanoTime();
+			if (remaining <= 0) {
+				this.close(session);
+			}
+		}
+		if (remaining > 0) {
+			this.scheduleCheck(session, remaining);
+		} else {
+			EXPIRED.increment();
+			AsyncLog.global().log("Session for player %s expired", session.id);
+		}
+	}
+
+	/**
+	 * @return true if this call closed the session
+	 */
+	private boolean close(Session session) {
+		synchronized (session) {
+			if (session.closed) {
+				return false;
+			}
+			session.closed = true;
+			// Remove the player before the session so that a new session for the same id adds them again afterwards
+			if (this.board != null) {
+				this.board.removePlayer(session.id);
+			}
+			if (this.onClose != null) {
+				this.onClose.accept(session.id);
+			}
+			this.sessions.remove(session.id, session);
+		}
+		SESSIONS.decrement();
+		return true;
+	}
+
+}
@@ -9,8 +9,13 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import memory.log.AsyncLog;
+import memory.metrics.MetricsRegistry;
 
 /**
  * Text-protocol game server.
@@ -22,8 +27,15 @@ public class TextServer {
     
     private final ServerSocket serverSocket;
     private final Board board;
-    final Set<Integer> clientIDs = new HashSet<Integer>();
-    int nextClientID = 1;
+    // Sockets of connected clients by client id
+    final ConcurrentMap<Integer, Socket> clients = new ConcurrentHashMap<Integer, Socket>();
+    private final SessionManager sessions;
+    private final RateLimiter limiter = RateLimiter.fromProperties();
+    
+    private static final LongAdder CONNECTIONS = MetricsRegistry.global().gauge("memory_text_connections", 
+    		"Open text protocol connections");
+    private static final LongAdder CONNECTIONS_TOTAL = MetricsRegistry.global().counter("memory_text_connections_total", 
+    		"Text protocol connections accepted");
      
     // Abstraction function:
     //   a server allowing you to play a memory scramble game using text protocols
@@ -36,17 +48,25 @@ public class TextServer {
     // Thread safety argument:
     //   Each player is given their own thread to interact with the board but since 
     //   Board is a threadsafe data type, therefore all references to board are threadsafe.
+    //   clients is a ConcurrentHashMap and SessionManager and RateLimiter are threadsafe. 
     
     /**
      * Make a new text game server using board that listens for connections on port.
      * 
-     * @param board shared game board
+     * @param board shared game board, whose metrics the server exports, see Board.exportMetrics()
      * @param port server port number
      * @throws IOException if an error occurs opening the server socket
      */
     public TextServer(Board board, int port) throws IOException {
         this.serverSocket = new ServerSocket(port);
         this.board = board;
+        board.exportMetrics();
+        // Idle players are removed from the board and their connection is closed
+        this.sessions = new SessionManager(board, TimerWheel.global(), SessionManager.DEFAULT_IDLE_MILLIS, 
+        		TimeUnit.MILLISECONDS, id -> {
+        			this.limiter.forget(id);
+        			this.close(Integer.parseInt(id));
+        		});
         this.checkRep();
     }
     
@@ -78,14 +98,17 @@ public class TextServer {
         		int temp = (int) Math.floor(Math.random() * Math.pow(16, 8));
 
         		// Check to make sure the client ID is unique and was successfully added
-        		while (clientIDs.contains(temp)) {
+        		while (clients.putIfAbsent(temp, s) != null) {
         			temp = (int) Math.floor(Math.random() * Math.pow(16, 8));
         		}
         		final int clientID = temp;
-        		clientIDs.add(clientID);
-        		System.out.println("Connected client with id " + clientID);
+        		AsyncLog.global().log("Connected client with id %d", clientID);
+        		this.sessions.begin(String.valueOf(clientID));
         		this.board.addPlayer(String.valueOf(clientID));
+        		this.sessions.end(String.valueOf(clientID));
         		
+        		CONNECTIONS_TOTAL.increment();
+        		CONNECTIONS.increment();
 	        	new Thread(() -> {
 	        		Socket socket = s;
 					try {
@@ -93,13 +116,17 @@ public class TextServer {
 		        		try {
 		        			handleConnection(socket, clientID);
 		        		} catch (IOException ioe) {
-		        			ioe.printStackTrace(); // but do not stop serving
+		        			AsyncLog.global().error("Connection error for client " + clientID, ioe); // but do not stop serving
 		        		} finally {
 							socket.close();
 		        		}
 					} catch (IOException e) {
-						System.out.println("Server Error" + e);
-						e.printStackTrace();
+						AsyncLog.global().error("Server Error", e);
+					} finally {
+						// Releases any cards the player still controls
+						this.sessions.disconnect(String.valueOf(clientID));
+						this.clients.remove(clientID);
+						CONNECTIONS.decrement();
 					}
 					
 	        	}).start();
@@ -121,16 +148,18 @@ public class TextServer {
         
         try {
             for (String input = in.readLine(); input != null; input = in.readLine()) {
+            	this.sessions.begin(String.valueOf(id));
             	try {
             		String output = handleRequest(input, String.valueOf(id));
             		if (output.equals("")) {
-            			this.clientIDs.remove(id);
             			socket.close();
             			break;
             		}
             		out.println(output);
             	} catch (UnsupportedOperationException e) {
             		out.println(e.getMessage() + ": Command not recognized");
+            	} finally {
+            		this.sessions.end(String.valueOf(id));
             	}
             }
         } finally {
@@ -139,6 +168,21 @@ public class TextServer {
         }
     }
     
+    /**
+     * Closes the connection of a client whose session expired. Its connection thread then finishes. 
+     * @param id id of the client
+     */
+    private void close(int id) {
+    	final Socket socket = this.clients.get(id);
+    	if (socket != null) {
+    		try {
+    			socket.close();
+    		} catch (IOException ioe) {
+    			AsyncLog.global().error("Could not close connection for client " + id, ioe);
+    		}
+    	}
+    }
+    
     /**
      * Handle a single client request and return the server response.
      * 
@@ -149,6 +193,11 @@ public class TextServer {
     private String handleRequest(String input, String id) {
         String[] tokens = input.split(" ");
         
+        // Players sending requests faster than their rate limit are told to slow down. They may always quit. 
+        if (!tokens[0].equals("quit") && !this.limiter.tryAcquire(id)) {
+        	return "rate limited: try again in " + this.limiter.retryAfterSeconds(id) + " seconds";
+        }
+        
         if (tokens[0].equals("hello")) {
             if (tokens[1].matches("\\w+")) {
                 return "Hello,\n" + tokens[1] + "!";
@@ -157,25 +206,69 @@ public class TextServer {
             }
         }
         
+        // look renders the whole board. look FROM_COL FROM_ROW TO_COL TO_ROW renders only that rectangle, 
+        // or responds with "out of bounds" if it is not on the board. look rle [FROM_COL FROM_ROW TO_COL TO_ROW] 
+        // renders in the run length format of BoardFormat.RLE instead. 
         if (tokens[0].equals("look")) {
-        	return board.look(id);
+        	final boolean rle = tokens.length > 1 && tokens[1].equals("rle");
+        	final int first = rle ? 2 : 1;
+        	if (tokens.length == first) {
+        		return rle ? board.look(id, board.bounds(), BoardFormat.RLE) : board.look(id);
+        	}
+        	final Region region;
+        	try {
+        		region = new Region(Integer.parseInt(tokens[first]), Integer.parseInt(tokens[first + 1]), 
+        				Integer.parseInt(tokens[first + 2]), Integer.parseInt(tokens[first + 3]));
+        	} catch (ArrayIndexOutOfBoundsException e) {
+        		throw new UnsupportedOperationException("Not enough argumetns for command: " + input);
+        	} catch (IllegalArgumentException iae) {
+        		throw new UnsupportedOperationException("Could not read region: " + input);
+        	}
+        	if (!board.bounds().contains(region)) {
+        		return "out of bounds";
+        	}
+        	return board.look(id, region, rle ? BoardFormat.RLE : BoardFormat.TEXT);
         }
         
-        if (tokens[0].equals("flip")) {
+        // flip COLUMN ROW [TIMEOUT_MILLIS] waits at most TIMEOUT_MILLIS for control of the card, or forever if no timeout is given. 
+        // tryflip COLUMN ROW never waits. Both respond with "busy" if another player controls the card, 
+        // "out of bounds" if the space is not on the board and "unknown player" if the player is not on the board. 
+        if (tokens[0].equals("flip") || tokens[0].equals("tryflip")) {
         	try {
 	        	int column = Integer.parseInt(tokens[1]);
 	        	int row = Integer.parseInt(tokens[2]);
-	        	System.out.println("Received flip request for (" + column + ", " + row + ") from player id: " + id);
-	        	board.flip(column, row, id);
-	        	return board.look(id);
+	        	final long timeout = tokens[0].equals("tryflip") ? 0 
+	        			: tokens.length > 3 ? Long.parseLong(tokens[3]) : Long.MAX_VALUE;
+	        	if (timeout < 0) {
+	        		throw new UnsupportedOperationException("Timeout must not be negative: " + input);
+	        	}
+	        	AsyncLog.global().log("Received flip request for (%d, %d) from player id: %s", column, row, id);
+	        	// The board is rendered as part of the flip so the response always shows the player's own move
+	        	final FlipResult result = timeout == Long.MAX_VALUE 
+	        			? board.flipAndRender(column, row, id, Long.MAX_VALUE, TimeUnit.NANOSECONDS, BoardFormat.TEXT)
+	        			: board.flipAndRender(column, row, id, timeout, TimeUnit.MILLISECONDS, BoardFormat.TEXT);
+	        	if (result.outcome() == FlipOutcome.BUSY) {
+	        		return "busy";
+	        	}
+	        	if (result.outcome() == FlipOutcome.OUT_OF_BOUNDS) {
+	        		return "out of bounds";
+	        	}
+	        	if (result.outcome() == FlipOutcome.UNKNOWN_PLAYER) {
+	        		return "unknown player";
+	        	}
+	        	return result.render();
         	} catch (ArrayIndexOutOfBoundsException e) {
         		throw new UnsupportedOperationException("Not enough argumetns for command: " + input);
         	} catch (NumberFormatException nfe) {
-        		throw new UnsupportedOperationException("Could not read row or column: row = " 
-        													+ tokens[1] + ", col = " + tokens[2]);
+        		throw new UnsupportedOperationException("Could not read row, col or timeout: " + input);
         	}
         }
         
+        // stats responds with live statistics of the game, see GameStats.report()
+        if (tokens[0].equals("stats")) {
+        	return board.stats().report().trim();
+        }
+        
         if (tokens[0].equals("quit")) {
         	//TODO Connection with client. Do not return a message. Can create a response interface for text protocols
         	// response ::= quit + board
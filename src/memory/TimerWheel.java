@@ -0,0 +1,165 @@
+package memory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import memory.log.AsyncLog;
+
+/**
+ * A mutable threadsafe hashed timer wheel that runs tasks after a delay.
+ *
+ * <p>Time is divided into ticks and the wheel has a fixed number of slots. A task due at tick t is kept
+ * in slot t % slots together with the number of full turns of the wheel left before it is due, so
+ * scheduling and cancelling a task take constant time no matter how many tasks are pending. Tasks
+ * run on the wheel's daemon thread up to one tick late, so they must be short and must not block.
+ *
+ * <p>The global wheel ticks every 100 milliseconds and is shared by every server in this process.
+ */
+public class TimerWheel {
+
+	private static final TimerWheel GLOBAL = new TimerWheel(100, TimeUnit.MILLISECONDS, 512);
+
+	/**
+	 * @return the timer wheel shared by every server in this process
+	 */
+	public static TimerWheel global() {
+		return GLOBAL;
+	}
+
+	/**
+	 * A task scheduled on a timer wheel
+	 */
+	public static final class Timeout {
+		private final Runnable task;
+		private final long deadlineTick;
+		private long rounds;
+		private volatile boolean cancelled = false;
+
+		private Timeout(Runnable task, long deadlineTick) {
+			this.task = task;
+			this.deadlineTick = deadlineTick;
+		}
+
+		/**
+		 * Prevents the task from running if it has not started yet.
+		 */
+		public void cancel() {
+			this.cancelled = true;
+		}
+
+		/**
+		 * @return true if cancel() was called
+		 */
+		public boolean isCancelled() {
+			return this.cancelled;
+		}
+	}
+
+	private final long tickNanos;
+	private final long startNanos;
+	private final List<List<Timeout>> slots;
+	private final Queue<Timeout> pending = new ConcurrentLinkedQueue<Timeout>();
+	private long tick = 0;
+
+	/*
+	 * AF(tickNanos, startNanos, slots, pending, tick) ::= a timer that has run every task due before tick number
+	 * 		tick, where tick n ends at startNanos + (n + 1) * tickNanos. The tasks waiting to run are those in pending
+	 * 		and, for each slot s, the tasks in slots[s] that are due after slots.size() * rounds more ticks.
+	 * Rep Invariant - slots.size() is a power of two
+	 * 		every task in slots[s] has deadlineTick % slots.size() == s
+	 * Safety from rep exposure:
+	 * 		Timeouts are returned on purpose so that callers can cancel them. They expose no mutable state.
+	 * Thread Safety Argument -
+	 * 		pending is a concurrent queue. slots, rounds and tick are confined to the wheel's thread, which moves
+	 * 		pending tasks into slots at the start of every tick. cancelled is volatile.
+	 */
+
+	/**
+	 * Creates a timer wheel and starts its thread.
+	 * @param tick length of one tick, must be positive
+	 * @param unit unit of tick
+	 * @param slots number of slots in the wheel, rounded up to a power of two
+	 */
+	public TimerWheel(long tick, TimeUnit unit, int slots) {
+		this.tickNanos = unit.toNanos(tick);
+		this.startNanos = System.nanoTime();
+		final int size = Integer.highestOneBit(Math.max(2, slots - 1)) << 1;
+		this.slots = new ArrayList<List<Timeout>>(size);
+		for (int i = 0; i < size; i++) {
+			this.slots.add(new ArrayList<Timeout>());
+		}
+		final Thread worker = new Thread(this::run, "memory-timer");
+		worker.setDaemon(true);
+		worker.start();
+		checkRep();
+	}
+
+	private void checkRep() {
+		assert Integer.bitCount(this.slots.size()) == 1;
+	}
+
+	/**
+	 * Schedules task to run once after delay.
+	 * @param task task to run on the wheel's thread. Must not block.
+	 * @param delay time to wait before running the task
+	 * @param unit unit of delay
+	 * @return a timeout that can be used to cancel the task
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		final long due = System.nanoTime() - this.startNanos + unit.toNanos(Math.max(0, delay));
+		final Timeout timeout = new Timeout(task, due / this.tickNanos);
+		this.pending.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Wheel thread. Sleeps until the end of each tick then runs the tasks due in that tick.
+	 */
+	private void run() {
+		while (true) {
+			final long tickEnd = this.startNanos + (this.tick + 1) * this.tickNanos;
+			for (long now = System.nanoTime(); now < tickEnd; now = System.nanoTime()) {
+				LockSupport.parkNanos(tickEnd - now);
+			}
+			this.transferPending();
+			this.expire(this.slots.get((int) this.tick & (this.slots.size() - 1)));
+			this.tick++;
+		}
+	}
+
+	private void transferPending() {
+		for (Timeout timeout = this.pending.poll(); timeout != null; timeout = this.pending.poll()) {
+			if (timeout.cancelled) {
+				continue;
+			}
+			// Tasks that are already due run in the current tick
+			final long dueTick = Math.max(timeout.deadlineTick, this.tick);
+			timeout.rounds = (dueTick - this.tick) / this.slots.size();
+			this.slots.get((int) dueTick & (this.slots.size() - 1)).add(timeout);
+		}
+	}
+
+	private void expire(List<Timeout> slot) {
+		for (Iterator<Timeout> it = slot.iterator(); it.hasNext(); ) {
+			final Timeout timeout = it.next();
+			if (timeout.cancelled) {
+				it.remove();
+			} else if (timeout.rounds > 0) {
+				timeout.rounds--;
+			} else {
+				it.remove();
+				try {
+					timeout.task.run();
+				} catch (RuntimeException e) {
+					AsyncLog.global().error("Timer task failed", e);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package memory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A mutable threadsafe lock-free token bucket. The bucket holds up to burst tokens and earns one token
+ * every 1 / ratePerSecond seconds, and each admitted request takes a token.
+ *
+ * <p>Instead of a token count and a refill time, the bucket keeps the single time at which it would be
+ * full again if no more requests arrived (the generic cell rate algorithm), so a request is admitted
+ * with one compareAndSet and the bucket never needs refilling.
+ */
+public class TokenBucket {
+
+	private final long intervalNanos;
+	private final long toleranceNanos;
+	private final AtomicLong fullAt;
+
+	/*
+	 * AF(intervalNanos, toleranceNanos, fullAt) ::= a bucket holding
+	 * 		burst - ceil((fullAt - now) / intervalNanos) tokens, where burst = toleranceNanos / intervalNanos + 1
+	 * Rep Invariant - intervalNanos > 0 and toleranceNanos >= 0
+	 * Safety from rep exposure:
+	 * 		only primitives are returned
+	 * Thread Safety Argument -
+	 * 		fullAt is an AtomicLong only changed with compareAndSet, so each admitted request moves it forward
+	 * 		by exactly one interval. The other fields are final.
+	 */
+
+	/**
+	 * Creates a full bucket.
+	 * @param ratePerSecond tokens earned per second, must be positive
+	 * @param burst most tokens the bucket holds, must be positive
+	 */
+	public TokenBucket(double ratePerSecond, int burst) {
+		this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+		this.toleranceNanos = (burst - 1) * this.intervalNanos;
+		this.fullAt = new AtomicLong(System.nanoTime());
+		checkRep();
+	}
+
+	private void checkRep() {
+		assert this.intervalNanos > 0 && this.toleranceNanos >= 0;
+	}
+
+	/**
+	 * Takes a token if one is available. Never blocks.
+	 * @return true if a token was taken
+	 */
+	public boolean tryAcquire() {
+		while (true) {
+			final long now = System.nanoTime();
+			final long fullAt = this.fullAt.get();
+			final long from = fullAt - now > 0 ? fullAt : now;
+			if (from - now > this.toleranceNanos) {
+				return false;
+			}
+			if (this.fullAt.compareAndSet(fullAt, from + this.intervalNanos)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns a token taken by tryAcquire() for a request that was not admitted after all.
+	 * The bucket never holds more than burst tokens, so a refund to a full bucket has no effect.
+	 */
+	public void refund() {
+		while (true) {
+			final long now = System.nanoTime();
+			final long fullAt = this.fullAt.get();
+			// A full bucket is full at now, never earlier, so it cannot bank tokens
+			final long refunded = fullAt - this.intervalNanos - now > 0 ? fullAt - this.intervalNanos : now;
+			if (refunded - fullAt >= 0 || this.fullAt.compareAndSet(fullAt, refunded)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return true if the bucket holds burst tokens, so it is the same as a new bucket
+	 */
+	public boolean isFull() {
+		return this.fullAt.get() - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * @return time in nanoseconds until a token is available, 0 if one is available now
+	 */
+	public long nanosUntilAvailable() {
+		return Math.max(0, this.fullAt.get() - System.nanoTime() - this.toleranceNanos);
+	}
+
+}
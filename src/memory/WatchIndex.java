@@ -0,0 +1,158 @@
+package memory;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A mutable threadsafe spatial index of the board listeners watching each region of a board.
+ * The board is divided into square tiles of TILE x TILE spaces and each tile lists the listeners whose region
+ * overlaps it, so a change to a space only visits the listeners near it. Listeners watching the whole board
+ * are kept in a separate list rather than in every tile.
+ */
+class WatchIndex {
+
+	// Width and height of a tile, in spaces
+	static final int TILE = 16;
+
+	/**
+	 * A listener and the region it watches
+	 */
+	private static final class Subscription {
+		final BoardListener listener;
+		final Region region;
+
+		Subscription(BoardListener listener, Region region) {
+			this.listener = listener;
+			this.region = region;
+		}
+	}
+
+	private final int width, height;
+	private final int tileColumns;
+	// Tiles in row major order, created when the first listener overlapping them is added
+	private final AtomicReferenceArray<Set<Subscription>> tiles;
+	private final Set<Subscription> everywhere = ConcurrentHashMap.newKeySet();
+	private final ConcurrentMap<BoardListener, Subscription> subscriptions = new ConcurrentHashMap<BoardListener, Subscription>();
+
+	/*
+	 * AF(width, height, subscriptions) ::= for a width x height board, listener l is notified of changes to the spaces in
+	 * 		subscriptions.get(l).region
+	 * Rep Invariant - a subscription whose region covers the board is in everywhere and no tile, every other
+	 * 		subscription is in exactly the tiles its region overlaps
+	 * 		tiles.length() == tileColumns * ceil(height / TILE)
+	 * Safety from rep exposure:
+	 * 		Subscriptions are never returned. Listeners are supplied by the caller.
+	 * Thread Safety Argument -
+	 * 		subscriptions, everywhere and the tile sets are concurrent collections. Tile sets are created once with
+	 * 		compareAndSet and never replaced. A listener is put in subscriptions before it is added to its tiles
+	 * 		and removed from subscriptions before it is removed from them, so a notification running at the same
+	 * 		time as add() or remove() either sees the listener or does not, and never sees a listener twice.
+	 */
+
+	/**
+	 * @param width number of columns on the board, must be positive
+	 * @param height number of rows on the board, must be positive
+	 */
+	WatchIndex(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.tileColumns = (width + TILE - 1) / TILE;
+		this.tiles = new AtomicReferenceArray<Set<Subscription>>(this.tileColumns * ((height + TILE - 1) / TILE));
+	}
+
+	/**
+	 * Starts notifying listener of changes to the spaces in region.
+	 * @param listener listener to add
+	 * @param region region on the board to watch, or null for the whole board
+	 * @return true if the listener was added, false if it was already watching the board
+	 */
+	boolean add(BoardListener listener, Region region) {
+		final Subscription subscription = new Subscription(listener, region);
+		if (this.subscriptions.putIfAbsent(listener, subscription) != null) {
+			return false;
+		}
+		if (this.coversBoard(region)) {
+			this.everywhere.add(subscription);
+			return true;
+		}
+		for (int row = (region.fromRow() - 1) / TILE; row <= (region.toRow() - 1) / TILE; row++) {
+			for (int col = (region.fromCol() - 1) / TILE; col <= (region.toCol() - 1) / TILE; col++) {
+				this.tile(row * this.tileColumns + col).add(subscription);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stops notifying listener of changes.
+	 * @param listener listener to remove
+	 * @return true if the listener was removed, false if it was not watching the board
+	 */
+	boolean remove(BoardListener listener) {
+		final Subscription subscription = this.subscriptions.remove(listener);
+		if (subscription == null) {
+			return false;
+		}
+		if (this.coversBoard(subscription.region)) {
+			this.everywhere.remove(subscription);
+			return true;
+		}
+		final Region region = subscription.region;
+		for (int row = (region.fromRow() - 1) / TILE; row <= (region.toRow() - 1) / TILE; row++) {
+			for (int col = (region.fromCol() - 1) / TILE; col <= (region.toCol() - 1) / TILE; col++) {
+				this.tile(row * this.tileColumns + col).remove(subscription);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return number of listeners watching the board
+	 */
+	int size() {
+		return this.subscriptions.size();
+	}
+
+	/**
+	 * Notifies each listener watching any of the changed spaces once.
+	 * @param changed row major indices (row - 1) * width + (col - 1) of the spaces that changed
+	 */
+	void notify(int... changed) {
+		final Set<Subscription> notified = changed.length > 1 ? new HashSet<Subscription>() : null;
+		for (Subscription subscription : this.everywhere) {
+			subscription.listener.onBoardChange();
+		}
+		for (int index : changed) {
+			final int col = index % this.width + 1;
+			final int row = index / this.width + 1;
+			final Set<Subscription> tile = this.tiles.get(((row - 1) / TILE) * this.tileColumns + (col - 1) / TILE);
+			if (tile == null) {
+				continue;
+			}
+			for (Subscription subscription : tile) {
+				// Tiles are coarser than regions, so the listener may not be watching this space
+				if (subscription.region.contains(col, row) && (notified == null || notified.add(subscription))) {
+					subscription.listener.onBoardChange();
+				}
+			}
+		}
+	}
+
+	private boolean coversBoard(Region region) {
+		return region == null || (region.fromCol() == 1 && region.fromRow() == 1
+				&& region.toCol() >= this.width && region.toRow() >= this.height);
+	}
+
+	private Set<Subscription> tile(int index) {
+		final Set<Subscription> tile = this.tiles.get(index);
+		if (tile != null) {
+			return tile;
+		}
+		this.tiles.compareAndSet(index, null, ConcurrentHashMap.newKeySet());
+		return this.tiles.get(index);
+	}
+
+}
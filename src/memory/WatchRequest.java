@@ -6,10 +6,41 @@ public class WatchRequest implements Request {
 
 	private final String player;
 	private final HttpExchange exchange;
+	private final Region region;
+	private final BoardFormat format;
+	private final long timeout;
 
 	public WatchRequest(String player, HttpExchange exchange) {
+		this(player, exchange, null);
+	}
+	
+	/**
+	 * @param region region of the board to watch, or null for the whole board
+	 */
+	public WatchRequest(String player, HttpExchange exchange, Region region) {
+		this(player, exchange, region, BoardFormat.HTTP);
+	}
+	
+	/**
+	 * @param region region of the board to watch, or null for the whole board
+	 * @param format format of the board sent in the response, HTTP or RLE
+	 */
+	public WatchRequest(String player, HttpExchange exchange, Region region, BoardFormat format) {
+		this(player, exchange, region, format, Request.NO_TIMEOUT);
+	}
+	
+	/**
+	 * @param region region of the board to watch, or null for the whole board
+	 * @param format format of the board sent in the response, HTTP or RLE
+	 * @param timeout longest time in milliseconds to wait for a change before responding with the current board, 
+	 * 		or NO_TIMEOUT to wait until the board changes
+	 */
+	public WatchRequest(String player, HttpExchange exchange, Region region, BoardFormat format, long timeout) {
 		this.player = player;
 		this.exchange = exchange;
+		this.region = region;
+		this.format = format;
+		this.timeout = timeout;
 	}
 	@Override
 	public boolean isFlip() {
@@ -45,6 +76,21 @@ public class WatchRequest implements Request {
 	public String player() {
 		return this.player;
 	}
+	@Override
+	public Region region() {
+		return this.region;
+	}
+
+	@Override
+	public long timeout() {
+		return this.timeout;
+	}
+
+	@Override
+	public BoardFormat format() {
+		return this.format;
+	}
+
 	@Override
 	public HttpExchange exchange() {
 		return this.exchange;
@@ -5,25 +5,30 @@ package memory;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 
+import memory.log.AsyncLog;
+import memory.metrics.MetricsRegistry;
+import memory.web.ContentEncoding;
 import memory.web.HeadersFilter;
 import memory.web.LogFilter;
+import memory.web.MetricsFilter;
+import memory.web.RateLimitFilter;
+import memory.web.RenderCache;
+import memory.web.SingleFlight;
+import memory.web.WorkPool;
 
 /**
  * HTTP web game server.
@@ -35,8 +40,36 @@ public class WebServer {
     
     private final HttpServer server;
     private final Board board;
-    final ConcurrentMap<String, BlockingQueue<Request>> clients = new ConcurrentHashMap<String, BlockingQueue<Request>>();
-    final Set<String> players = new HashSet<String>();
+    // Runs the HTTP handlers, which only parse requests and hand them to one of the pools below
+    private final WorkPool http = WorkPool.fromProperties("http", 2 * CORES, 1024);
+    // Requests are dispatched to a lane for each kind of request, so that contested flips and parked 
+    // watches cannot delay looks. Looks never wait for other players. 
+    private final WorkPool lookLane = WorkPool.fromProperties("look", CORES, 256);
+    // Answers flips, which wait for control of cards and for the board lock
+    private final WorkPool flipLane = WorkPool.fromProperties("flip", 2 * CORES, 1024);
+    // Registers watches and answers them when the board changes
+    private final WorkPool watchLane = WorkPool.fromProperties("watch", 2 * CORES, 1024);
+    // Encoded spectator renders shared by look and watch responses
+    private final RenderCache renders = new RenderCache();
+    // Coalesces identical look and watch renders that run at the same time
+    private final SingleFlight<String, byte[]> looks = new SingleFlight<String, byte[]>("look");
+    // Completes when the last flip each player requested has been answered
+    private final ConcurrentMap<String, CompletableFuture<Void>> flips = new ConcurrentHashMap<String, CompletableFuture<Void>>();
+    private final SessionManager sessions;
+    private final RateLimiter limiter = RateLimiter.fromProperties();
+    
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    // Largest width and height of the heatmap returned by /contention/heatmap
+    private static final int HEATMAP_SIZE = 100;
+    // Longest time a watch waits for a change unless it asks for another timeout, or NO_TIMEOUT to wait until the board changes
+    private static final long WATCH_TIMEOUT_MILLIS = Long.getLong("memory.watch.timeoutSeconds", 60) > 0 
+    		? TimeUnit.SECONDS.toMillis(Long.getLong("memory.watch.timeoutSeconds", 60)) : Request.NO_TIMEOUT;
+    private static final LongAdder WATCH_TIMEOUTS = MetricsRegistry.global().counter("memory_http_watch_timeouts_total", 
+    		"Watch requests answered with the current board because the board did not change before their timeout");
+    private static final LongAdder INLINE_LOOKS = MetricsRegistry.global().counter("memory_http_inline_looks_total", 
+    		"Look requests answered on the HTTP thread from a cached spectator render");
+    private static final LongAdder NOT_MODIFIED = MetricsRegistry.global().counter("memory_http_not_modified_total", 
+    		"Look requests answered with 304 Not Modified because the player's view had not changed");
     
     // Abstraction function: 
     // 	 A web server over which players can play the game memory scramble through various requests
@@ -46,23 +79,39 @@ public class WebServer {
     //   only primitive fields are returned
     // Thread safety argument:
     //   //TODO Responses might not be sent in the order in which the Request was sent. 
+    //   Handlers never block: looks are rendered on lookLane, flips are answered on flipLane and watches on 
+    //   watchLane, which are threadsafe. A request refused by a saturated pool is answered with 503 by the handler. 
+    //   Responses to admitted requests are handed to their lane with execute(), which never runs them on the thread 
+    //   that completed the flip or changed the board. 
+    //   flips is a ConcurrentHashMap. Each flip atomically replaces the player's last flip with itself and starts once 
+    //   the replaced flip completes, so a player's flips run one at a time in the order they arrived. 
     
     /**
      * Make a new web game server using board that listens for connections on port.
      * 
-     * @param board shared game board
+     * @param board shared game board, whose metrics the server exports, see Board.exportMetrics()
      * @param port server port number
      * @throws IOException if an error occurs starting the server
      */
     public WebServer(Board board, int port) throws IOException {
     	this.board = board;
+    	// The /hello/ tests serve without a board
+    	if (board != null) {
+    		board.exportMetrics();
+    	}
         this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        // Idle players are removed from the board and forgotten by the rate limiter
+        this.sessions = new SessionManager(board, TimerWheel.global(), SessionManager.DEFAULT_IDLE_MILLIS, 
+        		TimeUnit.MILLISECONDS, this::closePlayer);
         
-        // handle concurrent requests with multiple threads
-        server.setExecutor(Executors.newCachedThreadPool());
+        // handle concurrent requests with a bounded number of threads. Handlers only parse requests and hand them 
+        // to a lane, so when every handler thread is busy the handler waits briefly for the pool's overflow thread. 
+        server.setExecutor(this.http);
         
         LogFilter log = new LogFilter();
         HeadersFilter headers = new HeadersFilter();
+        // Players sending requests faster than their rate limit are answered with 429 Too Many Requests
+        RateLimitFilter limit = new RateLimitFilter(this.limiter);
         // allow requests from web pages hosted anywhere
         headers.add("Access-Control-Allow-Origin", "*");
         // all responses will be plain-text UTF-8
@@ -87,17 +136,29 @@ public class WebServer {
         // Handle requests for /look/player
         // Look requests should also be able to be sent while a flip or watch request blocks
 		HttpContext look = server.createContext("/look/", exchange -> handleLook(exchange));
-		look.getFilters().addAll(Arrays.asList(log, headers));
+		look.getFilters().addAll(Arrays.asList(log, new MetricsFilter(look.getPath()), headers, limit));
 		
 		// Handle requests for /flip/player/row,col
 		// Concurrent flips are not allowed. 
 		HttpContext flip = server.createContext("/flip/", exchange -> handleFlip(exchange));
-    	flip.getFilters().addAll(Arrays.asList(log, headers));
+    	flip.getFilters().addAll(Arrays.asList(log, new MetricsFilter(flip.getPath()), headers, limit));
     	
     	// Handle requests for /watch/player
     	// Flip requests must continue to be sent while a watch request blocks. 
     	HttpContext watch = server.createContext("/watch/", exchange -> handleWatch(exchange));
-        watch.getFilters().addAll(Arrays.asList(log, headers));
+        watch.getFilters().addAll(Arrays.asList(log, new MetricsFilter(watch.getPath()), headers, limit));
+        
+        // Handle requests for /contention/heatmap and /contention/top/n to find cards players block on
+        HttpContext contention = server.createContext("/contention/", exchange -> handleContention(exchange));
+        contention.getFilters().addAll(Arrays.asList(log, headers));
+        
+        // Handle requests for /stats/ with live statistics of the game
+        HttpContext stats = server.createContext("/stats/", exchange -> handleStats(exchange));
+        stats.getFilters().addAll(Arrays.asList(log, headers));
+        
+        // Handle requests for /metrics with counters and latency histograms in the Prometheus text format
+        HttpContext metricsContext = server.createContext("/metrics", exchange -> handleMetrics(exchange));
+        metricsContext.getFilters().addAll(Arrays.asList(log, headers));
         
         checkRep();
     }
@@ -127,6 +188,10 @@ public class WebServer {
     public void stop() {
         System.err.println("Server will stop");
         server.stop(0);
+        this.http.shutdown();
+        this.lookLane.shutdown();
+        this.flipLane.shutdown();
+        this.watchLane.shutdown();
     }
      
     private void handleLook(HttpExchange exchange) throws IOException {
@@ -138,44 +203,65 @@ public class WebServer {
         assert path.startsWith(base);
         
         final String id = path.substring(base.length());
-        final String lookID = "/look/" + id;
         
         // Check if the request is valid
         if (id.matches("\\w+")) {
-        	exchange.sendResponseHeaders(200, 0);
-        	final Request look = new LookRequest(id, exchange);
+        	// Optional cols=FROM-TO and rows=FROM-TO limit the response to a region of the board
+        	final Region region;
+        	final String query = exchange.getRequestURI().getQuery();
+        	try {
+        		region = this.regionOf(query);
+        	} catch (IllegalArgumentException e) {
+        		exchange.sendResponseHeaders(400, 0);
+        		respond(exchange, "Query: " + query + " not recognized");
+        		return;
+        	}
+        	if (region != null && !this.board.bounds().contains(region)) {
+        		exchange.sendResponseHeaders(404, 0);
+        		respond(exchange, "Region " + region + " is not on the board");
+        		return;
+        	}
+        	final BoardFormat format = this.encodingOf(exchange);
         	
-        	// IF the player is not on the board add them to the board and start a thread for them to handle look requests
-        	if (!players.contains(id)) {
-        		board.addPlayer(id);
+        	// The ETag identifies the player's view, so a client polling an unchanged board is answered with 
+        	// 304 Not Modified without rendering anything
+        	this.sessions.begin(id);
+        	this.board.addPlayer(id);
+        	final String tag = "W/\"" + this.board.viewTag(id) + "." + format + "." + (region == null ? "all" : region) + "\"";
+        	exchange.getResponseHeaders().set("ETag", tag);
+        	if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), tag)) {
+        		NOT_MODIFIED.increment();
+        		exchange.sendResponseHeaders(304, -1);
+        		exchange.close();
+        		MetricsFilter.complete(exchange);
+        		this.sessions.end(id);
+        		return;
+        	}
+        	
+        	// A spectator looking at the whole board is answered right away if the board has not changed since 
+        	// it was last rendered for spectators
+        	negotiate(exchange);
+        	final byte[] cached = region == null && !this.board.controlsCards(id) 
+        			? this.renders.peek(format, contentEncodingOf(exchange), this.board.version()) : null;
+        	if (cached != null) {
+        		INLINE_LOOKS.increment();
+        		try {
+        			exchange.sendResponseHeaders(200, 0);
+        			send(exchange, contentEncodingOf(exchange), cached);
+        		} finally {
+        			this.sessions.end(id);
+        		}
+        		return;
+        	}
+        	
+        	final Request look = new LookRequest(id, exchange, region, format);
+        	if (!this.admit(exchange, this.lookLane, () -> this.look(look))) {
+        		this.sessions.end(id);
         	}
-        	if (!clients.containsKey(lookID)) {
-        		clients.put(lookID, new SynchronousQueue<Request>());
-    			new Thread(() -> {
-    				//Start a thread for the player to handle look requests
-    				while (true) {
-	        			try {
-							handleRequest(clients.get(lookID).take());
-						} catch (IOException | InterruptedException e) {
-							e.printStackTrace();
-						}
-    				}
-    			}).start();   
-        	} 
-        	// Put the request in the player's queue
-        	try {
-				clients.get(lookID).put(look);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
         } else {
             // otherwise, respond with HTTP code 404 to indicate an error
             exchange.sendResponseHeaders(404, 0);
-            final String response = "Request: "+ id + " not recognized";
-            OutputStream body = exchange.getResponseBody();
-            PrintWriter out = new PrintWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), true);
-	        out.println(response);
-	        exchange.close();
+            respond(exchange, "Request: "+ id + " not recognized");
         }
     }
     
@@ -197,47 +283,36 @@ public class WebServer {
         	final int colRowDelimiterIndex = request.substring(endPlayerIndex).indexOf(colRowDelimiter);
         	
         	final String id = request.substring(0, endPlayerIndex);
-        	final String flipID = "/flip/" + id;
         	final int col = Integer.parseInt(request.substring(endPlayerIndex + 1, colRowDelimiterIndex + endPlayerIndex ));
         	final int row = Integer.parseInt(request.substring(colRowDelimiterIndex + endPlayerIndex + 1));
-        	System.out.println("Player: " + id + " flips " + col + ", " + row );
-        	
-        	// Create the request
-        	final Request flip = new FlipRequest(col, row, id, exchange);
+        	AsyncLog.global().log("Player: %s flips %d, %d", id, col, row);
         	
-        	exchange.sendResponseHeaders(200, 0);
-        	if (!players.contains(id)) {
-        		board.addPlayer(id);
-        	}
-        	if (!clients.containsKey(flipID)) {
-            	this.clients.put(flipID, new SynchronousQueue<Request>());
-            	new Thread(() -> {
-            		System.out.println("Started a thread in flip for " + id);
-            		while (true) {
-	            		try {
-	            			
-							this.handleRequest(this.clients.get(flipID).take());
-						} catch (IOException | InterruptedException e) {
-							e.printStackTrace();
-						}
-            		}
-            	}).start();
-            }
-        	try {
-        		this.clients.get(flipID).put(flip);
-        	} catch (InterruptedException e) {
-        		e.printStackTrace();
+        	// An optional timeout=MILLIS limits how long the flip waits for control of the card, 0 to not wait at all. 
+        	// delta responds with only the spaces the flip changed, see BoardFormat.DELTA
+        	long timeout = Request.NO_TIMEOUT;
+        	BoardFormat format = this.encodingOf(exchange);
+        	final String query = exchange.getRequestURI().getQuery();
+        	for (String param : query == null ? new String[0] : query.split("&")) {
+        		if (param.matches("timeout=[0-9]{1,9}")) {
+        			timeout = Long.parseLong(param.substring("timeout=".length()));
+        		} else if (param.equals("delta")) {
+        			// The delta is smaller than any encoding of the whole board
+        			format = BoardFormat.DELTA;
+        			exchange.getResponseHeaders().remove("X-Board-Encoding");
+        		} else {
+        			exchange.sendResponseHeaders(400, 0);
+        			respond(exchange, "Query: " + query + " not recognized");
+        			return;
+        		}
         	}
+        	
+        	// Create the request. Response headers are sent once the outcome of the flip is known. 
+        	final Request flip = new FlipRequest(col, row, id, exchange, timeout, format);
+        	this.admit(exchange, this.flipLane, () -> this.enqueueFlip(flip));
         } else {
             // otherwise, respond with HTTP code 404 to indicate an error
             exchange.sendResponseHeaders(404, 0);
-            final String response = "Request: "+ request + " not recognized";
-            // write the response to the output stream using UTF-8 character encoding
-            OutputStream body = exchange.getResponseBody();
-            PrintWriter out = new PrintWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), true);
-            out.println(response);
-            // if you do not close the exchange, the response will not be sent!
-            exchange.close();
+            respond(exchange, "Request: "+ request + " not recognized");
         }
         
         
@@ -254,99 +329,425 @@ public class WebServer {
         final String request = path.substring(base.length());
         
        if (request.matches("[\\w]+")) {
-      	 exchange.sendResponseHeaders(200, 0);
-
-    	   final String id = request;
-    	   final String watchID = "/watch/" + id;
-    	   final Request watch = new WatchRequest(id, exchange);
-    	   
-    	   if (!players.contains(id)) {
-    		   this.board.addPlayer(id);
-    	   }
-    	   if (!clients.containsKey(watchID)) {
-    		   clients.put(watchID, new SynchronousQueue<Request>());
-    		   new Thread(() ->  {
-    			   try {
-    				   while (true) {
-    					   this.handleRequest(this.clients.get(watchID).take());
-    				   }
-    			   } catch (IOException | InterruptedException e) {
-					e.printStackTrace();
-    			   }
-    		   }).start();
+    	   // Optional cols=FROM-TO and rows=FROM-TO only wake the watcher for changes in a region of the board. 
+    	   // An optional timeout=MILLIS, timeout=Nms or timeout=Ns answers with the current board if it does not change in time. 
+    	   final Region region;
+    	   long timeout = WATCH_TIMEOUT_MILLIS;
+    	   final String query = exchange.getRequestURI().getQuery();
+    	   final StringBuilder regionQuery = new StringBuilder();
+    	   for (String param : query == null ? new String[0] : query.split("&")) {
+    		   if (param.matches("timeout=[0-9]{1,9}(ms|s)?")) {
+    			   final String value = param.substring("timeout=".length());
+    			   timeout = value.endsWith("ms") ? Long.parseLong(value.substring(0, value.length() - 2)) 
+    					   : value.endsWith("s") ? TimeUnit.SECONDS.toMillis(Long.parseLong(value.substring(0, value.length() - 1))) 
+    					   : Long.parseLong(value);
+    		   } else {
+    			   regionQuery.append(regionQuery.length() == 0 ? "" : "&").append(param);
+    		   }
     	   }
     	   try {
-    		   this.clients.get(watchID).put(watch);
-    	   } catch (InterruptedException e1) {
-    		   e1.printStackTrace();
+    		   region = this.regionOf(regionQuery.length() == 0 ? null : regionQuery.toString());
+    	   } catch (IllegalArgumentException e) {
+    		   exchange.sendResponseHeaders(400, 0);
+    		   respond(exchange, "Query: " + query + " not recognized");
+    		   return;
+    	   }
+    	   if (region != null && !this.board.bounds().contains(region)) {
+    		   exchange.sendResponseHeaders(404, 0);
+    		   respond(exchange, "Region " + region + " is not on the board");
+    		   return;
     	   }
+    	   final BoardFormat format = this.encodingOf(exchange);
+
+    	   final Request watch = new WatchRequest(request, exchange, region, format, timeout);
+    	   this.admit(exchange, this.watchLane, () -> this.watch(watch));
         } else {
             // otherwise, respond with HTTP code 404 to indicate an error
             exchange.sendResponseHeaders(404, 0);
-            final String response = "Request: "+ request + " not recognized";
-            // write the response to the output stream using UTF-8 character encoding
-            OutputStream body = exchange.getResponseBody();
-            PrintWriter out = new PrintWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), true);
-            out.println(response);
-            
-            // if you do not close the exchange, the response will not be sent!
-            exchange.close();
+            respond(exchange, "Request: "+ request + " not recognized");
         }
         
     }
     
     /**
-     * Handles flip, look and watch requests from an HTTP client
-     * @param request request to be processed
-     * @throws IOException
+     * Reads the board encoding a client asked for. Clients opt in to the run length format of {@link BoardFormat#RLE} 
+     * with the request header X-Board-Encoding: rle, and the same header is set on the response. 
+     * Must be called before the response headers are sent. 
+     * @param exchange exchange of a look, watch or flip request
+     * @return RLE if the client asked for it, otherwise HTTP
      */
-    private void handleRequest(Request request) throws IOException{
-    	final HttpExchange exchange = request.exchange();
-    	final String response;
+    private BoardFormat encodingOf(HttpExchange exchange) {
+    	if ("rle".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("X-Board-Encoding"))) {
+    		exchange.getResponseHeaders().set("X-Board-Encoding", "rle");
+    		return BoardFormat.RLE;
+    	}
+    	return BoardFormat.HTTP;
+    }
+    
+    /**
+     * @param ifNoneMatch value of an If-None-Match request header, or null if there is none
+     * @param tag current entity tag of the response
+     * @return true if the header lists tag or is "*". Tags are compared weakly, ignoring a W/ prefix. 
+     */
+    private static boolean matches(String ifNoneMatch, String tag) {
+    	if (ifNoneMatch == null) {
+    		return false;
+    	}
+    	final String opaque = tag.startsWith("W/") ? tag.substring(2) : tag;
+    	for (String candidate : ifNoneMatch.split(",")) {
+    		candidate = candidate.trim();
+    		if (candidate.equals("*") || (candidate.startsWith("W/") ? candidate.substring(2) : candidate).equals(opaque)) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+    
+    /**
+     * Reads a query of the form cols=FROM-TO&rows=FROM-TO, in any order. A missing range covers every column or row. 
+     * @param query query of a look or watch request, or null
+     * @return the region, or null for the whole board if there is no query. The region may not be on the board. 
+     * @throws IllegalArgumentException if the query is not of this form
+     */
+    private Region regionOf(String query) throws IllegalArgumentException {
+    	if (query == null) {
+    		return null;
+    	}
+    	final Region bounds = this.board.bounds();
+    	int fromCol = bounds.fromCol(), toCol = bounds.toCol(), fromRow = bounds.fromRow(), toRow = bounds.toRow();
+    	for (String param : query.split("&")) {
+    		if (!param.matches("(cols|rows)=[0-9]{1,9}-[0-9]{1,9}")) {
+    			throw new IllegalArgumentException("Not a region: " + param);
+    		}
+    		final String[] range = param.substring("cols=".length()).split("-");
+    		if (param.startsWith("cols=")) {
+    			fromCol = Integer.parseInt(range[0]);
+    			toCol = Integer.parseInt(range[1]);
+    		} else {
+    			fromRow = Integer.parseInt(range[0]);
+    			toRow = Integer.parseInt(range[1]);
+    		}
+    	}
+    	return new Region(fromCol, fromRow, toCol, toRow);
+    }
+    
+    /**
+     * Runs task on pool, or responds with 503 Service Unavailable if pool is saturated. 
+     * Must be called before the response headers are sent. 
+     * @param exchange exchange of the request task answers
+     * @param pool pool to run task on
+     * @param task task that answers the request
+     * @return true if task was admitted
+     * @throws IOException if the 503 response could not be sent
+     */
+    private boolean admit(HttpExchange exchange, WorkPool pool, Runnable task) throws IOException {
+    	if (pool.tryExecute(task)) {
+    		return true;
+    	}
+    	exchange.getResponseHeaders().set("Retry-After", "1");
+    	exchange.sendResponseHeaders(503, 0);
+    	respond(exchange, "Server busy: try again later");
+    	return false;
+    }
+    
+    /**
+     * Flips a card for the player making request once their earlier flips have completed. The flip does not 
+     * hold a thread while it waits for control of the card: it waits in the card's queue and the response 
+     * is sent when it completes. 
+     * @param request flip request to be processed
+     */
+    private void enqueueFlip(Request request) {
+    	final String player = request.player();
+    	this.sessions.begin(player);
+    	this.board.addPlayer(player);
+    	
+    	final boolean waitForever = request.timeout() == Request.NO_TIMEOUT;
+    	final long timeout = waitForever ? Long.MAX_VALUE : request.timeout();
+    	final TimeUnit unit = waitForever ? TimeUnit.NANOSECONDS : TimeUnit.MILLISECONDS;
     	
+    	// Chain the flip after the player's previous flip so that a player's flips are applied in order
+    	final CompletableFuture<Void> done = new CompletableFuture<Void>();
+    	final CompletableFuture<Void> previous = this.flips.put(player, done);
+    	(previous == null ? CompletableFuture.<Void>completedFuture(null) : previous)
+    		.thenCompose(ignored -> this.board.flipAndRenderAsync(request.col(), request.row(), player, timeout, unit, 
+    				request.format(), this.flipLane))
+    		.handleAsync((result, error) -> {
+    			this.respondToFlip(request, result, error);
+    			this.flips.remove(player, done);
+    			done.complete(null);
+    			return null;
+    		}, this.flipLane);
+    }
+    
+    /**
+     * Responds to a completed flip with the player's view of the board rendered by the flip. 
+     * The X-Board-Version header carries the version of the board the view was taken at. 
+     * @param request flip request that completed
+     * @param result outcome and render of the flip, or null if it failed
+     * @param error error the flip failed with, or null if it succeeded
+     */
+    private void respondToFlip(Request request, FlipResult result, Throwable error) {
+    	final HttpExchange exchange = request.exchange();
+    	final String player = request.player();
+    	try {
+    		if (error != null) {
+    			AsyncLog.global().error("Flip failed for player " + player, error);
+    			exchange.sendResponseHeaders(500, 0);
+    			respond(exchange, "Could not flip " + request.col() + "," + request.row());
+    		} else if (result.outcome() == FlipOutcome.OUT_OF_BOUNDS) {
+    			exchange.sendResponseHeaders(404, 0);
+    			respond(exchange, "Space " + request.col() + "," + request.row() + " is not on the board");
+    		} else if (result.outcome() == FlipOutcome.UNKNOWN_PLAYER) {
+    			exchange.sendResponseHeaders(404, 0);
+    			respond(exchange, "Player " + player + " is not on the board");
+    		} else {
+    			// 409 Conflict tells the player another player controls the card. The body is the unchanged board. 
+    			exchange.getResponseHeaders().set("X-Board-Version", Long.toString(result.version()));
+    			negotiate(exchange);
+    			exchange.sendResponseHeaders(result.outcome() == FlipOutcome.BUSY ? 409 : 200, 0);
+    			respond(exchange, result.render());
+    		}
+    	} catch (IOException ioe) {
+    		AsyncLog.global().error("Could not respond to flip for player " + player, ioe);
+    		exchange.close();
+    		MetricsFilter.complete(exchange);
+    	} finally {
+    		this.sessions.end(player);
+    	}
+    }
+    
+    /**
+     * Forgets the rate limit of a player whose session closed. 
+     * @param player id of the player
+     */
+    private void closePlayer(String player) {
+    	this.limiter.forget(player);
+    }
+    
+    /**
+     * Responds to a look request with the player's view of the board. Runs on lookLane. 
+     * The player's session must have begun, and ends when the response is sent. 
+     * @param request look request to be processed
+     */
+    private void look(Request request) {
+    	final HttpExchange exchange = request.exchange();
+    	try {
+    		exchange.sendResponseHeaders(200, 0);
+    		this.respondWithBoard(exchange, request.player(), request.region(), request.format());
+    	} catch (IOException e) {
+    		AsyncLog.global().error("Could not respond to look for player " + request.player(), e);
+    		exchange.close();
+    		MetricsFilter.complete(exchange);
+    	} finally {
+    		this.sessions.end(request.player());
+    	}
+    }
+    
+    /**
+     * Watches the board for the player making request and responds to the first change in the watched region, 
+     * or with the current board once the request's timeout passes. The watch does not hold a thread while it waits: 
+     * timeouts are driven by the shared timer wheel, and the response is rendered and sent on watchLane, not on the 
+     * thread that changed the board. The player's session stays open while they watch. 
+     * @param request watch request to be processed
+     */
+    private void watch(Request request) {
+    	final HttpExchange exchange = request.exchange();
     	final String player = request.player();
+    	this.sessions.begin(player);
+    	this.board.addPlayer(player);
+    	try {
+    		negotiate(exchange);
+    		exchange.sendResponseHeaders(200, 0);
+    	} catch (IOException e) {
+    		AsyncLog.global().error("Could not respond to watch for player " + player, e);
+    		exchange.close();
+    		MetricsFilter.complete(exchange);
+    		this.sessions.end(player);
+    		return;
+    	}
     	
-    	if (request.isFlip()) {
-    		final int row = request.row();
-    		final int col = request.col();
-    		
-    		this.board.flip(col, row, player);
-    		response = this.board.httpLook(player);
-    		OutputStream body = exchange.getResponseBody();
-            PrintWriter out = new PrintWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), true);
-            out.println(response);
-            exchange.close();
-            return;
-    		
-    	} else if (request.isLook()) {
-    		response = this.board.httpLook(player);
-    		OutputStream body = exchange.getResponseBody();
-            PrintWriter out = new PrintWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), true);
-            out.println(response);
-            exchange.close();
-            return;
-    		
-    	} else if (request.isWatch()) {
-    		
-    		board.addBoardListener(new BoardListener() {
-    			@Override
-    			public void onBoardChange() {
-    				final String watchResponse = board.httpLook(player);
-    				OutputStream body = exchange.getResponseBody();
-    		        PrintWriter out = new PrintWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), true);
-    		        out.println(watchResponse);
-    		        exchange.close();
+    	final Watcher watcher = new Watcher(request);
+    	if (request.region() == null) {
+    		this.board.addBoardListener(watcher);
+    	} else {
+    		this.board.addBoardListener(watcher, request.region());
+    	}
+    	if (request.timeout() != Request.NO_TIMEOUT) {
+    		watcher.expireAfter(request.timeout());
+    	}
+    }
+    
+    /**
+     * A watch request waiting for the board to change or for its timeout
+     */
+    private class Watcher implements BoardListener {
+    	private final Request request;
+    	// Changes on other threads may notify the watcher again before it is removed, and the timeout may 
+    	// fire at the same time as a change, so only the first of them responds
+    	private final AtomicBoolean responded = new AtomicBoolean(false);
+    	private volatile TimerWheel.Timeout timeout = null;
+    	
+    	Watcher(Request request) {
+    		this.request = request;
+    	}
+    	
+    	/**
+    	 * Responds with the current board after millis unless the board changes first. 
+    	 */
+    	void expireAfter(long millis) {
+    		this.timeout = TimerWheel.global().schedule(() -> {
+    			if (this.respond()) {
+    				WATCH_TIMEOUTS.increment();
+    			}
+    		}, millis, TimeUnit.MILLISECONDS);
+    		if (this.responded.get()) {
+    			this.timeout.cancel();
+    		}
+    	}
+    	
+    	@Override
+    	public void onBoardChange() {
+    		this.respond();
+    	}
+    	
+    	/**
+    	 * Stops watching and responds on watchLane, unless the watcher already responded. Called from board listeners, 
+    	 * which may hold the board lock, and from the timer thread, so the response is never rendered or sent on the 
+    	 * calling thread: if watchLane is saturated it waits for the lane's overflow thread. The response headers were 
+    	 * sent when the watch started, so the watch cannot be refused with 503 here. 
+    	 * @return true if this call responded
+    	 */
+    	private boolean respond() {
+    		if (!this.responded.compareAndSet(false, true)) {
+    			return false;
+    		}
+    		board.removeBoardListener(this);
+    		final TimerWheel.Timeout timeout = this.timeout;
+    		if (timeout != null) {
+    			timeout.cancel();
+    		}
+    		final String player = this.request.player();
+    		watchLane.execute(() -> {
+    			try {
+    				respondWithBoard(this.request.exchange(), player, this.request.region(), this.request.format());
+    			} finally {
+    				sessions.end(player);
     			}
-    		
     		});
-    		return;
-    		
+    		return true;
+    	}
+    }
+    
+    private void handleContention(HttpExchange exchange) throws IOException {
+    	final String path = exchange.getRequestURI().getPath();
+    	final String base = exchange.getHttpContext().getPath();
+    	assert path.startsWith(base);
+    	
+    	final String request = path.substring(base.length());
+    	if (request.equals("heatmap")) {
+    		exchange.sendResponseHeaders(200, 0);
+    		respond(exchange, this.board.contentionHeatmap(HEATMAP_SIZE, HEATMAP_SIZE));
+    	} else if (request.matches("top/[0-9]{1,4}")) {
+    		exchange.sendResponseHeaders(200, 0);
+    		respond(exchange, this.board.hottestCards(Integer.parseInt(request.substring("top/".length()))));
     	} else {
     		exchange.sendResponseHeaders(404, 0);
-            response = "Request: "+ request + " not recognized";
-            // Invalid response terminates the function.
-            return;
+    		respond(exchange, "Request: "+ request + " not recognized");
+    	}
+    }
+    
+    private void handleStats(HttpExchange exchange) throws IOException {
+    	exchange.sendResponseHeaders(200, 0);
+    	respond(exchange, this.board.stats().report());
+    }
+    
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+    	exchange.sendResponseHeaders(200, 0);
+    	respond(exchange, MetricsRegistry.global().render());
+    }
+    
+    /**
+     * Picks the content coding of a response from the request's Accept-Encoding header and sets the Content-Encoding 
+     * header. respond() codes the body to match. Must be called before the response headers are sent. 
+     * @param exchange exchange to respond to
+     */
+    private static void negotiate(HttpExchange exchange) {
+    	final ContentEncoding encoding = ContentEncoding.negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+    	exchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+    	if (encoding != ContentEncoding.IDENTITY) {
+    		exchange.getResponseHeaders().set("Content-Encoding", encoding.token());
+    	}
+    }
+    
+    /**
+     * @return the coding picked for the response by negotiate(), IDENTITY if none was
+     */
+    private static ContentEncoding contentEncodingOf(HttpExchange exchange) {
+    	// Exchange attributes are shared by every exchange of a context, so the coding is read back from the response headers
+    	final String token = exchange.getResponseHeaders().getFirst("Content-Encoding");
+    	for (ContentEncoding encoding : ContentEncoding.values()) {
+    		if (encoding.token().equals(token)) {
+    			return encoding;
+    		}
+    	}
+    	return ContentEncoding.IDENTITY;
+    }
+    
+    /**
+     * Responds with the player's view of region. Players who control no cards see the board as a spectator does, 
+     * so their whole-board responses are taken from renders, which renders and codes the board once per version. 
+     * Other renders are coalesced by looks: requests for the same view of the same board version that arrive 
+     * while it is being rendered share its coded body. 
+     * @param exchange exchange to respond to, headers already sent
+     * @param player player looking at the board
+     * @param region region to render or null for the whole board
+     * @param format format of the render
+     */
+    private void respondWithBoard(HttpExchange exchange, String player, Region region, BoardFormat format) {
+    	final ContentEncoding encoding = contentEncodingOf(exchange);
+    	// Read the version before rendering so that the render reflects at least this version
+    	final long version = this.board.version();
+    	final String viewer = this.board.controlsCards(player) ? player : null;
+    	final byte[] body;
+    	if (region == null && viewer == null) {
+    		body = this.renders.get(format, encoding, version, 
+    				() -> encoding.encode(bytesOf(this.board.look(null, this.board.bounds(), format))));
+    	} else {
+    		final Region view = region == null ? this.board.bounds() : region;
+    		final String key = (viewer == null ? "" : viewer) + "/" + version + "/" + format + "/" + view + "/" + encoding;
+    		body = this.looks.execute(key, () -> encoding.encode(bytesOf(this.board.look(viewer, view, format))));
+    	}
+    	send(exchange, encoding, body);
+    }
+    
+    /**
+     * @return bytes of a response body, which is the response followed by a line separator
+     */
+    private static byte[] bytesOf(String response) {
+    	return (response + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Writes response to the body of exchange using UTF-8 character encoding and closes the exchange.
+     * The body is coded as picked by negotiate(). Response headers must already have been sent. 
+     * @param exchange exchange to respond to
+     * @param response body of the response
+     */
+    private static void respond(HttpExchange exchange, String response) {
+    	final ContentEncoding encoding = contentEncodingOf(exchange);
+    	send(exchange, encoding, encoding.encode(bytesOf(response)));
+    }
+    
+    private static void send(HttpExchange exchange, ContentEncoding encoding, byte[] body) {
+    	try (OutputStream out = exchange.getResponseBody()) {
+    		out.write(body);
+    		encoding.sent(body.length);
+    	} catch (IOException e) {
+    		AsyncLog.global().error("Could not send response to " + exchange.getRequestURI(), e);
+    	} finally {
+    		// if you do not close the exchange, the response will not be sent!
+    		exchange.close();
+    		MetricsFilter.complete(exchange);
     	}
-    	
     }
 }
@@ -0,0 +1,247 @@
+package memory.log;
+
+import java.io.PrintStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import memory.metrics.MetricsRegistry;
+
+/**
+ * A mutable threadsafe log that moves formatting and console I/O off the request threads.
+ *
+ * <p>Logging a message only stores the format string and its arguments in a bounded lock-free
+ * ring buffer. A background daemon thread drains the buffer, formats the messages with
+ * {@link String#format(String, Object...)} and writes each batch to the output stream with a single
+ * call. Messages may be sampled, and when the buffer is full new messages are dropped and counted
+ * rather than blocking the caller. Closing the log writes out the messages still in the buffer; the
+ * global log is closed when the JVM shuts down.
+ *
+ * <p>The global log writes to standard error. Its behavior can be configured with system properties:
+ * <pre>
+ *   memory.log.sample    fraction of messages to keep, between 0 and 1 (default 1)
+ *   memory.log.capacity  number of messages the buffer holds, rounded up to a power of two (default 65536)
+ * </pre>
+ */
+public class AsyncLog {
+
+	private static final AsyncLog GLOBAL = new AsyncLog(System.err,
+			Integer.getInteger("memory.log.capacity", 1 << 16),
+			Double.parseDouble(System.getProperty("memory.log.sample", "1")));
+	// Longest time the JVM waits at shutdown for the global log to be written out
+	private static final long SHUTDOWN_MILLIS = 1000;
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				GLOBAL.close(SHUTDOWN_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, "memory-log-shutdown"));
+	}
+
+	/**
+	 * @return the log shared by every server in this process
+	 */
+	public static AsyncLog global() {
+		return GLOBAL;
+	}
+
+	// Largest number of messages written with one call to the output stream
+	private static final int BATCH = 1024;
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static final LongAdder DROPPED = MetricsRegistry.global().counter("memory_log_dropped_total",
+			"Log messages dropped because the log buffer was full");
+	private static final LongAdder SAMPLED_OUT = MetricsRegistry.global().counter("memory_log_sampled_out_total",
+			"Log messages skipped by sampling");
+
+	/**
+	 * A message waiting to be formatted
+	 */
+	private static class Event {
+		final String format;
+		final Object[] args;
+		final Throwable error;
+
+		Event(String format, Object[] args, Throwable error) {
+			this.format = format;
+			this.args = args;
+			this.error = error;
+		}
+	}
+
+	private final PrintStream out;
+	private final double sampleRate;
+	private final int mask;
+	private final AtomicReferenceArray<Event> slots;
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail = new AtomicLong();
+	private long head = 0;
+	private final AtomicLong dropped = new AtomicLong();
+	private long reportedDropped = 0;
+	private final Thread writer;
+	private volatile boolean closed = false;
+
+	// Abstraction function:
+	//   AF(slots, sequences, head, tail) ::= the messages in slots[head & mask] ... slots[(tail - 1) & mask] waiting to be
+	//     written to out, in the order they were logged
+	// Representation invariant:
+	//   slots.length() == sequences.length() == mask + 1 is a power of two
+	//   head <= tail <= head + slots.length()
+	// Safety from rep exposure:
+	//   no fields are returned
+	// Thread safety argument:
+	//   this is a bounded multi-producer single-consumer queue. Producers claim position p by advancing tail with
+	//   compareAndSet once sequences[p & mask] == p, write the slot, then publish it by setting the sequence to p + 1.
+	//   Only the writer thread reads slots, advances head and frees a slot by setting its sequence to
+	//   p + slots.length(). head and reportedDropped are confined to the writer thread. closed is volatile, and the
+	//   writer only exits after finding the buffer empty once it has seen closed.
+
+	/**
+	 * Creates a log and starts its writer thread.
+	 * @param out stream messages are written to
+	 * @param capacity number of messages that may wait to be written, must be positive
+	 * @param sampleRate fraction of messages logged with log() that are kept, between 0 and 1
+	 */
+	public AsyncLog(PrintStream out, int capacity, double sampleRate) {
+		final int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.out = out;
+		this.sampleRate = sampleRate;
+		this.mask = size - 1;
+		this.slots = new AtomicReferenceArray<Event>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			this.sequences.set(i, i);
+		}
+		this.writer = new Thread(this::write, "memory-log");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Logs a message, subject to sampling. Never blocks.
+	 * @param format format string as in {@link String#format(String, Object...)}
+	 * @param args arguments referenced by the format string. They are formatted later on another
+	 * 		thread, so they should be immutable.
+	 */
+	public void log(String format, Object... args) {
+		if (this.sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= this.sampleRate) {
+			SAMPLED_OUT.increment();
+			return;
+		}
+		this.offer(new Event(format, args, null));
+	}
+
+	/**
+	 * Logs a message and the stack trace of an error. Errors are never sampled. Never blocks.
+	 * @param message description of the error
+	 * @param error error to log
+	 */
+	public void error(String message, Throwable error) {
+		this.offer(new Event("%s", new Object[] {message}, error));
+	}
+
+	/**
+	 * @return number of messages dropped because the buffer was full
+	 */
+	public long dropped() {
+		return this.dropped.get();
+	}
+
+	/**
+	 * Writes out every message logged before the call and stops the writer thread. Messages logged
+	 * while or after the log closes may be lost.
+	 * @param timeout longest time to wait for the messages to be written
+	 * @param unit unit of timeout
+	 * @return true if the writer finished within the timeout
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+		this.closed = true;
+		LockSupport.unpark(this.writer);
+		this.writer.join(Math.max(1, unit.toMillis(timeout)));
+		return !this.writer.isAlive();
+	}
+
+	private void offer(Event event) {
+		while (true) {
+			final long position = this.tail.get();
+			final int index = (int) position & this.mask;
+			final long sequence = this.sequences.get(index);
+			if (sequence == position) {
+				if (this.tail.compareAndSet(position, position + 1)) {
+					this.slots.lazySet(index, event);
+					this.sequences.set(index, position + 1);
+					return;
+				}
+			} else if (sequence < position) {
+				// The slot has not been written out since the buffer last wrapped around
+				this.dropped.incrementAndGet();
+				DROPPED.increment();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Writer thread. Formats and writes messages in batches, sleeping briefly whenever the buffer is empty,
+	 * until the log is closed and the buffer is empty.
+	 */
+	private void write() {
+		final StringBuilder sb = new StringBuilder();
+		while (true) {
+			// Read before draining, so that a buffer found empty afterwards holds nothing logged before close()
+			final boolean closing = this.closed;
+			int written = 0;
+			while (written < BATCH) {
+				final int index = (int) this.head & this.mask;
+				if (this.sequences.get(index) != this.head + 1) {
+					break;
+				}
+				final Event event = this.slots.get(index);
+				this.slots.lazySet(index, null);
+				this.sequences.set(index, this.head + this.slots.length());
+				this.head++;
+				format(sb, event);
+				written++;
+			}
+			final long dropped = this.dropped.get();
+			if (dropped != this.reportedDropped) {
+				sb.append(" !! dropped ").append(dropped - this.reportedDropped).append(" log messages\n");
+				this.reportedDropped = dropped;
+			}
+			if (sb.length() > 0) {
+				this.out.print(sb);
+				this.out.flush();
+				sb.setLength(0);
+			}
+			if (written == 0) {
+				if (closing) {
+					return;
+				}
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+		}
+	}
+
+	private static void format(StringBuilder sb, Event event) {
+		try {
+			sb.append(String.format(event.format, event.args)).append('\n');
+		} catch (RuntimeException e) {
+			sb.append(event.format).append(" (could not format: ").append(e).append(")\n");
+		}
+		if (event.error != null) {
+			sb.append(event.error).append('\n');
+			for (StackTraceElement element : event.error.getStackTrace()) {
+				sb.append("\tat ").append(element).append('\n');
+			}
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+package memory.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A mutable threadsafe histogram of latencies measured in nanoseconds.
+ * Values are recorded into log-linear buckets: every power of two is split into 8 buckets so
+ * any reported value is within 12.5% of the recorded one. Recording never blocks.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// Values below LINEAR are recorded exactly
+	private static final int LINEAR = SUB_BUCKETS * 2;
+	private static final int LINEAR_BITS = SUB_BUCKET_BITS + 1;
+	private static final int BUCKETS = LINEAR + (63 - LINEAR_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	// Abstraction function:
+	//   AF(counts, count, sum, max) ::= a multiset of count latencies whose total is sum and largest is max,
+	//     where counts[i] latencies fall between lowerBound(i) and upperBound(i)
+	// Representation invariant:
+	//   count == sum of counts once all concurrent calls to record() have returned
+	// Safety from rep exposure:
+	//   only primitive values are returned
+	// Thread safety argument:
+	//   all fields are atomic or striped LongAdder types and each is only updated with atomic operations.
+	//   Readers may observe a record() in progress, e.g. counts updated but not count.
+
+	/**
+	 * Records a single latency.
+	 * @param nanos latency in nanoseconds. Negative values are recorded as 0.
+	 */
+	public void record(long nanos) {
+		final long value = Math.max(0, nanos);
+		this.counts.incrementAndGet(index(value));
+		this.count.increment();
+		this.sum.add(value);
+		long current = this.max.get();
+		while (value > current && !this.max.compareAndSet(current, value)) {
+			current = this.max.get();
+		}
+	}
+
+	/**
+	 * @return number of recorded latencies
+	 */
+	public long count() {
+		return this.count.sum();
+	}
+
+	/**
+	 * @return sum of all recorded latencies in nanoseconds
+	 */
+	public long sum() {
+		return this.sum.sum();
+	}
+
+	/**
+	 * @return largest recorded latency in nanoseconds or 0 if nothing was recorded
+	 */
+	public long max() {
+		return this.max.get();
+	}
+
+	/**
+	 * @return mean recorded latency in nanoseconds or 0 if nothing was recorded
+	 */
+	public double mean() {
+		final long n = this.count.sum();
+		return n == 0 ? 0 : (double) this.sum.sum() / n;
+	}
+
+	/**
+	 * @param percentile percentile between 0 and 100
+	 * @return an upper bound on the latency in nanoseconds below which percentile percent of
+	 * 		the recorded latencies fall, or 0 if nothing was recorded
+	 */
+	public long percentile(double percentile) {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += this.counts.get(i);
+		}
+		if (total == 0) {
+			return 0;
+		}
+		final long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.counts.get(i);
+			if (seen >= target) {
+				return Math.min(upperBound(i), this.max.get());
+			}
+		}
+		return this.max.get();
+	}
+
+	/**
+	 * @param nanos latency in nanoseconds
+	 * @return number of recorded latencies less than or equal to nanos, rounded to bucket boundaries
+	 */
+	public long countAtOrBelow(long nanos) {
+		if (nanos < 0) {
+			return 0;
+		}
+		final int last = index(nanos);
+		long seen = 0;
+		for (int i = 0; i <= last; i++) {
+			seen += this.counts.get(i);
+		}
+		return seen;
+	}
+
+	private static int index(long value) {
+		if (value < LINEAR) {
+			return (int) value;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		final int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR + (exponent - LINEAR_BITS) * SUB_BUCKETS + sub;
+	}
+
+	private static long upperBound(int index) {
+		if (index < LINEAR) {
+			return index;
+		}
+		final int exponent = (index - LINEAR) / SUB_BUCKETS + LINEAR_BITS;
+		final int sub = (index - LINEAR) % SUB_BUCKETS;
+		final long lower = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+		return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + this.count() + " p50=" + this.percentile(50) + "ns p99=" + this.percentile(99)
+				+ "ns max=" + this.max() + "ns";
+	}
+
+}
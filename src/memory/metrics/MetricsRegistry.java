@@ -0,0 +1,194 @@
+package memory.metrics;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A mutable threadsafe set of named counters, gauges and latency histograms that can be rendered
+ * in the Prometheus text exposition format.
+ *
+ * <p>Metrics are identified by a name and an optional label set such as {@code context="/look/"}.
+ * Asking for the same name and labels twice returns the same metric, so callers look metrics up
+ * once and keep the reference. Counters and gauges are striped {@link LongAdder}s and histograms are
+ * {@link LatencyHistogram}s, so updating a metric never blocks. A gauge may instead be read from a
+ * {@link LongSupplier} when the metrics are rendered, for values an object already keeps.
+ */
+public class MetricsRegistry {
+
+	private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+	/**
+	 * @return the registry shared by every board and server in this process
+	 */
+	public static MetricsRegistry global() {
+		return GLOBAL;
+	}
+
+	// Histogram bucket boundaries reported to Prometheus, in nanoseconds
+	private static final long[] BOUNDS = {
+			1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L, 10_000_000_000L
+	};
+
+	private enum Type {
+		COUNTER, GAUGE, HISTOGRAM;
+
+		@Override
+		public String toString() {
+			return this.name().toLowerCase();
+		}
+	}
+
+	/**
+	 * All series of a metric sharing a name
+	 */
+	private static class Family {
+		final Type type;
+		final String help;
+		final ConcurrentMap<String, Object> series = new ConcurrentSkipListMap<String, Object>();
+
+		Family(Type type, String help) {
+			this.type = type;
+			this.help = help;
+		}
+	}
+
+	private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<String, Family>();
+
+	// Abstraction function:
+	//   AF(families) ::= a set of metrics where families.get(name).series.get(labels) is the
+	//     value of the metric with the given name and labels
+	// Representation invariant:
+	//   every series of a COUNTER family is a LongAdder, every series of a GAUGE family is a LongAdder or a LongSupplier,
+	//   every series of a HISTOGRAM family is a LatencyHistogram
+	// Safety from rep exposure:
+	//   metrics are returned on purpose so callers can update them. Families are never returned.
+	// Thread safety argument:
+	//   families and series are concurrent maps and are only modified with putIfAbsent / computeIfAbsent,
+	//   so each name and label set maps to a single metric, except that a supplied gauge replaces its series with put.
+	//   Metric values are threadsafe types, and suppliers must be threadsafe.
+
+	/**
+	 * @param name metric name, e.g. memory_flips_total
+	 * @param help description of the metric
+	 * @return the counter with the given name and no labels
+	 */
+	public LongAdder counter(String name, String help) {
+		return this.counter(name, "", help);
+	}
+
+	/**
+	 * @param name metric name, e.g. memory_flips_total
+	 * @param labels comma separated label set, e.g. {@code context="/look/"}, or "" for none
+	 * @param help description of the metric
+	 * @return the counter with the given name and labels
+	 * @throws IllegalArgumentException if name is already registered with a different type
+	 */
+	public LongAdder counter(String name, String labels, String help) {
+		return (LongAdder) this.series(Type.COUNTER, name, labels, help);
+	}
+
+	/**
+	 * Returns a gauge. A gauge is a counter that may go down, e.g. the number of open connections.
+	 * @param name metric name
+	 * @param help description of the metric
+	 * @return the gauge with the given name and no labels
+	 * @throws IllegalArgumentException if name is already registered with a different type
+	 */
+	public LongAdder gauge(String name, String help) {
+		return (LongAdder) this.series(Type.GAUGE, name, "", help);
+	}
+
+	/**
+	 * Registers a gauge whose value is read from value whenever the metrics are rendered, replacing any
+	 * gauge supplied before under the same name.
+	 * @param name metric name
+	 * @param help description of the metric
+	 * @param value threadsafe source of the gauge's value
+	 * @throws IllegalArgumentException if name is already registered with a different type, or as a gauge
+	 * 		updated through a LongAdder
+	 */
+	public void gauge(String name, String help, LongSupplier value) {
+		final Family family = this.families.computeIfAbsent(name, n -> new Family(Type.GAUGE, help));
+		if (family.type != Type.GAUGE) {
+			throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+		}
+		if (family.series.get("") instanceof LongAdder) {
+			throw new IllegalArgumentException(name + " is already registered as a gauge updated through a LongAdder");
+		}
+		family.series.put("", value);
+	}
+
+	/**
+	 * @param name metric name, e.g. memory_flip_seconds
+	 * @param labels comma separated label set, e.g. {@code context="/look/"}, or "" for none
+	 * @param help description of the metric
+	 * @return the histogram with the given name and labels
+	 * @throws IllegalArgumentException if name is already registered with a different type
+	 */
+	public LatencyHistogram histogram(String name, String labels, String help) {
+		return (LatencyHistogram) this.series(Type.HISTOGRAM, name, labels, help);
+	}
+
+	private Object series(Type type, String name, String labels, String help) {
+		final Family family = this.families.computeIfAbsent(name, n -> new Family(type, help));
+		if (family.type != type) {
+			throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+		}
+		final Object series = family.series.computeIfAbsent(labels, l -> type == Type.HISTOGRAM ? new LatencyHistogram() : new LongAdder());
+		if (series instanceof LongSupplier) {
+			throw new IllegalArgumentException(name + " is already registered as a supplied gauge");
+		}
+		return series;
+	}
+
+	/**
+	 * @return every metric in the Prometheus text exposition format. Histograms are reported in seconds.
+	 */
+	public String render() {
+		final StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Family> entry : this.families.entrySet()) {
+			final String name = entry.getKey();
+			final Family family = entry.getValue();
+			sb.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+			sb.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+			for (Map.Entry<String, Object> series : family.series.entrySet()) {
+				final String labels = series.getKey();
+				if (family.type == Type.HISTOGRAM) {
+					renderHistogram(sb, name, labels, (LatencyHistogram) series.getValue());
+				} else {
+					final Object value = series.getValue();
+					sb.append(name).append(braces(labels)).append(' ')
+						.append(value instanceof LongSupplier ? ((LongSupplier) value).getAsLong() : ((LongAdder) value).sum()).append('\n');
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void renderHistogram(StringBuilder sb, String name, String labels, LatencyHistogram histogram) {
+		final String prefix = labels.isEmpty() ? "" : labels + ",";
+		// Read the count first so the +Inf bucket is never smaller than a finite bucket
+		final long count = histogram.count();
+		for (long bound : BOUNDS) {
+			final String le = BigDecimal.valueOf(bound, 9).stripTrailingZeros().toPlainString();
+			sb.append(name).append("_bucket{").append(prefix).append("le=\"").append(le).append("\"} ")
+				.append(Math.min(count, histogram.countAtOrBelow(bound))).append('\n');
+		}
+		sb.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(count).append('\n');
+		sb.append(name).append("_sum").append(braces(labels)).append(' ').append(seconds(histogram.sum())).append('\n');
+		sb.append(name).append("_count").append(braces(labels)).append(' ').append(count).append('\n');
+	}
+
+	private static String braces(String labels) {
+		return labels.isEmpty() ? "" : "{" + labels + "}";
+	}
+
+	private static String seconds(long nanos) {
+		return Double.toString(nanos / 1e9);
+	}
+
+}
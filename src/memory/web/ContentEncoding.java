@@ -0,0 +1,129 @@
+package memory.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import memory.metrics.LatencyHistogram;
+import memory.metrics.MetricsRegistry;
+
+/**
+ * Content codings a server can apply to response bodies, negotiated with the client's Accept-Encoding header.
+ *
+ * <p>Board renders are very repetitive, so they compress well even at the fastest level. The level can be
+ * changed with the system property memory.http.compressionLevel, from 1 (fastest) to 9 (smallest).
+ */
+public enum ContentEncoding {
+
+	IDENTITY("identity"), GZIP("gzip"), DEFLATE("deflate");
+
+	private static final int LEVEL = Integer.getInteger("memory.http.compressionLevel", Deflater.BEST_SPEED);
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private final String token;
+	private final LatencyHistogram cpu;
+	private final LongAdder sent;
+
+	private ContentEncoding(String token) {
+		this.token = token;
+		this.cpu = MetricsRegistry.global().histogram("memory_http_encode_cpu_seconds", "encoding=\"" + token + "\"",
+				"CPU time spent compressing response bodies, by content coding");
+		this.sent = MetricsRegistry.global().counter("memory_http_body_bytes_total", "encoding=\"" + token + "\"",
+				"Bytes of response bodies sent, after content coding");
+	}
+
+	/**
+	 * @return the token naming this coding in Accept-Encoding and Content-Encoding headers
+	 */
+	public String token() {
+		return this.token;
+	}
+
+	/**
+	 * Records that a body coded with this coding was sent.
+	 * @param bytes length of the coded body
+	 */
+	public void sent(int bytes) {
+		this.sent.add(bytes);
+	}
+
+	/**
+	 * Picks the coding for a response. gzip is preferred over deflate, and codings the client gives a quality of 0 are never used.
+	 * "*" accepts any coding the header does not name, so it never selects a coding the client rejected.
+	 * @param acceptEncoding value of the request's Accept-Encoding header, or null if it has none
+	 * @return the coding to apply to the response body
+	 */
+	public static ContentEncoding negotiate(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return IDENTITY;
+		}
+		// Whether each coding was named, and whether it was named with a quality above 0
+		boolean gzipNamed = false, gzip = false, deflateNamed = false, deflate = false, any = false;
+		for (String coding : acceptEncoding.split(",")) {
+			final String[] parts = coding.trim().split(";");
+			final String name = parts[0].trim().toLowerCase();
+			boolean accepted = true;
+			for (int i = 1; i < parts.length; i++) {
+				accepted &= !parts[i].trim().matches("q=0(\\.0*)?");
+			}
+			if (name.equals("gzip")) {
+				gzipNamed = true;
+				gzip |= accepted;
+			} else if (name.equals("deflate")) {
+				deflateNamed = true;
+				deflate |= accepted;
+			} else if (name.equals("*")) {
+				any |= accepted;
+			}
+		}
+		gzip |= any && !gzipNamed;
+		deflate |= any && !deflateNamed;
+		return gzip ? GZIP : deflate ? DEFLATE : IDENTITY;
+	}
+
+	/**
+	 * Applies this coding to a response body, recording the CPU time it took.
+	 * @param body bytes of the response body
+	 * @return the coded body, body itself for IDENTITY
+	 */
+	public byte[] encode(byte[] body) {
+		if (this == IDENTITY) {
+			return body;
+		}
+		final boolean measured = THREADS.isCurrentThreadCpuTimeSupported();
+		final long start = measured ? THREADS.getCurrentThreadCpuTime() : 0;
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 8 + 64);
+		try {
+			if (this == GZIP) {
+				try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+					{
+						this.def.setLevel(LEVEL);
+					}
+				}) {
+					gzip.write(body);
+				}
+			} else {
+				final Deflater deflater = new Deflater(LEVEL);
+				try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+					deflate.write(body);
+				} finally {
+					deflater.end();
+				}
+			}
+		} catch (IOException e) {
+			// Writing to memory does not fail
+			throw new UncheckedIOException(e);
+		}
+		if (measured) {
+			this.cpu.record(THREADS.getCurrentThreadCpuTime() - start);
+		}
+		return out.toByteArray();
+	}
+
+}
@@ -0,0 +1,116 @@
+package memory.web;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import memory.metrics.LatencyHistogram;
+import memory.metrics.MetricsRegistry;
+
+/**
+ * Filter that records when each request arrives so that its latency can be reported once
+ * the response has been sent, which may happen on another thread after the handler returns.
+ * Each context has its own filter, which looks up the context's histogram once when it is made.
+ *
+ * <p>Exchange attributes are shared by every exchange of a context, so requests in flight are
+ * tracked in a map keyed by the exchange itself until {@link #complete(HttpExchange)} removes them.
+ */
+public class MetricsFilter extends Filter {
+
+	/**
+	 * A request whose response has not been sent yet
+	 */
+	private static class InFlight {
+		final long start = System.nanoTime();
+		final LatencyHistogram histogram;
+		// Run once the response has been sent. Guarded by this.
+		final List<Runnable> onComplete = new ArrayList<Runnable>();
+
+		InFlight(LatencyHistogram histogram) {
+			this.histogram = histogram;
+		}
+	}
+
+	private static final ConcurrentMap<HttpExchange, InFlight> IN_FLIGHT = new ConcurrentHashMap<HttpExchange, InFlight>();
+
+	private final LatencyHistogram histogram;
+
+	/*
+	 * AF(histogram, IN_FLIGHT) ::= a filter recording latencies of its context in histogram, where each request that
+	 * 		passed through a MetricsFilter and has not completed has the entry IN_FLIGHT.get(exchange)
+	 * Rep Invariant - true
+	 * Safety from rep exposure:
+	 * 		entries are never returned
+	 * Thread Safety Argument -
+	 * 		IN_FLIGHT is a ConcurrentHashMap. HttpExchange does not override equals, so each exchange is its own key.
+	 * 		An entry is removed exactly once, by complete(), and its callbacks are added and run while holding its lock,
+	 * 		so a callback added after the entry was removed is refused rather than lost.
+	 */
+
+	/**
+	 * @param context path of the context the filter is added to, e.g. /look/
+	 */
+	public MetricsFilter(String context) {
+		this.histogram = MetricsRegistry.global().histogram("memory_http_request_seconds", "context=\"" + context + "\"",
+				"Time from receiving a request to sending its response, by context");
+	}
+
+	@Override public String description() { return "Record request latency"; }
+
+	@Override public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+		IN_FLIGHT.put(exchange, new InFlight(this.histogram));
+		try {
+			chain.doFilter(exchange);
+		} catch (IOException | RuntimeException e) {
+			// The handler failed, so no response will complete the exchange
+			complete(exchange);
+			throw e;
+		}
+	}
+
+	/**
+	 * Runs task once the response to exchange has been sent.
+	 * @param exchange exchange of a request
+	 * @param task task to run on the thread that completes the exchange
+	 * @return true if task will run, false if the exchange has already completed or did not pass through a MetricsFilter
+	 */
+	public static boolean whenComplete(HttpExchange exchange, Runnable task) {
+		final InFlight request = IN_FLIGHT.get(exchange);
+		if (request == null) {
+			return false;
+		}
+		synchronized (request) {
+			if (IN_FLIGHT.get(exchange) != request) {
+				return false;
+			}
+			request.onComplete.add(task);
+			return true;
+		}
+	}
+
+	/**
+	 * Records the latency of an exchange in the memory_http_request_seconds histogram of its context and runs the
+	 * tasks waiting for it. Only the first call for an exchange has any effect.
+	 * Must be called after the response has been sent, or once it is known that none will be.
+	 * @param exchange exchange that passed through this filter
+	 */
+	public static void complete(HttpExchange exchange) {
+		final InFlight request = IN_FLIGHT.remove(exchange);
+		if (request == null) {
+			return;
+		}
+		request.histogram.record(System.nanoTime() - request.start);
+		final List<Runnable> tasks;
+		synchronized (request) {
+			tasks = new ArrayList<Runnable>(request.onComplete);
+		}
+		for (Runnable task : tasks) {
+			task.run();
+		}
+	}
+}
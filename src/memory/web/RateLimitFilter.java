@@ -0,0 +1,47 @@
+package memory.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import memory.RateLimiter;
+
+/**
+ * Filter that rejects requests with 429 Too Many Requests when the player, named by the first path segment
+ * after the context, or the server as a whole has exceeded its rate limit.
+ */
+public class RateLimitFilter extends Filter {
+
+	private final RateLimiter limiter;
+
+	/**
+	 * @param limiter limiter deciding which requests are admitted
+	 */
+	public RateLimitFilter(RateLimiter limiter) {
+		this.limiter = limiter;
+	}
+
+	@Override public String description() { return "Reject players exceeding their rate limit"; }
+
+	@Override public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+		final String path = exchange.getRequestURI().getPath().substring(exchange.getHttpContext().getPath().length());
+		final int end = path.indexOf('/');
+		final String player = end < 0 ? path : path.substring(0, end);
+		if (this.limiter.tryAcquire(player)) {
+			chain.doFilter(exchange);
+			return;
+		}
+		final byte[] body = ("Too many requests from " + player + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Retry-After", Long.toString(this.limiter.retryAfterSeconds(player)));
+		exchange.sendResponseHeaders(429, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		} finally {
+			exchange.close();
+			MetricsFilter.complete(exchange);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package memory.web;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import memory.BoardFormat;
+import memory.metrics.MetricsRegistry;
+
+/**
+ * A mutable threadsafe cache of the encoded response body of the latest board render seen by spectators,
+ * one for each board format and content coding.
+ *
+ * <p>Every watcher is woken by the same change, and most of them see the board exactly as a spectator
+ * does, so caching the encoded render by board version means the board is rendered and compressed once
+ * per change rather than once per watcher.
+ */
+public class RenderCache {
+
+	private static final LongAdder HITS = MetricsRegistry.global().counter("memory_render_cache_hits_total",
+			"Responses sent from a cached encoded board render");
+	private static final LongAdder MISSES = MetricsRegistry.global().counter("memory_render_cache_misses_total",
+			"Encoded board renders computed because the cached render was out of date");
+
+	/**
+	 * The latest encoded render for one format and coding
+	 */
+	private static class Slot {
+		long version = -1;
+		byte[] body = null;
+	}
+
+	private final Slot[] slots;
+
+	/*
+	 * AF(slots) ::= for each format f and coding e, slots[f * codings + e].body is the response body of a spectator
+	 * 		render of the board at version slots[f * codings + e].version or later, coded with e, or null if there is none
+	 * Rep Invariant - slots.length == BoardFormat.values().length * ContentEncoding.values().length
+	 * Safety from rep exposure:
+	 * 		cached bodies are returned to callers, who must not modify them
+	 * Thread Safety Argument -
+	 * 		the fields of a Slot are only accessed while holding its lock. A caller that misses renders while holding
+	 * 		the lock, so callers waiting for the same slot use its render instead of computing their own.
+	 */
+
+	public RenderCache() {
+		this.slots = new Slot[BoardFormat.values().length * ContentEncoding.values().length];
+		for (int i = 0; i < this.slots.length; i++) {
+			this.slots[i] = new Slot();
+		}
+	}
+
+	/**
+	 * Returns the cached body for format and encoding if it was rendered at version or later, without rendering.
+	 * @param format format of the render
+	 * @param encoding coding of the body
+	 * @param version version of the board, read before calling
+	 * @return the coded body, or null if the cached render is older than version. Must not be modified.
+	 */
+	public byte[] peek(BoardFormat format, ContentEncoding encoding, long version) {
+		final Slot slot = this.slots[format.ordinal() * ContentEncoding.values().length + encoding.ordinal()];
+		synchronized (slot) {
+			if (slot.body != null && slot.version >= version) {
+				HITS.increment();
+				return slot.body;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the cached body for format and encoding if it was rendered at version or later, otherwise renders and caches it.
+	 * @param format format of the render
+	 * @param encoding coding of the body
+	 * @param version version of the board, read before calling so that a render reflects at least this version
+	 * @param render renders and codes the board as a spectator sees it
+	 * @return the coded body. Must not be modified.
+	 */
+	public byte[] get(BoardFormat format, ContentEncoding encoding, long version, Supplier<byte[]> render) {
+		final Slot slot = this.slots[format.ordinal() * ContentEncoding.values().length + encoding.ordinal()];
+		synchronized (slot) {
+			if (slot.body != null && slot.version >= version) {
+				HITS.increment();
+				return slot.body;
+			}
+			MISSES.increment();
+			slot.body = render.get();
+			slot.version = version;
+			return slot.body;
+		}
+	}
+
+}
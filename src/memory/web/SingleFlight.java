@@ -0,0 +1,74 @@
+package memory.web;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import memory.metrics.MetricsRegistry;
+
+/**
+ * A mutable threadsafe coalescer of duplicate computations. While a computation for a key is running,
+ * other callers asking for the same key wait for it and share its result instead of starting their own.
+ * Results are not kept once the computation finishes, so keys should include everything the result
+ * depends on, such as the board version.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the results
+ */
+public class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<K, CompletableFuture<V>>();
+	private final LongAdder shared;
+
+	/*
+	 * AF(calls) ::= the computations in progress, where calls.get(k) completes with the result of the computation for k
+	 * Rep Invariant - true
+	 * Safety from rep exposure:
+	 * 		futures are never returned. Results are shared with every caller on purpose, so they should be immutable.
+	 * Thread Safety Argument -
+	 * 		calls is a ConcurrentHashMap. A caller starts a computation only if it installed its own future with
+	 * 		putIfAbsent, and removes exactly that future when it is done, so at most one computation runs per key.
+	 */
+
+	/**
+	 * @param name name of the coalesced computation, used to label the memory_single_flight_shared_total counter
+	 */
+	public SingleFlight(String name) {
+		this.shared = MetricsRegistry.global().counter("memory_single_flight_shared_total", "name=\"" + name + "\"",
+				"Computations skipped because an identical one was already running, by name");
+	}
+
+	/**
+	 * Returns the result of compute for key, running it on this thread unless it is already running for key.
+	 * @param key identifies the computation
+	 * @param compute computes the result, may run on this thread
+	 * @return the result of the computation for key
+	 * @throws RuntimeException thrown by compute, on this thread or the one that ran it
+	 */
+	public V execute(K key, Supplier<V> compute) {
+		final CompletableFuture<V> mine = new CompletableFuture<V>();
+		final CompletableFuture<V> running = this.calls.putIfAbsent(key, mine);
+		if (running != null) {
+			this.shared.increment();
+			try {
+				return running.join();
+			} catch (CompletionException e) {
+				throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+			}
+		}
+		try {
+			final V result = compute.get();
+			mine.complete(result);
+			return result;
+		} catch (RuntimeException | Error e) {
+			mine.completeExceptionally(e);
+			throw e;
+		} finally {
+			this.calls.remove(key, mine);
+		}
+	}
+
+}
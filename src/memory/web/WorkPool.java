@@ -0,0 +1,171 @@
+package memory.web;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import memory.metrics.LatencyHistogram;
+import memory.metrics.MetricsRegistry;
+
+/**
+ * A mutable threadsafe pool of a fixed number of threads with a bounded queue of waiting tasks.
+ *
+ * <p>New requests are admitted with {@link #tryExecute(Runnable)}, which refuses the task when every thread
+ * is busy and the queue is full so the server can shed load instead of queueing without limit. Work that
+ * continues a request that was already admitted is handed to {@link #execute(Runnable)}, which never refuses:
+ * when the pool is saturated the task waits for the pool's overflow thread, which has an unbounded queue.
+ * Tasks never run on the calling thread, which may be holding the board lock or be the timer thread.
+ *
+ * <p>Each pool reports how long its tasks waited for a thread in memory_http_pool_wait_seconds and how long
+ * they ran in memory_http_pool_run_seconds, and how many tasks were handed to the overflow thread in
+ * memory_http_overflow_total, labelled with the name of the pool.
+ *
+ * <p>The size of pool NAME can be configured with system properties:
+ * <pre>
+ *   memory.http.NAME.threads  number of threads (default given by the server)
+ *   memory.http.NAME.queue    number of tasks that may wait for a thread (default given by the server)
+ * </pre>
+ */
+public class WorkPool implements Executor {
+
+	private final String name;
+	private final ThreadPoolExecutor executor;
+	// Runs tasks passed to execute() that executor refused
+	private final ThreadPoolExecutor overflow;
+	private final LongAdder rejected;
+	private final LongAdder overflowed;
+	private final LatencyHistogram waits;
+	private final LatencyHistogram runs;
+
+	/*
+	 * AF(name, executor, overflow) ::= a pool called name running tasks on the threads of executor, and the tasks
+	 * 		that could not wait for executor on the thread of overflow
+	 * Rep Invariant - executor has a bounded queue and refuses tasks when it is full. overflow has one thread
+	 * 		and an unbounded queue
+	 * Safety from rep exposure:
+	 * 		executor is never returned
+	 * Thread Safety Argument -
+	 * 		all fields are final and ThreadPoolExecutor, LongAdder and LatencyHistogram are threadsafe
+	 */
+
+	/**
+	 * Creates a pool sized by the system properties memory.http.NAME.threads and memory.http.NAME.queue.
+	 * @param name name of the pool, used to name its threads and label its metrics
+	 * @param threads number of threads if the property is not set, must be positive
+	 * @param queue number of waiting tasks if the property is not set, must be positive
+	 * @return a new pool
+	 */
+	public static WorkPool fromProperties(String name, int threads, int queue) {
+		return new WorkPool(name, Integer.getInteger("memory.http." + name + ".threads", threads),
+				Integer.getInteger("memory.http." + name + ".queue", queue));
+	}
+
+	/**
+	 * @param name name of the pool, used to name its threads and label its metrics
+	 * @param threads number of threads, must be positive
+	 * @param queue number of tasks that may wait for a thread, must be positive
+	 */
+	public WorkPool(String name, int threads, int queue) {
+		this.name = name;
+		final AtomicInteger count = new AtomicInteger();
+		final Supplier<String> threadName = () -> "memory-" + name + "-" + count.incrementAndGet();
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queue), task -> daemon(task, threadName.get()),
+				new ThreadPoolExecutor.AbortPolicy());
+		this.overflow = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), task -> daemon(task, "memory-" + name + "-overflow"),
+				new ThreadPoolExecutor.AbortPolicy());
+		// Idle threads exit so that a quiet server does not hold on to them
+		this.executor.allowCoreThreadTimeOut(true);
+		this.overflow.allowCoreThreadTimeOut(true);
+		this.rejected = MetricsRegistry.global().counter("memory_http_rejected_total", "pool=\"" + name + "\"",
+				"Requests refused with 503 Service Unavailable because a work pool was saturated, by pool");
+		this.waits = MetricsRegistry.global().histogram("memory_http_pool_wait_seconds", "pool=\"" + name + "\"",
+				"Time tasks waited in the queue of a work pool before a thread ran them, by pool");
+		this.runs = MetricsRegistry.global().histogram("memory_http_pool_run_seconds", "pool=\"" + name + "\"",
+				"Time tasks ran on a work pool thread, by pool");
+		this.overflowed = MetricsRegistry.global().counter("memory_http_overflow_total", "pool=\"" + name + "\"",
+				"Tasks continuing admitted requests handed to a work pool's overflow thread because the pool was saturated, by pool");
+	}
+
+	private static Thread daemon(Runnable task, String name) {
+		final Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * @return name of this pool
+	 */
+	public String name() {
+		return this.name;
+	}
+
+	/**
+	 * Runs task on this pool if a thread is free or there is room in the queue.
+	 * @param task task to run
+	 * @return true if the task was admitted, false if the pool is saturated or shut down
+	 */
+	public boolean tryExecute(Runnable task) {
+		try {
+			this.executor.execute(this.timed(task));
+			return true;
+		} catch (RejectedExecutionException e) {
+			this.rejected.increment();
+			return false;
+		}
+	}
+
+	/**
+	 * Runs task on this pool, or on the pool's overflow thread once the tasks ahead of it there have run if the
+	 * pool is saturated. Never runs task on the calling thread, and drops it if the pool has been shut down.
+	 * @param task task continuing work that was already admitted
+	 */
+	@Override
+	public void execute(Runnable task) {
+		final Runnable timed = this.timed(task);
+		try {
+			this.executor.execute(timed);
+			return;
+		} catch (RejectedExecutionException e) {
+			// Saturated or shut down
+		}
+		try {
+			this.overflow.execute(timed);
+			this.overflowed.increment();
+		} catch (RejectedExecutionException e) {
+			// Shut down. The server is stopping and has closed its connections.
+		}
+	}
+
+	/**
+	 * @return task that records how long it waited to start and how long it ran
+	 */
+	private Runnable timed(Runnable task) {
+		final long submitted = System.nanoTime();
+		return () -> {
+			final long started = System.nanoTime();
+			this.waits.record(started - submitted);
+			try {
+				task.run();
+			} finally {
+				this.runs.record(System.nanoTime() - started);
+			}
+		};
+	}
+
+	/**
+	 * Stops accepting tasks. Tasks already admitted still run.
+	 */
+	public void shutdown() {
+		this.executor.shutdown();
+		this.overflow.shutdown();
+	}
+
+}
@@ -0,0 +1,157 @@
+package memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import memory.log.AsyncLog;
+
+public class AsyncLogTest {
+	// Testing strategy
+	//   producers: one, many concurrent
+	//   buffer: never full, wraps around many times, full while the writer is blocked
+	//   sampling: keep all, keep none, errors never sampled
+	//   close: drains messages logged before it
+
+	@Test(expected=AssertionError.class)
+	public void testAssertionsEnabled() {
+		assert false; // make sure assertions are enabled with VM argument: -ea
+	}
+
+	private static List<String> lines(ByteArrayOutputStream bytes) {
+		final String output = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		return output.isEmpty() ? new ArrayList<String>() : Arrays.asList(output.split("\n"));
+	}
+
+	@Test
+	// tests close writes out every message logged before it
+	public void testCloseDrains() throws InterruptedException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final AsyncLog log = new AsyncLog(new PrintStream(bytes, true), 4096, 1);
+		for (int i = 0; i < 3000; i++) {
+			log.log("message %d", i);
+		}
+		assertTrue("expected writer to finish", log.close(10, TimeUnit.SECONDS));
+		final List<String> lines = lines(bytes);
+		assertEquals("expected every message", 3000, lines.size());
+		for (int i = 0; i < 3000; i++) {
+			assertEquals("expected messages in order", "message " + i, lines.get(i));
+		}
+	}
+
+	@Test
+	// tests concurrent producers on a small buffer that wraps around: every message is written once or counted
+	// as dropped, and each producer's messages are written in the order it logged them
+	public void testConcurrentProducersWrapAround() throws InterruptedException {
+		final int producers = 8;
+		final int messages = 5000;
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final AsyncLog log = new AsyncLog(new PrintStream(bytes, true), 16, 1);
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			final Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < messages; i++) {
+					log.log("%d %d", producer, i);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue("expected writer to finish", log.close(10, TimeUnit.SECONDS));
+
+		final int[] next = new int[producers];
+		long written = 0;
+		long reportedDropped = 0;
+		for (String line : lines(bytes)) {
+			if (line.startsWith(" !! dropped ")) {
+				reportedDropped += Long.parseLong(line.split(" ")[3]);
+				continue;
+			}
+			final String[] parts = line.split(" ");
+			final int producer = Integer.parseInt(parts[0]);
+			final int message = Integer.parseInt(parts[1]);
+			assertTrue("expected each producer's messages in order", message >= next[producer]);
+			next[producer] = message + 1;
+			written++;
+		}
+		assertEquals("expected every message written or dropped", producers * messages, written + log.dropped());
+		assertEquals("expected every drop reported", log.dropped(), reportedDropped);
+	}
+
+	@Test
+	// tests messages are dropped, not blocked on, while the buffer is full and the drops are reported
+	public void testFullBufferDrops() throws InterruptedException {
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final OutputStream blocking = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				this.write(new byte[] {(byte) b}, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				writing.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				bytes.write(b, off, len);
+			}
+		};
+		final AsyncLog log = new AsyncLog(new PrintStream(blocking, true), 4, 1);
+		log.log("first");
+		assertTrue("expected writer to start writing", writing.await(10, TimeUnit.SECONDS));
+		// The writer is blocked writing the first message, so the buffer holds 4 more
+		for (int i = 0; i < 6; i++) {
+			log.log("queued %d", i);
+		}
+		assertEquals("expected messages past capacity dropped", 2, log.dropped());
+		release.countDown();
+		assertTrue("expected writer to finish", log.close(10, TimeUnit.SECONDS));
+		assertEquals("expected kept messages and drop report",
+				Arrays.asList("first", "queued 0", "queued 1", "queued 2", "queued 3", " !! dropped 2 log messages"),
+				lines(bytes));
+	}
+
+	@Test
+	// tests sampling skips log() messages but never errors
+	public void testSampling() throws InterruptedException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final AsyncLog log = new AsyncLog(new PrintStream(bytes, true), 64, 0);
+		for (int i = 0; i < 100; i++) {
+			log.log("sampled out %d", i);
+		}
+		log.error("kept", new IllegalStateException("error"));
+		assertTrue("expected writer to finish", log.close(10, TimeUnit.SECONDS));
+		final List<String> lines = lines(bytes);
+		assertEquals("expected only the error", "kept", lines.get(0));
+		assertEquals("expected the exception", "java.lang.IllegalStateException: error", lines.get(1));
+		assertEquals("expected nothing dropped", 0, log.dropped());
+	}
+}
@@ -6,12 +6,20 @@ package memory;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
+import memory.metrics.MetricsRegistry;
+
 /**
  * TODO
  */
@@ -176,6 +184,13 @@ public class BoardTest {
 	 * 	 	controlled || not controlled
 	 * 		player controls 0, 1, 2 cards
 	 * 		player controls two matching / non matching cards
+     * tryFlip(int col, int row, String player), flip(int col, int row, String player, long timeout, TimeUnit unit)
+     * 		card controlled by another player || not controlled
+     * 		timeout = 0, > 0
+     * flip outcome
+     * 		space off the board, empty, already held, first card, matching / non matching second card
+     * flipAsync(int col, int row, String player)
+     * 		card released || removed while waiting
      * addPlayer(String id);
      * 		player already on board
      * toString()
@@ -244,11 +259,11 @@ public class BoardTest {
     	Board board = new Board(cols, rows, SINGLE_CARD, false);
     	board.addPlayer(PLAYER_1);
     	board.addPlayer(PLAYER_2);
-    	assertTrue("expected to flip card", board.flip(1, 1, PLAYER_1));
+    	assertTrue("expected to flip card", board.flip(1, 1, PLAYER_1).isFlipped());
     	assertEquals("owners equal", PLAYER_1, board.getCard(1, 1).getOwner());
-    	assertTrue("expected to flip card", board.flip(2, 1, PLAYER_1));
+    	assertTrue("expected to flip card", board.flip(2, 1, PLAYER_1).isFlipped());
     	assertEquals("owners equal", PLAYER_1, board.getCard(2, 1).getOwner());
-    	assertTrue("expected to be able to flip card", board.flip(3, 2, PLAYER_1));
+    	assertTrue("expected to be able to flip card", board.flip(3, 2, PLAYER_1).isFlipped());
     	assertTrue("expected empty card", board.getCard(1, 1).isEmpty());
     	assertTrue("expected empty card", board.getCard(2, 1).isEmpty());
     	BoardSpace card = board.getCard(3, 2);
@@ -264,7 +279,7 @@ public class BoardTest {
     	board.addPlayer(PLAYER_1);
     	board.addPlayer(PLAYER_2);
     	board.flip(1, 1, PLAYER_1);
-    	assertFalse("expected to not be able to flip", board.flip(1, 1, PLAYER_2));
+    	assertFalse("expected to not be able to flip", board.flip(1, 1, PLAYER_2).isFlipped());
     }
     @Test
     //Test flip when player holds two cards that don't match
@@ -294,7 +309,7 @@ public class BoardTest {
     	final int cols = 3;
     	Board board = new Board(cols, rows, CARDS2, false);
     	board.addPlayer(PLAYER_1);
-    	assertFalse("expected unflipped emptyspace",board.flip(3, 3, PLAYER_1));
+    	assertFalse("expected unflipped emptyspace",board.flip(3, 3, PLAYER_1).isFlipped());
     }
     
     @Test
@@ -305,7 +320,337 @@ public class BoardTest {
     	Board board = new Board(cols, rows, CARDS2, false);
     	board.addPlayer(PLAYER_1);
     	board.flip(1, 1, PLAYER_1);
-    	assertFalse("can't flip your own card",board.flip(1, 1, PLAYER_1));
+    	assertFalse("can't flip your own card",board.flip(1, 1, PLAYER_1).isFlipped());
+    }
+    
+    @Test
+    // tests the outcome reported for each kind of flip
+    public void testFlipOutcomes() {
+    	final int rows = 3;
+    	final int cols = 3;
+    	Board board = new Board(cols, rows, SINGLE_CARD, false);
+    	board.addPlayer(PLAYER_1);
+    	assertEquals("expected space off board", FlipOutcome.OUT_OF_BOUNDS, board.flip(4, 1, PLAYER_1));
+    	assertEquals("expected space off board", FlipOutcome.OUT_OF_BOUNDS, board.flip(1, 0, PLAYER_1));
+    	assertEquals("expected empty space", FlipOutcome.EMPTY, board.flip(3, 3, PLAYER_1));
+    	assertEquals("expected first card", FlipOutcome.CLAIMED, board.flip(1, 1, PLAYER_1));
+    	assertEquals("expected card already held", FlipOutcome.ALREADY_HELD, board.flip(1, 1, PLAYER_1));
+    	assertEquals("expected matching card", FlipOutcome.MATCHED, board.flip(2, 1, PLAYER_1));
+    	
+    	Board board2 = new Board(cols, rows, CARDS2, false);
+    	board2.addPlayer(PLAYER_1);
+    	board2.flip(1, 1, PLAYER_1);
+    	final FlipOutcome second = board2.flip(3, 1, PLAYER_1);
+    	assertEquals(board2.getCard(1, 1).match(board2.getCard(3, 1)) ? FlipOutcome.MATCHED : FlipOutcome.MISMATCHED, second);
+    }
+    
+    @Test
+    // tests flipAndRender renders the flip it made, in full and as a delta
+    public void testFlipAndRender() {
+    	final int rows = 3;
+    	final int cols = 3;
+    	Board board = new Board(cols, rows, SINGLE_CARD, false);
+    	board.addPlayer(PLAYER_1);
+    	final FlipResult first = board.flipAndRender(1, 1, PLAYER_1, 0, TimeUnit.NANOSECONDS, BoardFormat.TEXT);
+    	assertEquals("expected first card", FlipOutcome.CLAIMED, first.outcome());
+    	assertEquals("expected render to match look", board.look(PLAYER_1), first.render());
+    	assertEquals("expected latest version", board.version(), first.version());
+    	
+    	final FlipResult second = board.flipAndRender(2, 1, PLAYER_1, 0, TimeUnit.NANOSECONDS, BoardFormat.HTTP);
+    	assertEquals("expected matching card", FlipOutcome.MATCHED, second.outcome());
+    	assertEquals("expected render to match httpLook", board.httpLook(PLAYER_1), second.render());
+    	assertTrue("expected version to increase", second.version() > first.version());
+    	
+    	// The next flip removes the matched pair and claims a third card
+    	final FlipResult third = board.flipAndRender(3, 1, PLAYER_1, 0, TimeUnit.NANOSECONDS, BoardFormat.DELTA);
+    	assertEquals("expected first card", FlipOutcome.CLAIMED, third.outcome());
+    	assertEquals("expected changed spaces", third.version() + "\n1,1 none\n2,1 none\n3,1 my A\n", third.render());
+    	
+    	final FlipResult outside = board.flipAndRender(4, 1, PLAYER_1, 0, TimeUnit.NANOSECONDS, BoardFormat.DELTA);
+    	assertEquals("expected space off board", FlipOutcome.OUT_OF_BOUNDS, outside.outcome());
+    	assertEquals("expected nothing to change", third.version() + "\n", outside.render());
+    }
+    
+    @Test
+    // tests looking at a region renders only the spaces inside it
+    public void testLookRegion() {
+    	final int rows = 3;
+    	final int cols = 3;
+    	Board board = new Board(cols, rows, SINGLE_CARD, false);
+    	board.addPlayer(PLAYER_1);
+    	board.flip(2, 2, PLAYER_1);
+    	assertEquals("expected whole board", board.look(PLAYER_1), board.look(PLAYER_1, board.bounds()));
+    	assertEquals("expected region", " *>A\n * *", board.look(PLAYER_1, new Region(1, 2, 2, 3)));
+    	assertEquals("expected region", "2\n1\nmy A\ndown\n", board.httpLook(PLAYER_1, new Region(2, 2, 3, 2)));
+    	try {
+    		board.look(PLAYER_1, new Region(2, 2, 4, 2));
+    		fail("expected region off the board");
+    	} catch (IllegalArgumentException e) {
+    		// expected
+    	}
+    }
+    
+    @Test
+    // tests region listeners are only notified of changes in their region, once per change, until removed
+    public void testRegionListener() {
+    	final int rows = 40;
+    	final int cols = 40;
+    	Board board = new Board(cols, rows, SINGLE_CARD, false);
+    	board.addPlayer(PLAYER_1);
+    	final AtomicInteger near = new AtomicInteger();
+    	final AtomicInteger far = new AtomicInteger();
+    	final AtomicInteger everywhere = new AtomicInteger();
+    	final BoardListener nearListener = () -> near.incrementAndGet();
+    	board.addBoardListener(nearListener, new Region(10, 1, 20, 1));
+    	board.addBoardListener(() -> far.incrementAndGet(), new Region(30, 30, 40, 40));
+    	board.addBoardListener(() -> everywhere.incrementAndGet());
+    	
+    	board.flip(15, 1, PLAYER_1);
+    	board.flip(18, 1, PLAYER_1);
+    	assertEquals("expected each flip in region", 2, near.get());
+    	assertEquals("expected no flips in region", 0, far.get());
+    	assertEquals("expected every flip", 2, everywhere.get());
+    	
+    	// Removing the matched pair changes two spaces in the region, in different tiles, but notifies once
+    	board.flip(1, 1, PLAYER_1);
+    	assertEquals("expected one notification for the pair", 3, near.get());
+    	assertEquals("expected the pair and the flip", 4, everywhere.get());
+    	
+    	assertTrue("expected listener removed", board.removeBoardListener(nearListener));
+    	assertFalse("expected listener already removed", board.removeBoardListener(nearListener));
+    	board.flip(12, 1, PLAYER_1);
+    	assertEquals("expected no notification after removal", 3, near.get());
+    }
+    
+    @Test
+    // tests the run length format describes the same board as httpLook as pairs are removed, before and after 
+    // the board switches to keeping only the occupied spaces
+    public void testLookRle() {
+    	final int rows = 4;
+    	final int cols = 4;
+    	Board board = new Board(cols, rows, SINGLE_CARD, false);
+    	board.addPlayer(PLAYER_1);
+    	assertEquals("expected one run", "4\n4\n16 down\n", board.look(PLAYER_1, board.bounds(), BoardFormat.RLE));
+    	for (int i = 0; i < rows * cols; i++) {
+    		board.flip(i % cols + 1, i / cols + 1, PLAYER_1);
+    		assertEquals("expected same board", board.httpLook(PLAYER_1), expandRle(board.look(PLAYER_1, board.bounds(), BoardFormat.RLE)));
+    		final Region region = new Region(2, 2, 3, 4);
+    		assertEquals("expected same region", board.httpLook(PLAYER_1, region), expandRle(board.look(PLAYER_1, region, BoardFormat.RLE)));
+    	}
+    	board.flip(1, 1, PLAYER_1);
+    	assertEquals("expected empty board", "4\n4\n16 none\n", board.look(PLAYER_1, board.bounds(), BoardFormat.RLE));
+    }
+    
+    private static String expandRle(String rle) {
+    	final String[] lines = rle.split("\n");
+    	final StringBuilder sb = new StringBuilder(lines[0] + "\n" + lines[1] + "\n");
+    	for (int i = 2; i < lines.length; i++) {
+    		final int space = lines[i].indexOf(' ');
+    		for (int n = Integer.parseInt(lines[i].substring(0, space)); n > 0; n--) {
+    			sb.append(lines[i].substring(space + 1)).append("\n");
+    		}
+    	}
+    	return sb.toString();
+    }
+    
+    @Test
+    // tests a player's view tag only changes when the board or the cards they control change
+    public void testViewTag() {
+    	final int rows = 3;
+    	final int cols = 3;
+    	Board board = new Board(cols, rows, SINGLE_CARD, false);
+    	board.addPlayer(PLAYER_1);
+    	board.addPlayer(PLAYER_2);
+    	final String before = board.viewTag(PLAYER_1);
+    	board.look(PLAYER_1);
+    	assertEquals("expected same tag without changes", before, board.viewTag(PLAYER_1));
+    	board.flip(1, 1, PLAYER_2);
+    	final String afterOther = board.viewTag(PLAYER_1);
+    	assertNotEquals("expected new tag after another player's flip", before, afterOther);
+    	board.flip(2, 1, PLAYER_1);
+    	assertNotEquals("expected new tag after own flip", afterOther, board.viewTag(PLAYER_1));
+    	assertNotEquals("expected players to have different tags", board.viewTag(PLAYER_1), board.viewTag(PLAYER_2));
+    }
+    
+    @Test
+    // tests tryFlip when another player controls the card and when no one does
+    public void testTryFlipBusy() throws InterruptedException {
+    	final int rows = 3;
+    	final int cols = 3;
+    	Board board = new Board(cols, rows, SINGLE_CARD, false);
+    	board.addPlayer(PLAYER_1);
+    	board.addPlayer(PLAYER_2);
+    	// Claim the card from another thread so that PLAYER_2 would block on it
+    	Thread other = new Thread(() -> board.flip(1, 1, PLAYER_1));
+    	other.start();
+    	other.join();
+    	assertEquals("expected card to be busy", FlipOutcome.BUSY, board.tryFlip(1, 1, PLAYER_2));
+    	assertEquals("owners equal", PLAYER_1, board.getCard(1, 1).getOwner());
+    	assertEquals("expected to flip card", FlipOutcome.CLAIMED, board.tryFlip(2, 1, PLAYER_2));
+    }
+    
+    @Test
+    // tests a timed flip gives up after the timeout when another player controls the card
+    public void testTimedFlipBusy() throws InterruptedException {
+    	final int rows = 3;
+    	final int cols = 3;
+    	Board board = new Board(cols, rows, SINGLE_CARD, false);
+    	board.addPlayer(PLAYER_1);
+    	board.addPlayer(PLAYER_2);
+    	Thread other = new Thread(() -> board.flip(1, 1, PLAYER_1));
+    	other.start();
+    	other.join();
+    	final long start = System.nanoTime();
+    	assertEquals("expected card to be busy", FlipOutcome.BUSY, board.flip(1, 1, PLAYER_2, 50, TimeUnit.MILLISECONDS));
+    	assertTrue("expected to wait for the timeout", System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    	assertFalse("expected card to stay controlled", board.look(PLAYER_2).contains(">"));
+    }
+    
+    @Test
+    // tests flipAsync waits for a controlled card and completes when the card is released
+    public void testFlipAsyncReleased() throws Exception {
+    	final int rows = 3;
+    	final int cols = 3;
+    	Board board = new Board(cols, rows, CARDS2, false);
+    	board.addPlayer(PLAYER_1);
+    	board.addPlayer(PLAYER_2);
+    	board.flip(1, 1, PLAYER_1);
+    	CompletableFuture<FlipOutcome> waiting = board.flipAsync(1, 1, PLAYER_2);
+    	assertFalse("expected flip to wait", waiting.isDone());
+    	if (board.getCard(1, 1).match(board.getCard(3, 1))) {
+    		return;
+    	}
+    	// Turning over a non matching card then making another move releases (1, 1)
+    	board.flip(3, 1, PLAYER_1);
+    	board.flip(2, 2, PLAYER_1);
+    	assertEquals("expected to flip card", FlipOutcome.CLAIMED, waiting.get(5, TimeUnit.SECONDS));
+    	assertEquals("owners equal", PLAYER_2, board.getCard(1, 1).getOwner());
+    }
+    
+    @Test
+    // tests flipAsync completes without flipping when the card it waits for is matched and removed
+    public void testFlipAsyncRemoved() throws Exception {
+    	final int rows = 3;
+    	final int cols = 3;
+    	Board board = new Board(cols, rows, SINGLE_CARD, false);
+    	board.addPlayer(PLAYER_1);
+    	board.addPlayer(PLAYER_2);
+    	board.flip(1, 1, PLAYER_1);
+    	board.flip(2, 1, PLAYER_1);
+    	CompletableFuture<FlipOutcome> waiting = board.flipAsync(1, 1, PLAYER_2);
+    	board.flip(3, 1, PLAYER_1);
+    	assertEquals("expected card to be gone", FlipOutcome.EMPTY, waiting.get(5, TimeUnit.SECONDS));
+    	assertTrue("expected empty card", board.getCard(1, 1).isEmpty());
+    }
+    
+    @Test
+    public void testReplay() throws IOException {
+    	final int rows = 4;
+    	final int cols = 4;
+    	Board board = new Board(cols, rows, CARDS2, true);
+    	GameEventLog log = GameEventLog.record(board);
+    	board.addPlayer(PLAYER_1);
+    	board.addPlayer(PLAYER_2);
+    	for (int i = 0; i < 3 * rows * cols; i++) {
+    		board.tryFlip(i % cols + 1, (i * 3) % rows + 1, i % 2 == 0 ? PLAYER_1 : PLAYER_2);
+    	}
+    	board.removePlayer(PLAYER_2);
+    	assertEquals("expected first event", new GameEvent(GameEvent.Type.PLAYER_ADDED, PLAYER_1, 0, 0, 0, 0, null), log.event(0));
+    	
+    	Board replayed = new GameReplay(log).replay();
+    	assertEquals("expected same board", board.toString(), replayed.toString());
+    	assertEquals("expected same view", board.look(PLAYER_1), replayed.look(PLAYER_1));
+    	
+    	StringWriter saved = new StringWriter();
+    	log.write(saved);
+    	GameEventLog loaded = GameEventLog.read(new StringReader(saved.toString()));
+    	assertEquals("expected every event", log.size(), loaded.size());
+    	assertEquals("expected same view", board.look(PLAYER_1), new GameReplay(loaded).replay().look(PLAYER_1));
+    }
+    
+    @Test
+    public void testContention() {
+    	Board board = new Board(2, 2, CARDS2, false);
+    	board.addPlayer(PLAYER_1);
+    	board.addPlayer(PLAYER_2);
+    	assertEquals("expected no waits", "", board.hottestCards(4));
+    	// Claimed on another thread, since a player never waits for a card claimed on its own thread
+    	CompletableFuture.runAsync(() -> board.tryFlip(1, 1, PLAYER_1)).join();
+    	assertEquals("expected busy", FlipOutcome.BUSY, board.flip(1, 1, PLAYER_2, 10, TimeUnit.MILLISECONDS));
+    	assertTrue("expected wait", board.hottestCards(4).startsWith("1,1 waits=1 "));
+    }
+    
+    @Test
+    public void testExportMetrics() {
+    	Board served = new Board(2, 2, CARDS2, false);
+    	Board simulated = new Board(2, 2, CARDS2, false);
+    	served.exportMetrics();
+    	served.addPlayer(PLAYER_1);
+    	simulated.addPlayer(PLAYER_1);
+    	simulated.addPlayer(PLAYER_2);
+    	assertTrue("expected only the served board's players", 
+    			MetricsRegistry.global().render().contains("\nmemory_players 1\n"));
+    }
+    
+    @Test
+    public void testStats() {
+    	Board board = Board.fromLayout(2, 2, Arrays.asList("A", "B", "A", "B"));
+    	board.addPlayer(PLAYER_1);
+    	assertEquals("expected every pair", 2, board.stats().remainingPairs());
+    	board.tryFlip(1, 1, PLAYER_1);
+    	board.tryFlip(2, 1, PLAYER_1);
+    	board.tryFlip(1, 2, PLAYER_1);
+    	board.tryFlip(1, 1, PLAYER_1);
+    	GameStats stats = board.stats();
+    	assertEquals("expected flips", 4, stats.flips());
+    	assertEquals("expected mismatch", 1, stats.mismatches());
+    	assertEquals("expected match", 1, stats.matches());
+    	assertEquals("expected player's match", 1, stats.matches(PLAYER_1));
+    	assertEquals("expected one pair left", 1, stats.remainingPairs());
+    	assertTrue("expected time to first match", stats.meanSecondsToFirstMatch() > 0);
+    	assertTrue("expected player in report", stats.report().contains(PLAYER_1 + " flips: 4 matches: 1 mismatches: 1"));
+    }
+    
+    @Test
+    public void testFlipUnknownPlayer() {
+    	Board board = new Board(2, 2, CARDS2, false);
+    	assertEquals("expected unknown player", FlipOutcome.UNKNOWN_PLAYER, board.flip(1, 1, PLAYER_1));
+    	assertEquals("expected unknown player", FlipOutcome.UNKNOWN_PLAYER, board.tryFlip(1, 1, PLAYER_1));
+    	assertEquals("expected unknown player", FlipOutcome.UNKNOWN_PLAYER, board.flipAsync(1, 1, PLAYER_1).join());
+    	board.addPlayer(PLAYER_1);
+    	board.removePlayer(PLAYER_1);
+    	assertEquals("expected removed player unknown", FlipOutcome.UNKNOWN_PLAYER, board.tryFlip(1, 1, PLAYER_1));
+    	assertEquals("expected unknown player", FlipOutcome.UNKNOWN_PLAYER, 
+    			board.flipAndRenderAsync(1, 1, PLAYER_1, 0, TimeUnit.MILLISECONDS, BoardFormat.TEXT).join().outcome());
+    	board.addPlayer(PLAYER_2);
+    	assertEquals("expected card still free", FlipOutcome.CLAIMED, board.tryFlip(1, 1, PLAYER_2));
+    }
+    
+    @Test
+    public void testSelfPlay() {
+    	SelfPlay simulation = new SelfPlay(4, 4, CARDS2, Arrays.asList(BotStrategy.perfectMemory(), BotStrategy.random()), 42);
+    	SelfPlay.Stats stats = simulation.run(200, ForkJoinPool.commonPool());
+    	assertEquals("expected every game", 200, stats.games());
+    	assertEquals("expected every game to finish", 0, stats.unfinished());
+    	assertEquals("expected every game to finish", 200, stats.finished());
+    	assertTrue("expected perfect memory to win more", stats.wins(0) > stats.wins(1));
+    	assertEquals("expected strategy", "memory:4", BotStrategy.parse("memory:4").toString());
+    }
+    
+    @Test
+    public void testSelfPlayAbandonedGames() {
+    	SelfPlay.Stats stats = new SelfPlay.Stats(Arrays.asList(BotStrategy.perfectMemory(), BotStrategy.random()));
+    	stats.record(true, false, 10, 20, 0, new int[] {2, 0});
+    	stats.record(false, true, 500, 1000, 900, new int[] {0, 1});
+    	stats.record(false, false, 800, 1600, 0, new int[] {0, 3});
+    	assertEquals("expected every game", 3, stats.games());
+    	assertEquals("expected one finished game", 1, stats.finished());
+    	assertEquals("expected abandoned games", 2, stats.unfinished());
+    	assertEquals("expected deadlocked game", 1, stats.deadlocked());
+    	assertTrue("expected length of the finished game only", stats.meanFlips() == 20);
+    	assertEquals("expected win in the finished game", 1, stats.wins(0));
+    	assertEquals("expected no win from abandoned games", 0, stats.wins(1));
+    	assertEquals("expected busy flips of every game", 900, stats.busyFlips());
     }
     
     @Test
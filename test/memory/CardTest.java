@@ -2,6 +2,9 @@ package memory;
 
 import static org.junit.Assert.*;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Test;
 
 public class CardTest {
@@ -20,6 +23,7 @@ public class CardTest {
 	 * 
 	 * release / getOwner / hasOwner
 	 * 	owned || not owned
+	 * 	0, n claims waiting
 	 * 
 	 */
 // TODO Fix release tests. 
@@ -115,6 +119,25 @@ public class CardTest {
     	assertTrue("expected controlled card", CHAR.hasOwner());
     }
     
+    /**
+     * Test release() hands the card to the claims waiting for it in the order they arrived
+     */
+    @Test
+    public void testReleaseHandsOffInOrder() throws Exception {
+    	final Card CHAR = new Card("A", 1, 1);
+    	CHAR.claim(PLAYER);
+    	final CompletableFuture<FlipOutcome> first = CHAR.claimAsync(PLAYER2, Player.NO_HANDLE);
+    	final CompletableFuture<FlipOutcome> second = CHAR.claimAsync("Player3", Player.NO_HANDLE);
+    	assertFalse("expected claim to wait", first.isDone() || second.isDone());
+    	CHAR.release();
+    	assertEquals("expected first waiter to get the card", FlipOutcome.CLAIMED, first.get(5, TimeUnit.SECONDS));
+    	assertFalse("expected second waiter to keep waiting", second.isDone());
+    	assertEquals(PLAYER2, CHAR.getOwner());
+    	CHAR.release();
+    	assertEquals("expected second waiter to get the card", FlipOutcome.CLAIMED, second.get(5, TimeUnit.SECONDS));
+    	assertEquals("Player3", CHAR.getOwner());
+    }
+    
     @Test
     public void testToString() {
     	final Card CHAR = new Card("A", 1, 1);
@@ -0,0 +1,110 @@
+package memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+	// Testing strategy
+	//   player limit: within burst, past burst, other players unaffected, forgotten player refilled
+	//   global limit: shared by all players
+	//   global limit: rejection does not spend the player's token
+	//   no limit: rate <= 0, properties not set
+	//   buckets: refilled buckets dropped once there are many
+	
+	final String PLAYER_1 = "Player1";
+	final String PLAYER_2 = "Player2";
+	
+	@Test(expected=AssertionError.class)
+	public void testAssertionsEnabled() {
+		assert false; // make sure assertions are enabled with VM argument: -ea
+	}
+	
+	@Test
+	// tests a player is limited to their burst and other players are not affected
+	public void testPlayerBurst() {
+		final RateLimiter limiter = new RateLimiter(0.001, 3, 0, 1);
+		for (int i = 0; i < 3; i++) {
+			assertTrue("expected request within burst", limiter.tryAcquire(PLAYER_1));
+		}
+		assertFalse("expected request past burst", limiter.tryAcquire(PLAYER_1));
+		assertTrue("expected other player admitted", limiter.tryAcquire(PLAYER_2));
+		assertTrue("expected to wait at least a second", limiter.retryAfterSeconds(PLAYER_1) >= 1);
+		limiter.forget(PLAYER_1);
+		assertTrue("expected full bucket after forget", limiter.tryAcquire(PLAYER_1));
+	}
+	
+	@Test
+	// tests the global limit is shared by all players
+	public void testGlobalBurst() {
+		final RateLimiter limiter = new RateLimiter(0, 1, 0.001, 2);
+		assertTrue("expected request within burst", limiter.tryAcquire(PLAYER_1));
+		assertTrue("expected request within burst", limiter.tryAcquire(PLAYER_2));
+		assertFalse("expected request past global burst", limiter.tryAcquire(PLAYER_1));
+	}
+	
+	@Test
+	// tests a request rejected by the global limit does not count against the player
+	public void testGlobalRejectRefundsPlayer() throws InterruptedException {
+		// The global bucket earns a token every 100 ms, the player's bucket effectively never
+		final RateLimiter limiter = new RateLimiter(0.001, 2, 10, 1);
+		assertTrue("expected request within global burst", limiter.tryAcquire(PLAYER_2));
+		for (int i = 0; i < 5; i++) {
+			assertFalse("expected request past global burst", limiter.tryAcquire(PLAYER_1));
+		}
+		Thread.sleep(150);
+		assertTrue("expected player's first token kept", limiter.tryAcquire(PLAYER_1));
+		Thread.sleep(150);
+		assertTrue("expected player's second token kept", limiter.tryAcquire(PLAYER_1));
+	}
+	
+	@Test
+	// tests limiting is off unless the properties set a rate
+	public void testDefaultsOff() {
+		final RateLimiter limiter = RateLimiter.fromProperties();
+		for (int i = 0; i < 20000; i++) {
+			assertTrue("expected no limit", limiter.tryAcquire(PLAYER_1));
+		}
+		assertEquals("expected no buckets", 0, limiter.buckets());
+	}
+	
+	@Test
+	// tests buckets of players who stopped sending requests are dropped once there are many
+	public void testRefilledBucketsDropped() throws InterruptedException {
+		final RateLimiter limiter = new RateLimiter(1000, 1, 0, 1);
+		for (int i = 0; i < RateLimiter.MIN_SWEEP; i++) {
+			assertTrue("expected request within burst", limiter.tryAcquire("player " + i));
+		}
+		assertEquals("expected a bucket per player", RateLimiter.MIN_SWEEP, limiter.buckets());
+		Thread.sleep(10);
+		assertTrue("expected new player admitted", limiter.tryAcquire("new player"));
+		assertEquals("expected refilled buckets dropped", 1, limiter.buckets());
+	}
+	
+	@Test
+	// tests a refund returns a taken token but never fills a bucket past its burst
+	public void testRefundCapped() {
+		final TokenBucket bucket = new TokenBucket(0.001, 2);
+		bucket.refund();
+		bucket.refund();
+		assertTrue("expected first token", bucket.tryAcquire());
+		assertTrue("expected second token", bucket.tryAcquire());
+		assertFalse("expected no token banked by refunds to a full bucket", bucket.tryAcquire());
+		bucket.refund();
+		assertTrue("expected refunded token", bucket.tryAcquire());
+		assertFalse("expected empty bucket", bucket.tryAcquire());
+	}
+	
+	@Test
+	// tests a bucket earns tokens over time
+	public void testRefill() throws InterruptedException {
+		final TokenBucket bucket = new TokenBucket(100, 1);
+		assertTrue("expected first token", bucket.tryAcquire());
+		assertFalse("expected empty bucket", bucket.tryAcquire());
+		Thread.sleep(30);
+		assertTrue("expected token earned", bucket.tryAcquire());
+	}
+	
+}
@@ -0,0 +1,110 @@
+package memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SessionManagerTest {
+	// Testing strategy
+	//   session: idle past the timeout, request outstanding past the timeout, request ended, disconnected
+	//   player: controls a card, controls a matched pair, controls none
+
+	private static final long IDLE_MILLIS = 100;
+
+	@Test(expected=AssertionError.class)
+	public void testAssertionsEnabled() {
+		assert false; // make sure assertions are enabled with VM argument: -ea
+	}
+
+	private static TimerWheel timer() {
+		return new TimerWheel(10, TimeUnit.MILLISECONDS, 64);
+	}
+
+	@Test
+	// tests an idle session expires, removing the player and releasing the card they control
+	public void testIdleSessionExpires() throws InterruptedException {
+		final Board board = Board.fromLayout(2, 2, Arrays.asList("A", "B", "A", "B"));
+		final CountDownLatch closed = new CountDownLatch(1);
+		final SessionManager sessions = new SessionManager(board, timer(), IDLE_MILLIS, TimeUnit.MILLISECONDS,
+				id -> closed.countDown());
+		board.addPlayer("idle");
+		board.addPlayer("other");
+		sessions.begin("idle");
+		assertEquals("expected claimed", FlipOutcome.CLAIMED, board.tryFlip(1, 1, "idle"));
+		sessions.end("idle");
+		assertEquals("expected one session", 1, sessions.size());
+
+		assertTrue("expected session to expire", closed.await(10, TimeUnit.SECONDS));
+		assertEquals("expected no sessions", 0, sessions.size());
+		assertFalse("expected player removed", board.removePlayer("idle"));
+		assertEquals("expected card released", FlipOutcome.CLAIMED, board.tryFlip(1, 1, "other"));
+	}
+
+	@Test
+	// tests a player whose session expires while holding a matched pair no longer counts the match in the statistics
+	public void testExpiryReleasesMatch() throws InterruptedException {
+		final Board board = Board.fromLayout(2, 2, Arrays.asList("A", "B", "A", "B"));
+		final CountDownLatch closed = new CountDownLatch(1);
+		final SessionManager sessions = new SessionManager(board, timer(), IDLE_MILLIS, TimeUnit.MILLISECONDS,
+				id -> closed.countDown());
+		board.addPlayer("matcher");
+		sessions.begin("matcher");
+		assertEquals("expected claimed", FlipOutcome.CLAIMED, board.tryFlip(1, 1, "matcher"));
+		assertEquals("expected match", FlipOutcome.MATCHED, board.tryFlip(1, 2, "matcher"));
+		assertEquals("expected match counted", 1, board.stats().matches());
+		assertEquals("expected one pair left", 1, board.stats().remainingPairs());
+		sessions.end("matcher");
+
+		assertTrue("expected session to expire", closed.await(10, TimeUnit.SECONDS));
+		assertEquals("expected released match not counted", 0, board.stats().matches());
+		assertEquals("expected released pair left on the board", 2, board.stats().remainingPairs());
+		board.addPlayer("other");
+		assertEquals("expected card still on the board", FlipOutcome.CLAIMED, board.tryFlip(1, 1, "other"));
+	}
+
+	@Test
+	// tests a session with an outstanding request does not expire, and expires once the request ends
+	public void testOutstandingRequestKeepsSession() throws InterruptedException {
+		final Board board = Board.fromLayout(2, 2, Arrays.asList("A", "B", "A", "B"));
+		final Set<String> closed = ConcurrentHashMap.newKeySet();
+		final SessionManager sessions = new SessionManager(board, timer(), IDLE_MILLIS, TimeUnit.MILLISECONDS,
+				closed::add);
+		board.addPlayer("waiting");
+		sessions.begin("waiting");
+		Thread.sleep(IDLE_MILLIS * 4);
+		assertEquals("expected session open", 1, sessions.size());
+		assertFalse("expected player still on board", board.addPlayer("waiting"));
+		assertTrue("expected no close", closed.isEmpty());
+
+		sessions.end("waiting");
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (sessions.size() > 0 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals("expected session expired", 0, sessions.size());
+		assertTrue("expected close", closed.contains("waiting"));
+	}
+
+	@Test
+	// tests disconnect closes a session at once, even with a request outstanding
+	public void testDisconnect() {
+		final Board board = Board.fromLayout(2, 2, Arrays.asList("A", "B", "A", "B"));
+		final Set<String> closed = ConcurrentHashMap.newKeySet();
+		final SessionManager sessions = new SessionManager(board, timer(), 1, TimeUnit.HOURS, closed::add);
+		board.addPlayer("leaving");
+		sessions.begin("leaving");
+		assertTrue("expected open session closed", sessions.disconnect("leaving"));
+		assertFalse("expected no session", sessions.disconnect("leaving"));
+		assertEquals("expected no sessions", 0, sessions.size());
+		assertTrue("expected close", closed.contains("leaving"));
+		assertFalse("expected player removed", board.removePlayer("leaving"));
+	}
+}
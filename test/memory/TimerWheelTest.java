@@ -0,0 +1,74 @@
+package memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class TimerWheelTest {
+	// Testing strategy
+	//   delay: zero, less than one turn of the wheel, more than one turn
+	//   timeout: cancelled before it is due, not cancelled
+	//   tasks: one, several scheduled out of order
+
+	@Test(expected=AssertionError.class)
+	public void testAssertionsEnabled() {
+		assert false; // make sure assertions are enabled with VM argument: -ea
+	}
+
+	@Test
+	// tests tasks run in order of their delays, including a delay longer than one turn of the wheel
+	public void testOrdering() throws InterruptedException {
+		// 8 slots of 10 ms, so one turn is 80 ms
+		final TimerWheel timer = new TimerWheel(10, TimeUnit.MILLISECONDS, 8);
+		final List<Integer> ran = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch done = new CountDownLatch(4);
+		for (int delay : Arrays.asList(150, 0, 100, 40)) {
+			timer.schedule(() -> {
+				ran.add(delay);
+				done.countDown();
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+		assertTrue("expected every task to run", done.await(10, TimeUnit.SECONDS));
+		assertEquals("expected tasks in order of delay", Arrays.asList(0, 40, 100, 150), ran);
+	}
+
+	@Test
+	// tests a task runs no earlier than its delay
+	public void testDelay() throws InterruptedException {
+		final TimerWheel timer = new TimerWheel(10, TimeUnit.MILLISECONDS, 8);
+		final CountDownLatch done = new CountDownLatch(1);
+		final long start = System.nanoTime();
+		final long[] ranAfter = new long[1];
+		timer.schedule(() -> {
+			ranAfter[0] = System.nanoTime() - start;
+			done.countDown();
+		}, 50, TimeUnit.MILLISECONDS);
+		assertTrue("expected task to run", done.await(10, TimeUnit.SECONDS));
+		assertTrue("expected task not to run early", ranAfter[0] >= TimeUnit.MILLISECONDS.toNanos(50));
+	}
+
+	@Test
+	// tests a cancelled task never runs while the tasks around it do
+	public void testCancel() throws InterruptedException {
+		final TimerWheel timer = new TimerWheel(10, TimeUnit.MILLISECONDS, 8);
+		final AtomicBoolean cancelledRan = new AtomicBoolean();
+		final CountDownLatch done = new CountDownLatch(1);
+		final TimerWheel.Timeout cancelled = timer.schedule(() -> cancelledRan.set(true), 30, TimeUnit.MILLISECONDS);
+		timer.schedule(done::countDown, 100, TimeUnit.MILLISECONDS);
+		assertFalse("expected not cancelled", cancelled.isCancelled());
+		cancelled.cancel();
+		assertTrue("expected cancelled", cancelled.isCancelled());
+		assertTrue("expected later task to run", done.await(10, TimeUnit.SECONDS));
+		assertFalse("expected cancelled task not to run", cancelledRan.get());
+	}
+}
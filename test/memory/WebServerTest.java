@@ -4,6 +4,7 @@
 package memory;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -12,6 +13,12 @@ import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -22,6 +29,8 @@ public class WebServerTest {
     
     // Testing strategy
     //   TODO
+    //   work pools: saturated flip lane, look while the flip lane is saturated
+    //   watch: board unchanged until the timeout
     
     @Test(expected=AssertionError.class)
     public void testAssertionsEnabled() {
@@ -65,6 +74,139 @@ public class WebServerTest {
         server.stop();
     }
     
+    /**
+     * Sends a GET request and reads the whole response. 
+     * @return the response code
+     */
+    private static int get(String url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        final int code = connection.getResponseCode();
+        final InputStream body = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (body != null) {
+            while (body.read() != -1) {
+            }
+            body.close();
+        }
+        return code;
+    }
+    
+    /**
+     * Starts a server for board whose flip lane has one thread and room for one waiting flip, then fills it: 
+     * the first flip claims a card and blocks the lane's thread notifying a board listener until release, 
+     * and the second flip waits in the queue. 
+     * @param flips receives the response codes of the two flips
+     * @return the started server
+     */
+    private static WebServer startWithBlockedFlipLane(Board board, CountDownLatch release, 
+            List<CompletableFuture<Integer>> flips) throws IOException, InterruptedException {
+        System.setProperty("memory.http.flip.threads", "1");
+        System.setProperty("memory.http.flip.queue", "1");
+        final WebServer server;
+        try {
+            server = new WebServer(board, 0);
+        } finally {
+            System.clearProperty("memory.http.flip.threads");
+            System.clearProperty("memory.http.flip.queue");
+        }
+        server.start();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        board.addBoardListener(() -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        final String base = "http://localhost:" + server.port() + "/flip/";
+        flips.add(CompletableFuture.supplyAsync(() -> getQuietly(base + "first/1,1")));
+        assertTrue("expected flip to block the flip lane", blocked.await(5, TimeUnit.SECONDS));
+        flips.add(CompletableFuture.supplyAsync(() -> getQuietly(base + "second/2,1")));
+        // Let the second flip reach the queue
+        Thread.sleep(200);
+        return server;
+    }
+    
+    /**
+     * Sends a GET request from a background thread. 
+     * @return the response code, or -1 if the server stopped before answering
+     */
+    private static int getQuietly(String url) {
+        try {
+            return get(url);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+    
+    @Test
+    public void testSaturatedPoolRefuses() throws IOException, InterruptedException {
+        final Board board = Board.fromLayout(2, 2, Arrays.asList("A", "B", "A", "B"));
+        final CountDownLatch release = new CountDownLatch(1);
+        final WebServer server = startWithBlockedFlipLane(board, release, new ArrayList<CompletableFuture<Integer>>());
+        try {
+            assertEquals("expected 503 from saturated flip lane", 503, 
+                    get("http://localhost:" + server.port() + "/flip/third/1,2"));
+        } finally {
+            release.countDown();
+            server.stop();
+        }
+    }
+    
+    @Test
+    public void testSaturatedFlipLaneDoesNotDelayLook() throws IOException, InterruptedException {
+        final Board board = Board.fromLayout(2, 2, Arrays.asList("A", "B", "A", "B"));
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<CompletableFuture<Integer>> flips = new ArrayList<CompletableFuture<Integer>>();
+        final WebServer server = startWithBlockedFlipLane(board, release, flips);
+        try {
+            // The first player controls a card, so their look is rendered on the look lane
+            final HttpURLConnection look = (HttpURLConnection) new URL(
+                    "http://localhost:" + server.port() + "/look/first").openConnection();
+            look.setReadTimeout(2000);
+            assertEquals("expected look answered while flips wait", 200, look.getResponseCode());
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(look.getInputStream()));
+            assertEquals("expected columns", "2", reader.readLine());
+            assertEquals("expected rows", "2", reader.readLine());
+            assertEquals("expected the player's card", "my A", reader.readLine());
+            reader.close();
+            
+            // Once released, the blocked flip is answered even though its lane is still full
+            release.countDown();
+            for (CompletableFuture<Integer> flip : flips) {
+                assertEquals("expected flip answered after release", 200, (int) flip.join());
+            }
+        } finally {
+            release.countDown();
+            server.stop();
+        }
+    }
+    
+    @Test
+    public void testWatchTimeout() throws IOException {
+        final Board board = Board.fromLayout(2, 2, Arrays.asList("A", "B", "A", "B"));
+        final WebServer server = new WebServer(board, 0);
+        server.start();
+        try {
+            final long start = System.nanoTime();
+            final HttpURLConnection watch = (HttpURLConnection) new URL(
+                    "http://localhost:" + server.port() + "/watch/watcher?timeout=200ms").openConnection();
+            watch.setReadTimeout(5000);
+            assertEquals("expected current board after timeout", 200, watch.getResponseCode());
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(watch.getInputStream()));
+            assertEquals("expected columns", "2", reader.readLine());
+            assertEquals("expected rows", "2", reader.readLine());
+            for (int i = 0; i < 4; i++) {
+                assertEquals("expected unchanged board", "down", reader.readLine());
+            }
+            reader.close();
+            assertTrue("expected to wait for the timeout", 
+                    System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        } finally {
+            server.stop();
+        }
+    }
+    
     // TODO tests
     
 }
@@ -0,0 +1,37 @@
+package memory.web;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ContentEncodingTest {
+	// Testing strategy
+	//   header: missing, one coding, several codings, "*"
+	//   quality: omitted, above 0, 0
+	//   "*": alone, with a coding rejected, with every coding rejected
+
+	@Test(expected=AssertionError.class)
+	public void testAssertionsEnabled() {
+		assert false; // make sure assertions are enabled with VM argument: -ea
+	}
+
+	@Test
+	// tests named codings, preferring gzip, and rejections with a quality of 0
+	public void testNamedCodings() {
+		assertEquals("expected identity without header", ContentEncoding.IDENTITY, ContentEncoding.negotiate(null));
+		assertEquals("expected gzip preferred", ContentEncoding.GZIP, ContentEncoding.negotiate("deflate, gzip;q=0.5"));
+		assertEquals("expected deflate", ContentEncoding.DEFLATE, ContentEncoding.negotiate("gzip;q=0, deflate"));
+		assertEquals("expected identity", ContentEncoding.IDENTITY, ContentEncoding.negotiate("br"));
+	}
+
+	@Test
+	// tests "*" only selects codings the header does not reject
+	public void testWildcard() {
+		assertEquals("expected gzip for any", ContentEncoding.GZIP, ContentEncoding.negotiate("*"));
+		assertEquals("expected rejected gzip not used", ContentEncoding.DEFLATE, ContentEncoding.negotiate("gzip;q=0, *"));
+		assertEquals("expected rejected gzip not used", ContentEncoding.DEFLATE, ContentEncoding.negotiate("*, gzip;q=0"));
+		assertEquals("expected every coding rejected", ContentEncoding.IDENTITY,
+				ContentEncoding.negotiate("*, gzip;q=0, deflate;q=0.0"));
+		assertEquals("expected rejected any", ContentEncoding.IDENTITY, ContentEncoding.negotiate("*;q=0"));
+	}
+}
@@ -0,0 +1,120 @@
+package memory.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SingleFlightTest {
+	// Testing strategy
+	//   callers: one, many concurrent with the same key, concurrent with different keys
+	//   computation: returns, throws
+	//   key: running, finished
+
+	private static final int CALLERS = 8;
+
+	@Test(expected=AssertionError.class)
+	public void testAssertionsEnabled() {
+		assert false; // make sure assertions are enabled with VM argument: -ea
+	}
+
+	/**
+	 * Starts CALLERS calls of execute(key, compute) on their own threads and waits until the first has started
+	 * computing and the rest are waiting for it.
+	 */
+	private static List<CompletableFuture<String>> callConcurrently(SingleFlight<String, String> flight, String key,
+			CountDownLatch release, AtomicInteger computed, RuntimeException failure,
+			ExecutorService callers) throws InterruptedException {
+		final List<CompletableFuture<String>> results = new ArrayList<CompletableFuture<String>>();
+		final CountDownLatch started = new CountDownLatch(CALLERS);
+		final CountDownLatch computing = new CountDownLatch(1);
+		for (int i = 0; i < CALLERS; i++) {
+			results.add(CompletableFuture.supplyAsync(() -> {
+				started.countDown();
+				return flight.execute(key, () -> {
+					computed.incrementAndGet();
+					computing.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						throw new IllegalStateException(e);
+					}
+					if (failure != null) {
+						throw failure;
+					}
+					return "result";
+				});
+			}, callers));
+		}
+		assertTrue("expected callers to start", started.await(10, TimeUnit.SECONDS));
+		assertTrue("expected a computation to start", computing.await(10, TimeUnit.SECONDS));
+		// Give the other callers time to find the running computation
+		Thread.sleep(100);
+		return results;
+	}
+
+	@Test
+	// tests concurrent callers with the same key run the computation once and all get its result
+	public void testSameKeyComputedOnce() throws InterruptedException {
+		final SingleFlight<String, String> flight = new SingleFlight<String, String>("test");
+		final ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger computed = new AtomicInteger();
+		try {
+			final List<CompletableFuture<String>> results = callConcurrently(flight, "key", release, computed, null, callers);
+			release.countDown();
+			for (CompletableFuture<String> result : results) {
+				assertEquals("expected the shared result", "result", result.join());
+			}
+			assertEquals("expected one computation", 1, computed.get());
+		} finally {
+			callers.shutdownNow();
+		}
+	}
+
+	@Test
+	// tests concurrent callers with the same key all get the exception of the one computation
+	public void testSameKeySharesException() throws InterruptedException {
+		final SingleFlight<String, String> flight = new SingleFlight<String, String>("test");
+		final ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger computed = new AtomicInteger();
+		final IllegalStateException failure = new IllegalStateException("failed");
+		try {
+			final List<CompletableFuture<String>> results = callConcurrently(flight, "key", release, computed, failure, callers);
+			release.countDown();
+			for (CompletableFuture<String> result : results) {
+				try {
+					result.join();
+					throw new AssertionError("expected the computation's exception");
+				} catch (RuntimeException e) {
+					assertTrue("expected the computation's exception", e.getCause() == failure);
+				}
+			}
+			assertEquals("expected one computation", 1, computed.get());
+		} finally {
+			callers.shutdownNow();
+		}
+	}
+
+	@Test
+	// tests a key is computed again once its computation has finished, and different keys do not wait for each other
+	public void testFinishedAndDifferentKeys() {
+		final SingleFlight<String, String> flight = new SingleFlight<String, String>("test");
+		final AtomicInteger computed = new AtomicInteger();
+		assertEquals("expected result", "1", flight.execute("key", () -> Integer.toString(computed.incrementAndGet())));
+		assertEquals("expected new computation", "2", flight.execute("key", () -> Integer.toString(computed.incrementAndGet())));
+		final String outer = flight.execute("outer",
+				() -> flight.execute("inner", () -> "inner") + " in outer");
+		assertEquals("expected nested key computed", "inner in outer", outer);
+	}
+}